@@ -52,6 +52,11 @@ public class SimpleRunCPE extends Thread {
    */
   private long mInitCompleteTime;
 
+  /**
+   * Time the first document was processed, 0 before
+   */
+  private long mFirstDocumentTime;
+
   /**
    * Constructor for the class.
    * 
@@ -165,6 +170,9 @@ public class SimpleRunCPE extends Thread {
       long elapsedTime = initTime + processingTime;
       System.out.println("Total Time Elapsed: " + elapsedTime + " ms ");
       System.out.println("Initialization Time: " + initTime + " ms");
+      if (mFirstDocumentTime > 0) {
+        System.out.println("Time to First Document: " + (mFirstDocumentTime - mStartTime) + " ms");
+      }
       System.out.println("Processing Time: " + processingTime + " ms");
 
       System.out.println("\n\n ------------------ PERFORMANCE REPORT ------------------\n");
@@ -221,6 +229,9 @@ public class SimpleRunCPE extends Thread {
         }
         return;
       }
+      if (entityCount == 0) {
+        mFirstDocumentTime = System.currentTimeMillis();
+      }
       entityCount++;
       String docText = aCas.getDocumentText();
       if (docText != null) {
@@ -0,0 +1,102 @@
+package ner.AnalysisEngine;
+
+import java.util.Iterator;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceAccessException;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import ner.Resource.GeneDictionaryResource;
+import ner.TypeSystem.BaseAnnotation;
+import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.DictionaryGeneRecognizer;
+import ner.util.GeneRecognizer;
+import ner.util.SpanSink;
+
+/**
+ * The GeneDictionaryAnnotator class annotates the names of a gene dictionary, which is compiled by
+ * {@link ner.Resource.MappedDictionaryCompiler} and memory-mapped through the
+ * <code>GeneDictionary</code> resource. Names match whole tokens, and at each position the longest
+ * name is annotated. It can be configured with the following parameters:
+ * 
+ * <ul>
+ * <li><code>Confidence</code> - confidence of the annotations</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class GeneDictionaryAnnotator extends JCasAnnotator_ImplBase {
+
+  /**
+   * Name of configuration parameter which set the confidence of the annotations.
+   */
+  public static final String PARAM_CONFIDENCE = "Confidence";
+
+  /**
+   * Recognizer which looks up the names of the dictionary
+   */
+  private GeneRecognizer mRecognizer;
+
+  /**
+   * Reusable matches of the current sentence, relative to the sentence
+   */
+  private SpanSink mSpans = new SpanSink();
+
+  /**
+   * @see JCasAnnotator_ImplBase#process(JCas)
+   */
+  public void process(JCas aJCas) {
+    String docText = aJCas.getDocumentText();
+
+    // look up each sentence of the document on its own
+    Iterator sentenceIter = aJCas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
+    if (!sentenceIter.hasNext()) {
+      annotate(aJCas, docText, 0, docText.length());
+    }
+    while (sentenceIter.hasNext()) {
+      SourceSentenceInformation sentence = (SourceSentenceInformation) sentenceIter.next();
+      annotate(aJCas, docText, sentence.getBegin(), sentence.getEnd());
+    }
+  }
+
+  /**
+   * Adds the dictionary names of one sentence to CAS.
+   */
+  private void annotate(JCas aJCas, String docText, int begin, int end) {
+    SpanSink spans = mSpans;
+    spans.clear();
+    mRecognizer.recognize(docText, begin, end, spans);
+
+    for (int i = 0; i < spans.size(); i++) {
+      BaseAnnotation annotation = new BaseAnnotation(aJCas);
+      annotation.setBegin(begin + spans.getBegin(i));
+      annotation.setEnd(begin + spans.getEnd(i));
+      annotation.setSource(getClass().getName());
+      annotation.setConfidence(spans.getConfidence(i));
+      annotation.addToIndexes();
+    }
+  }
+
+  @Override
+  public void initialize(UimaContext aContext) throws ResourceInitializationException {
+    super.initialize(aContext);
+
+    // get the confidence, names are trusted without one
+    Float confidence = (Float) aContext.getConfigParameterValue(PARAM_CONFIDENCE);
+
+    // get the dictionary shared by all annotator instances
+    GeneDictionaryResource dictionary;
+    try {
+      dictionary = (GeneDictionaryResource) aContext.getResourceObject("GeneDictionary");
+    } catch (ResourceAccessException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA,
+              new Object[] { "GeneDictionary" }, e);
+    }
+    mRecognizer = new DictionaryGeneRecognizer(dictionary.getDictionary(),
+            confidence == null ? 1.0f : confidence);
+  }
+}
@@ -0,0 +1,445 @@
+package ner.AnalysisEngine;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceAccessException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+
+import edu.stanford.nlp.pipeline.DefaultPaths;
+
+import ner.Resource.GeneDictionaryResource;
+import ner.Resource.LingPipeChunkerResource;
+import ner.TypeSystem.BaseAnnotation;
+import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.ChunkerGeneRecognizer;
+import ner.util.DictionaryGeneRecognizer;
+import ner.util.GeneRecognizer;
+import ner.util.PosTagNamedEntityRecognizer;
+import ner.util.PosTagNamedEntityRecognizerPool;
+import ner.util.RegexGeneRecognizer;
+import ner.util.SpanSink;
+import ner.util.SpanVotes;
+
+/**
+ * The GeneEnsembleAnnotator class runs several gene recognizers on each sentence and fuses their
+ * spans by weighted voting. Each span is annotated once, with the sum of the confidences the
+ * sources gave it times their weights, divided by the sum of the weights of all sources. The
+ * sources run in the configured order, so the cheap ones should come first. Once at least two
+ * sources ran and found spans, and every span found so far already has a fused confidence of at
+ * least the agreement threshold from their votes alone, the remaining sources are skipped for the
+ * sentence. The skipped sources could only raise these confidences, but may miss spans only they
+ * would find. It can be configured with the following parameters:
+ *
+ * <ul>
+ * <li><code>Sources</code> - recognizers in the order they run: <code>Regex</code>,
+ * <code>Dictionary</code>, <code>Stanford</code> or <code>LingPipe</code></li>
+ * <li><code>SourceWeights</code> - weight of each source, 1.0 for all sources if not set</li>
+ * <li><code>AgreementThreshold</code> - fused confidence at which agreeing sources make the
+ * remaining sources be skipped, never skipped if not set</li>
+ * <li><code>GeneRegularExpressions</code> - regular expressions of the <code>Regex</code> source</li>
+ * <li><code>BestChunkNumber</code> - number of best chunks of the <code>LingPipe</code> source</li>
+ * <li><code>ConfidenceThreshold</code> - confidence below which the <code>LingPipe</code> source
+ * ignores chunks</li>
+ * <li><code>ModelLoading</code> - when the models of the <code>Stanford</code> and
+ * <code>LingPipe</code> sources are loaded: <code>Eager</code> while the annotator is initialized,
+ * <code>Background</code> in a background thread started at initialization, or <code>Lazy</code>
+ * on first use</li>
+ * </ul>
+ *
+ * The <code>Dictionary</code> source needs the <code>GeneDictionary</code> resource and the
+ * <code>LingPipe</code> source the <code>LingPipeGeneTagModel</code> resource.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class GeneEnsembleAnnotator extends JCasAnnotator_ImplBase {
+
+  /**
+   * Name of configuration parameter which set the sources.
+   */
+  public static final String PARAM_SOURCES = "Sources";
+
+  /**
+   * Name of configuration parameter which set the weights of the sources.
+   */
+  public static final String PARAM_SOURCEWEIGHTS = "SourceWeights";
+
+  /**
+   * Name of configuration parameter which set the agreement threshold.
+   */
+  public static final String PARAM_AGREEMENTTHRESHOLD = "AgreementThreshold";
+
+  /**
+   * Name of configuration parameter which set the regular expressions.
+   */
+  public static final String PARAM_GENEREGULAREXPRESSIONS = "GeneRegularExpressions";
+
+  /**
+   * Name of configuration parameter which set the Number of Best Chunk.
+   */
+  public static final String PARAM_BESTCHUNKNUMBER = "BestChunkNumber";
+
+  /**
+   * Name of configuration parameter which set the confidence threshold.
+   */
+  public static final String PARAM_CONFIDENCETHRESHOLD = "ConfidenceThreshold";
+
+  /**
+   * Name of configuration parameter which set when the models are loaded.
+   */
+  public static final String PARAM_MODELLOADING = "ModelLoading";
+
+  /**
+   * Names of the recognizers which can be sources.
+   */
+  private static final String[] SOURCE_NAMES = { "Regex", "Dictionary", "Stanford", "LingPipe" };
+
+  /**
+   * Kinds of sources, indexes into {@link #SOURCE_NAMES}.
+   */
+  private static final int REGEX = 0, DICTIONARY = 1, STANFORD = 2, LINGPIPE = 3;
+
+  /**
+   * Kind of each source
+   */
+  private int[] mSources;
+
+  /**
+   * Weight of each source
+   */
+  private float[] mWeights;
+
+  /**
+   * Sum of the weights of all sources
+   */
+  private float mTotalWeight;
+
+  /**
+   * Fused confidence at which the remaining sources are skipped, above 1 if they never are
+   */
+  private float mAgreementThreshold;
+
+  /**
+   * Recognizer of the regular expressions, null if not a source
+   */
+  private GeneRecognizer mRegexRecognizer;
+
+  /**
+   * Recognizer of the dictionary names, null if not a source
+   */
+  private GeneRecognizer mDictionaryRecognizer;
+
+  /**
+   * Pool of the Stanford recognizers of this JVM, null if not a source
+   */
+  private PosTagNamedEntityRecognizerPool mRecognizerPool;
+
+  /**
+   * Stanford recognizer taken from the pool for the current CAS, null if none is taken
+   */
+  private PosTagNamedEntityRecognizer mNERecognizer;
+
+  /**
+   * Shared resource of the LingPipe model, null if not a source
+   */
+  private LingPipeChunkerResource mModel;
+
+  /**
+   * Recognizer which decodes the best chunks, null until the model is loaded
+   */
+  private GeneRecognizer mChunkRecognizer;
+
+  /**
+   * Number of Best Chunk of the LingPipe source
+   */
+  private int mBestChunkNumber;
+
+  /**
+   * Confidence below which the LingPipe source ignores chunks
+   */
+  private float mConfidenceThreshold;
+
+  /**
+   * Reusable spans of the current source, relative to the sentence
+   */
+  private SpanSink mSpans = new SpanSink();
+
+  /**
+   * Reusable votes of the sources of the current sentence
+   */
+  private SpanVotes mVotes;
+
+  /**
+   * Number of sentences each source ran on
+   */
+  private long[] mRuns;
+
+  /**
+   * Number of sentences each source was skipped on
+   */
+  private long[] mSkips;
+
+  /**
+   * Nanoseconds spent in each source
+   */
+  private long[] mNanos;
+
+  /**
+   * @see JCasAnnotator_ImplBase#process(JCas)
+   */
+  public void process(JCas aJCas) throws AnalysisEngineProcessException {
+    String docText = aJCas.getDocumentText();
+
+    try {
+      // vote on each sentence of the document on its own
+      Iterator sentenceIter = aJCas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
+      if (!sentenceIter.hasNext()) {
+        annotate(aJCas, docText, 0, docText.length());
+      }
+      while (sentenceIter.hasNext()) {
+        SourceSentenceInformation sentence = (SourceSentenceInformation) sentenceIter.next();
+        annotate(aJCas, docText, sentence.getBegin(), sentence.getEnd());
+      }
+    } catch (ResourceInitializationException e) {
+      throw new AnalysisEngineProcessException(e);
+    } finally {
+      // give the recognizer back for the other annotator instances
+      if (mNERecognizer != null) {
+        mRecognizerPool.release(mNERecognizer);
+        mNERecognizer = null;
+      }
+    }
+  }
+
+  /**
+   * Adds the fused spans of one sentence to CAS.
+   */
+  private void annotate(JCas aJCas, String docText, int begin, int end)
+          throws ResourceInitializationException {
+    SpanVotes votes = mVotes;
+    votes.clear();
+    for (int source = 0; source < mSources.length; source++) {
+      if (source > 1 && agree(votes)) {
+        for (int skipped = source; skipped < mSources.length; skipped++) {
+          mSkips[skipped]++;
+        }
+        break;
+      }
+      long start = System.nanoTime();
+      SpanSink spans = mSpans;
+      spans.clear();
+      recognize(mSources[source], docText, begin, end, spans);
+      votes.addAll(spans, source);
+      mNanos[source] += System.nanoTime() - start;
+      mRuns[source]++;
+    }
+
+    for (int i = 0; i < votes.size(); i++) {
+      BaseAnnotation annotation = new BaseAnnotation(aJCas);
+      annotation.setBegin(begin + votes.getBegin(i));
+      annotation.setEnd(begin + votes.getEnd(i));
+      annotation.setSource(getClass().getName());
+      annotation.setConfidence(votes.getScore(i, mWeights) / mTotalWeight);
+      annotation.addToIndexes();
+    }
+  }
+
+  /**
+   * Tests whether the sources which ran agree on the spans found so far, so they all have a fused
+   * confidence of at least the agreement threshold.
+   */
+  private boolean agree(SpanVotes votes) {
+    if (votes.size() == 0) {
+      return false;
+    }
+    for (int i = 0; i < votes.size(); i++) {
+      if (votes.getScore(i, mWeights) < mAgreementThreshold * mTotalWeight) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Runs one source on a sentence.
+   */
+  private void recognize(int kind, String docText, int begin, int end, SpanSink spans)
+          throws ResourceInitializationException {
+    switch (kind) {
+      case REGEX:
+        mRegexRecognizer.recognize(docText, begin, end, spans);
+        break;
+      case DICTIONARY:
+        mDictionaryRecognizer.recognize(docText, begin, end, spans);
+        break;
+      case STANFORD:
+        // take a recognizer for the rest of the CAS
+        if (mNERecognizer == null) {
+          mNERecognizer = mRecognizerPool.acquire();
+        }
+        mNERecognizer.recognize(docText, begin, end, spans);
+        break;
+      default:
+        // wait for the model on first use
+        if (mChunkRecognizer == null) {
+          mChunkRecognizer = new ChunkerGeneRecognizer(mModel.getChunker(), mBestChunkNumber,
+                  mConfidenceThreshold);
+        }
+        mChunkRecognizer.recognize(docText, begin, end, spans);
+    }
+  }
+
+  /**
+   * @see org.apache.uima.analysis_component.AnalysisComponent_ImplBase#collectionProcessComplete()
+   */
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    for (int source = 0; source < mSources.length; source++) {
+      getContext().getLogger().log(Level.INFO,
+              "Source " + SOURCE_NAMES[mSources[source]] + ": ran on " + mRuns[source]
+                      + " sentences in " + mNanos[source] / 1000000 + " ms, skipped on "
+                      + mSkips[source]);
+    }
+  }
+
+  @Override
+  public void initialize(UimaContext aContext) throws ResourceInitializationException {
+    super.initialize(aContext);
+
+    // get the sources in the order they run
+    String[] sourceNames = (String[]) aContext.getConfigParameterValue(PARAM_SOURCES);
+    if (sourceNames == null || sourceNames.length == 0) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.CONFIG_SETTING_ABSENT,
+              new Object[] { PARAM_SOURCES });
+    }
+    mSources = new int[sourceNames.length];
+    for (int i = 0; i < sourceNames.length; i++) {
+      mSources[i] = -1;
+      for (int kind = 0; kind < SOURCE_NAMES.length; kind++) {
+        if (SOURCE_NAMES[kind].equals(sourceNames[i])) {
+          mSources[i] = kind;
+        }
+      }
+      for (int j = 0; j < i; j++) {
+        if (mSources[j] == mSources[i]) {
+          mSources[i] = -1;
+        }
+      }
+      if (mSources[i] < 0) {
+        throw new ResourceInitializationException(
+                ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    sourceNames[i], PARAM_SOURCES });
+      }
+    }
+
+    // get the weights, all sources count the same without them
+    Float[] weights = (Float[]) aContext.getConfigParameterValue(PARAM_SOURCEWEIGHTS);
+    if (weights != null && weights.length > 0 && weights.length != mSources.length) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  weights.length + " weights", PARAM_SOURCEWEIGHTS });
+    }
+    mWeights = new float[mSources.length];
+    mTotalWeight = 0.0f;
+    for (int i = 0; i < mSources.length; i++) {
+      mWeights[i] = weights == null || weights.length == 0 ? 1.0f : weights[i];
+      if (mWeights[i] < 0.0f) {
+        throw new ResourceInitializationException(
+                ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    mWeights[i], PARAM_SOURCEWEIGHTS });
+      }
+      mTotalWeight += mWeights[i];
+    }
+    if (mTotalWeight <= 0.0f) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  mTotalWeight, PARAM_SOURCEWEIGHTS });
+    }
+
+    // get the agreement threshold, sources are never skipped without one
+    Float agreementThreshold = (Float) aContext.getConfigParameterValue(PARAM_AGREEMENTTHRESHOLD);
+    mAgreementThreshold = agreementThreshold == null ? 2.0f : agreementThreshold;
+
+    String modelLoading = (String) aContext.getConfigParameterValue(PARAM_MODELLOADING);
+    if (modelLoading != null && !"Eager".equals(modelLoading)
+            && !"Background".equals(modelLoading) && !"Lazy".equals(modelLoading)) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  modelLoading, PARAM_MODELLOADING });
+    }
+
+    // create the recognizers of the sources
+    for (int kind : mSources) {
+      if (kind == REGEX) {
+        String[] patternStrings = (String[]) aContext
+                .getConfigParameterValue(PARAM_GENEREGULAREXPRESSIONS);
+        Pattern[] patterns = new Pattern[patternStrings == null ? 0 : patternStrings.length];
+        for (int i = 0; i < patterns.length; i++) {
+          patterns[i] = Pattern.compile(patternStrings[i]);
+        }
+        mRegexRecognizer = new RegexGeneRecognizer(patterns);
+      } else if (kind == DICTIONARY) {
+        GeneDictionaryResource dictionary = (GeneDictionaryResource) getResource(aContext,
+                "GeneDictionary");
+        mDictionaryRecognizer = new DictionaryGeneRecognizer(dictionary.getDictionary(), 1.0f);
+      } else if (kind == STANFORD) {
+        mRecognizerPool = PosTagNamedEntityRecognizerPool.getInstance(0);
+
+        // report a missing tagger model now, even if it is loaded later
+        URL model = getClass().getClassLoader().getResource(DefaultPaths.DEFAULT_POS_MODEL);
+        if (model == null) {
+          throw new ResourceInitializationException(
+                  ResourceInitializationException.COULD_NOT_ACCESS_DATA,
+                  new Object[] { DefaultPaths.DEFAULT_POS_MODEL });
+        }
+        if ("Eager".equals(modelLoading)) {
+          mRecognizerPool.release(mRecognizerPool.acquire());
+        } else if (modelLoading == null || "Background".equals(modelLoading)) {
+          mRecognizerPool.preload();
+        }
+      } else {
+        mBestChunkNumber = (Integer) aContext.getConfigParameterValue(PARAM_BESTCHUNKNUMBER);
+        Float threshold = (Float) aContext.getConfigParameterValue(PARAM_CONFIDENCETHRESHOLD);
+        mConfidenceThreshold = threshold == null ? 0.0f : threshold;
+        mModel = (LingPipeChunkerResource) getResource(aContext, "LingPipeGeneTagModel");
+        if ("Eager".equals(modelLoading)) {
+          mModel.getChunker();
+        } else if (modelLoading == null || "Background".equals(modelLoading)) {
+          mModel.preload();
+        }
+      }
+    }
+
+    mVotes = new SpanVotes(mSources.length);
+    mRuns = new long[mSources.length];
+    mSkips = new long[mSources.length];
+    mNanos = new long[mSources.length];
+  }
+
+  /**
+   * Gets a resource a source needs.
+   */
+  private static Object getResource(UimaContext aContext, String key)
+          throws ResourceInitializationException {
+    Object resource;
+    try {
+      resource = aContext.getResourceObject(key);
+    } catch (ResourceAccessException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { key }, e);
+    }
+    if (resource == null) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { key });
+    }
+    return resource;
+  }
+}
@@ -10,19 +10,26 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceAccessException;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 
 import com.aliasi.chunk.Chunk;
 import com.aliasi.chunk.Chunker;
 import com.aliasi.chunk.Chunking;
 import com.aliasi.chunk.ConfidenceChunker;
-import com.aliasi.util.AbstractExternalizable;
 
+import ner.Resource.LingPipeChunkerResource;
 import ner.TypeSystem.BaseAnnotation;
+import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.ChunkerGeneRecognizer;
+import ner.util.GeneRecognizer;
 import ner.util.PosTagNamedEntityRecognizer;
+import ner.util.SpanCache;
+import ner.util.SpanSink;
 
 /**
  * The GeneLingPipeAnnotator class wraps the LingPipe ConfidenceChunker. It utilizes the wrapped
@@ -33,6 +40,16 @@ import ner.util.PosTagNamedEntityRecognizer;
  * <ul>
  * <li><code>BestChunkNumber</code> - number of best chunks when annotating with LingPipe confidence
  * chunker</li>
+ * <li><code>ConfidenceThreshold</code> - confidence below which chunks are not annotated, usually
+ * the threshold of the downstream GeneMentionFilter. Not set by default, so pipelines without the
+ * filter annotate all chunks</li>
+ * <li><code>CacheFile</code> - optional file of a persistent cache of the chunks of each sentence</li>
+ * <li><code>CacheSize</code> - size of the cache file in megabytes</li>
+ * <li><code>DedupCacheSize</code> - megabytes of memory used to remember the chunks of the sentences
+ * of this run, so duplicate sentences are annotated only once</li>
+ * <li><code>ModelLoading</code> - when the model is loaded: <code>Eager</code> while the annotator
+ * is initialized, <code>Background</code> in a background thread started at initialization, or
+ * <code>Lazy</code> on the first call of process</li>
  * </ul>
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
@@ -46,7 +63,37 @@ public class GeneLingPipeAnnotator extends JCasAnnotator_ImplBase {
   public static final String PARAM_BESTCHUNKNUMBER = "BestChunkNumber";
 
   /**
-   * LingPipe ConfidenceChunker
+   * Name of configuration parameter which set the confidence threshold.
+   */
+  public static final String PARAM_CONFIDENCETHRESHOLD = "ConfidenceThreshold";
+
+  /**
+   * Name of configuration parameter which set the cache file.
+   */
+  public static final String PARAM_CACHEFILE = "CacheFile";
+
+  /**
+   * Name of configuration parameter which set the size of the cache file.
+   */
+  public static final String PARAM_CACHESIZE = "CacheSize";
+
+  /**
+   * Name of configuration parameter which set the memory used to find duplicate sentences.
+   */
+  public static final String PARAM_DEDUPCACHESIZE = "DedupCacheSize";
+
+  /**
+   * Name of configuration parameter which set when the model is loaded.
+   */
+  public static final String PARAM_MODELLOADING = "ModelLoading";
+
+  /**
+   * Shared resource of the LingPipe model
+   */
+  private LingPipeChunkerResource mModel;
+
+  /**
+   * LingPipe ConfidenceChunker, null until the model is loaded
    */
   private ConfidenceChunker mChunker;
 
@@ -55,30 +102,145 @@ public class GeneLingPipeAnnotator extends JCasAnnotator_ImplBase {
    */
   private int mBestChunkNumber;
 
+  /**
+   * Confidence below which chunks are not annotated
+   */
+  private float mConfidenceThreshold;
+
+  /**
+   * Recognizer which decodes the best chunks of a sentence, null until the model is loaded
+   */
+  private GeneRecognizer mRecognizer;
+
+  /**
+   * Reusable chunks of the current sentence, relative to the sentence
+   */
+  private SpanSink mSpans = new SpanSink();
+
+  /**
+   * Persistent cache of the chunks of each sentence, null if not configured
+   */
+  private SpanCache mCache;
+
+  /**
+   * Cache of the chunks of the sentences of this run, null if not configured
+   */
+  private SpanCache mDedupCache;
+
+  /**
+   * Number of sentences found in the cache of this run
+   */
+  private long mDuplicates;
+
+  /**
+   * Fingerprint of the model and parameters, part of the cache keys
+   */
+  private long mCacheFingerprint;
+
+  /**
+   * Number of sentences found in the cache
+   */
+  private long mCacheHits;
+
+  /**
+   * Number of sentences not found in the cache
+   */
+  private long mCacheMisses;
+
   /**
    * @see JCasAnnotator_ImplBase#process(JCas)
    */
-  public void process(JCas aJCas) {
+  public void process(JCas aJCas) throws AnalysisEngineProcessException {
     String docText = aJCas.getDocumentText();
 
-    // add annotations to CAS
-    Iterator<Chunk> it = mChunker.nBestChunks(docText.toCharArray(), 0, docText.length(),
-            mBestChunkNumber);
-    while (it.hasNext()) {
-      Chunk chunk = it.next();
-      int start = chunk.start();
-      int end = chunk.end();
-      float confidence = (float) Math.pow(2.0, chunk.score());
+    // wait for the model on first use
+    if (mRecognizer == null) {
+      long start = System.currentTimeMillis();
+      try {
+        mChunker = mModel.getChunker();
+      } catch (ResourceInitializationException e) {
+        throw new AnalysisEngineProcessException(e);
+      }
+      mRecognizer = new ChunkerGeneRecognizer(mChunker, mBestChunkNumber, mConfidenceThreshold);
+      getContext().getLogger().log(Level.INFO,
+              "Waited " + (System.currentTimeMillis() - start) + " ms for the LingPipe model");
+    }
+
+    // chunk each sentence of the document on its own
+    Iterator sentenceIter = aJCas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
+    if (!sentenceIter.hasNext()) {
+      annotate(aJCas, docText, 0, docText.length());
+    }
+    while (sentenceIter.hasNext()) {
+      SourceSentenceInformation sentence = (SourceSentenceInformation) sentenceIter.next();
+      annotate(aJCas, docText, sentence.getBegin(), sentence.getEnd());
+    }
+  }
+
+  /**
+   * Adds the best chunks of one sentence to CAS.
+   */
+  private void annotate(JCas aJCas, String docText, int begin, int end) {
+    // look up the chunks in the cache before decoding the sentence
+    SpanSink spans = mSpans;
+    spans.clear();
+    boolean found = false;
+    long key = 0;
+    if (mDedupCache != null || mCache != null) {
+      key = SpanCache.key(mCacheFingerprint, docText, begin, end);
+    }
+    if (mDedupCache != null) {
+      found = mDedupCache.get(key, end - begin, spans);
+      if (found) {
+        mDuplicates++;
+      }
+    }
+    if (!found && mCache != null) {
+      found = mCache.get(key, end - begin, spans);
+      if (!found) {
+        mCacheMisses++;
+      } else {
+        mCacheHits++;
+        if (mDedupCache != null) {
+          mDedupCache.put(key, end - begin, spans);
+        }
+      }
+    }
+    if (!found) {
+      mRecognizer.recognize(docText, begin, end, spans);
+      if (mDedupCache != null) {
+        mDedupCache.put(key, end - begin, spans);
+      }
+      if (mCache != null) {
+        mCache.put(key, end - begin, spans);
+      }
+    }
 
+    for (int i = 0; i < spans.size(); i++) {
       BaseAnnotation annotation = new BaseAnnotation(aJCas);
-      annotation.setBegin(start);
-      annotation.setEnd(end);
+      annotation.setBegin(begin + spans.getBegin(i));
+      annotation.setEnd(begin + spans.getEnd(i));
       annotation.setSource(getClass().getName());
-      annotation.setConfidence(confidence);
+      annotation.setConfidence(spans.getConfidence(i));
       annotation.addToIndexes();
     }
   }
 
+  /**
+   * @see org.apache.uima.analysis_component.AnalysisComponent_ImplBase#collectionProcessComplete()
+   */
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    if (mCache != null) {
+      mCache.flush();
+      getContext().getLogger().log(Level.INFO,
+              "Chunk cache: " + mCacheHits + " hits, " + mCacheMisses + " misses");
+    }
+    if (mDedupCache != null) {
+      getContext().getLogger().log(Level.INFO, "Duplicate sentences: " + mDuplicates);
+    }
+  }
+
   @Override
   public void initialize(UimaContext aContext) throws ResourceInitializationException {
     super.initialize(aContext);
@@ -86,21 +248,52 @@ public class GeneLingPipeAnnotator extends JCasAnnotator_ImplBase {
     // get the number of best chunk candidates
     mBestChunkNumber = (Integer) aContext.getConfigParameterValue("BestChunkNumber");
 
-    // initialize LingPipe ConfidenceChunker
-    File modelFile;
+    // get the confidence threshold, all chunks are annotated without one
+    Float threshold = (Float) aContext.getConfigParameterValue(PARAM_CONFIDENCETHRESHOLD);
+    mConfidenceThreshold = threshold == null ? 0.0f : threshold;
+
+    // get the LingPipe model shared by all annotator instances
     try {
-      modelFile = new File(getContext().getResourceFilePath("LingPipeGeneTagModel"));
-      mChunker = (ConfidenceChunker) AbstractExternalizable.readObject(modelFile);
+      mModel = (LingPipeChunkerResource) aContext.getResourceObject("LingPipeGeneTagModel");
     } catch (ResourceAccessException e) {
       throw new ResourceInitializationException(
               ResourceInitializationException.COULD_NOT_ACCESS_DATA,
               new Object[] { "LingPipeGeneTagModel" }, e);
-    } catch (IOException e) {
+    }
+
+    // load the model now, in the background or on first use
+    String modelLoading = (String) aContext.getConfigParameterValue(PARAM_MODELLOADING);
+    if ("Eager".equals(modelLoading)) {
+      mModel.getChunker();
+    } else if (modelLoading == null || "Background".equals(modelLoading)) {
+      mModel.preload();
+    } else if (!"Lazy".equals(modelLoading)) {
       throw new ResourceInitializationException(
-              ResourceInitializationException.COULD_NOT_ACCESS_DATA,
-              new Object[] { "LingPipeGeneTagModel" }, e);
-    } catch (ClassNotFoundException e) {
-      throw new ResourceInitializationException(e);
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  modelLoading, PARAM_MODELLOADING });
+    }
+
+    // cached chunks are keyed by the model file and the parameters
+    mCacheFingerprint = SpanCache.fingerprint(getClass().getName(), mModel.getModelFingerprint(),
+            String.valueOf(mBestChunkNumber), String.valueOf(mConfidenceThreshold));
+
+    // open the chunk cache
+    String cacheFile = (String) aContext.getConfigParameterValue(PARAM_CACHEFILE);
+    if (cacheFile != null && cacheFile.length() > 0) {
+      Integer cacheSize = (Integer) aContext.getConfigParameterValue(PARAM_CACHESIZE);
+      try {
+        mCache = SpanCache.open(new File(cacheFile), (cacheSize == null ? 64L : cacheSize) << 20);
+      } catch (IOException e) {
+        throw new ResourceInitializationException(
+                ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { cacheFile },
+                e);
+      }
+    }
+
+    // remember the chunks of this run to annotate duplicate sentences only once
+    Integer dedupCacheSize = (Integer) aContext.getConfigParameterValue(PARAM_DEDUPCACHESIZE);
+    if (dedupCacheSize != null && dedupCacheSize > 0) {
+      mDedupCache = SpanCache.memory((long) dedupCacheSize << 20);
     }
   }
 }
\ No newline at end of file
@@ -2,8 +2,9 @@ package ner.AnalysisEngine;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,14 +22,18 @@ import com.aliasi.util.AbstractExternalizable;
 import ner.TypeSystem.BaseAnnotation;
 
 /**
- * The GeneMentionFilter class is responsible to filter out duplicate annotations and annotations
- * with low confidences. It will filter all annotations whose confidence is lower than a threshold,
- * or annotations which match a group of filtering regular expressions. It can be configured with
- * the following parameters:
+ * The GeneMentionFilter class is responsible to filter out annotations with low confidences. It
+ * will filter all annotations whose confidence is lower than a threshold, or annotations which
+ * match a group of filtering regular expressions; duplicate and overlapping annotations are left to
+ * {@link GeneMentionResolver}. It can be configured with the following parameters:
  * <ul>
  * <li><code>ConfidenceThreshold</code> - confidence threshold to filter annotations</li>
  * <li><code>FilteringRegularExpressions</code> - regular expressions to filter annotations</li>
  * </ul>
+ * The checks are compiled into a chain of rules which is evaluated in order until one rejects the
+ * annotation. The rules read the covered text in place in the document text, the regular
+ * expressions through reused matchers whose region is the covered text, so filtering copies no
+ * text.
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
  */
@@ -55,6 +60,16 @@ public class GeneMentionFilter extends JCasAnnotator_ImplBase {
    */
   private Pattern[] mPatterns;
 
+  /**
+   * Rules which filter annotations, in the order they are checked
+   */
+  private FilterRule[] mRules;
+
+  /**
+   * Reusable list of the annotations to remove
+   */
+  private List<BaseAnnotation> mRemovedAnnotations = new ArrayList<BaseAnnotation>();
+
   /**
    * Iterates over the selected annotations in the CAS and filter annotations with low confidence
    * 
@@ -64,38 +79,27 @@ public class GeneMentionFilter extends JCasAnnotator_ImplBase {
    * @see JCasAnnotator_ImplBase#process(JCas)
    */
   public void process(JCas aJCas) {
+    String docText = aJCas.getDocumentText();
+    List<BaseAnnotation> removedAnnotations = mRemovedAnnotations;
+    removedAnnotations.clear();
 
-    LinkedList<BaseAnnotation> removedAnnotation = new LinkedList<BaseAnnotation>();
-
-    // iterate and filter annotations with lower confidence than threshold
+    // iterate and filter annotations rejected by any rule
     Iterator annotationIter = aJCas.getAnnotationIndex(BaseAnnotation.type).iterator();
     while (annotationIter.hasNext()) {
       BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
-      if (annot.getConfidence() < mConfidenceThreshold) {
-        removedAnnotation.add(annot);
-      } else if (annot.getCoveredText().length() <= 1) {
-        removedAnnotation.add(annot);
-      } else if ((annot.getCoveredText().contains("(") && annot.getCoveredText().contains(")"))
-              || (annot.getCoveredText().contains(")") && annot.getCoveredText().contains("("))) {
-        removedAnnotation.add(annot);
-
-      } else if (mPatterns != null) {
-        for (int i = 0; i < mPatterns.length; i++) {
-          Matcher matcher = mPatterns[i].matcher(annot.getCoveredText());
-          if (matcher.find()) {
-            removedAnnotation.add(annot);
-          }
+      for (FilterRule rule : mRules) {
+        if (rule.rejects(annot, docText, annot.getBegin(), annot.getEnd())) {
+          removedAnnotations.add(annot);
+          break;
         }
       }
     }
 
     // iterate and remove annotations
-    annotationIter = removedAnnotation.iterator();
-    while (annotationIter.hasNext()) {
-      BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
-      annot.removeFromIndexes(aJCas);
+    for (int i = 0; i < removedAnnotations.size(); i++) {
+      removedAnnotations.get(i).removeFromIndexes(aJCas);
     }
-
+    removedAnnotations.clear();
   }
 
   @Override
@@ -116,5 +120,110 @@ public class GeneMentionFilter extends JCasAnnotator_ImplBase {
       }
     } else
       mPatterns = null;
+
+    // compile the rules, cheapest first
+    List<FilterRule> rules = new ArrayList<FilterRule>();
+    rules.add(new ConfidenceRule(mConfidenceThreshold));
+    rules.add(new LengthRule());
+    rules.add(new ParenthesesRule());
+    if (mPatterns != null) {
+      for (int i = 0; i < mPatterns.length; i++) {
+        rules.add(new RegexRule(mPatterns[i]));
+      }
+    }
+    mRules = rules.toArray(new FilterRule[rules.size()]);
+  }
+
+  /**
+   * A check which may filter an annotation.
+   */
+  private interface FilterRule {
+
+    /**
+     * Checks an annotation.
+     * 
+     * @param annot
+     *          the annotation
+     * @param docText
+     *          text of the document
+     * @param begin
+     *          begin of the annotation
+     * @param end
+     *          end of the annotation
+     * @return true if the annotation is filtered
+     */
+    boolean rejects(BaseAnnotation annot, String docText, int begin, int end);
+  }
+
+  /**
+   * Filters annotations with lower confidence than the threshold.
+   */
+  private static class ConfidenceRule implements FilterRule {
+
+    /**
+     * The confidence threshold.
+     */
+    private float mThreshold;
+
+    ConfidenceRule(float threshold) {
+      mThreshold = threshold;
+    }
+
+    public boolean rejects(BaseAnnotation annot, String docText, int begin, int end) {
+      return annot.getConfidence() < mThreshold;
+    }
+  }
+
+  /**
+   * Filters annotations of at most one character.
+   */
+  private static class LengthRule implements FilterRule {
+
+    public boolean rejects(BaseAnnotation annot, String docText, int begin, int end) {
+      return end - begin <= 1;
+    }
+  }
+
+  /**
+   * Filters annotations which contain both an opening and a closing parenthesis.
+   */
+  private static class ParenthesesRule implements FilterRule {
+
+    public boolean rejects(BaseAnnotation annot, String docText, int begin, int end) {
+      boolean open = false;
+      boolean close = false;
+      for (int i = begin; i < end && !(open && close); i++) {
+        char c = docText.charAt(i);
+        if (c == '(') {
+          open = true;
+        } else if (c == ')') {
+          close = true;
+        }
+      }
+      return open && close;
+    }
+  }
+
+  /**
+   * Filters annotations in which a regular expression is found. The matcher region hides the rest
+   * of the document, so anchors and word boundaries behave as if the covered text was the whole
+   * input.
+   */
+  private static class RegexRule implements FilterRule {
+
+    /**
+     * Reusable matcher of the regular expression.
+     */
+    private Matcher mMatcher;
+
+    RegexRule(Pattern pattern) {
+      mMatcher = pattern.matcher("");
+    }
+
+    public boolean rejects(BaseAnnotation annot, String docText, int begin, int end) {
+      mMatcher.reset(docText);
+      mMatcher.region(begin, end);
+      return mMatcher.find();
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package ner.AnalysisEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+
+import ner.TypeSystem.BaseAnnotation;
+
+/**
+ * The GeneMentionResolver class resolves the annotations of several annotators into one set of
+ * gene mentions. Annotations with the same span are collapsed into the one with the highest
+ * confidence. Overlapping annotations are then resolved by a policy: the annotations are taken in
+ * order of preference, and each is kept only if it does not overlap a kept one, which is looked up
+ * in a tree of the kept spans. Resolving a document takes O(n log n) for n annotations. It can be
+ * configured with the following parameters:
+ *
+ * <ul>
+ * <li><code>OverlapPolicy</code> - <code>HighestConfidence</code> to prefer the annotation with the
+ * highest confidence, then the longest, <code>Longest</code> to prefer the longest, then the one
+ * with the highest confidence, or <code>KeepAll</code> to keep overlapping annotations</li>
+ * </ul>
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class GeneMentionResolver extends JCasAnnotator_ImplBase {
+
+  /**
+   * Name of configuration parameter which set the overlap policy.
+   */
+  public static final String PARAM_OVERLAPPOLICY = "OverlapPolicy";
+
+  /**
+   * Whether overlapping annotations are resolved
+   */
+  private boolean mResolveOverlaps;
+
+  /**
+   * Orders the annotations by preference
+   */
+  private Comparator<BaseAnnotation> mPreference;
+
+  /**
+   * Reusable list of the annotations of the current document
+   */
+  private List<BaseAnnotation> mAnnotations = new ArrayList<BaseAnnotation>();
+
+  /**
+   * Reusable list of the annotations to remove
+   */
+  private List<BaseAnnotation> mRemovedAnnotations = new ArrayList<BaseAnnotation>();
+
+  /**
+   * Number of removed duplicate annotations
+   */
+  private long mDuplicates;
+
+  /**
+   * Number of removed overlapping annotations
+   */
+  private long mOverlaps;
+
+  /**
+   * @see JCasAnnotator_ImplBase#process(JCas)
+   */
+  public void process(JCas aJCas) {
+    List<BaseAnnotation> annotations = mAnnotations;
+    List<BaseAnnotation> removedAnnotations = mRemovedAnnotations;
+    annotations.clear();
+    removedAnnotations.clear();
+
+    // the index is sorted by span, so duplicates are neighbors
+    BaseAnnotation previous = null;
+    Iterator annotationIter = aJCas.getAnnotationIndex(BaseAnnotation.type).iterator();
+    while (annotationIter.hasNext()) {
+      BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
+      if (previous != null && previous.getBegin() == annot.getBegin()
+              && previous.getEnd() == annot.getEnd()) {
+        mDuplicates++;
+        if (annot.getConfidence() > previous.getConfidence()) {
+          removedAnnotations.add(previous);
+          annotations.set(annotations.size() - 1, annot);
+          previous = annot;
+        } else {
+          removedAnnotations.add(annot);
+        }
+      } else {
+        annotations.add(annot);
+        previous = annot;
+      }
+    }
+
+    if (mResolveOverlaps && annotations.size() > 1) {
+      resolveOverlaps(annotations, removedAnnotations);
+    }
+
+    // iterate and remove annotations
+    for (int i = 0; i < removedAnnotations.size(); i++) {
+      removedAnnotations.get(i).removeFromIndexes(aJCas);
+    }
+    annotations.clear();
+    removedAnnotations.clear();
+  }
+
+  /**
+   * Keeps the preferred annotations which do not overlap a more preferred one.
+   */
+  private void resolveOverlaps(List<BaseAnnotation> annotations,
+          List<BaseAnnotation> removedAnnotations) {
+    BaseAnnotation[] preferred = annotations.toArray(new BaseAnnotation[annotations.size()]);
+    Arrays.sort(preferred, mPreference);
+
+    // the kept spans do not overlap, so only the nearest ones on each side need to be checked
+    TreeMap<Integer, Integer> kept = new TreeMap<Integer, Integer>();
+    for (BaseAnnotation annot : preferred) {
+      int begin = annot.getBegin();
+      int end = annot.getEnd();
+      Map.Entry<Integer, Integer> before = kept.floorEntry(begin);
+      Map.Entry<Integer, Integer> after = kept.ceilingEntry(begin);
+      if ((before != null && before.getValue() > begin) || (after != null && after.getKey() < end)) {
+        removedAnnotations.add(annot);
+        mOverlaps++;
+      } else {
+        kept.put(begin, end);
+      }
+    }
+  }
+
+  /**
+   * @see org.apache.uima.analysis_component.AnalysisComponent_ImplBase#collectionProcessComplete()
+   */
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    getContext().getLogger().log(Level.INFO,
+            "Resolved " + mDuplicates + " duplicate and " + mOverlaps + " overlapping annotations");
+  }
+
+  @Override
+  public void initialize(UimaContext aContext) throws ResourceInitializationException {
+    super.initialize(aContext);
+
+    // get the overlap policy
+    String policy = (String) aContext.getConfigParameterValue(PARAM_OVERLAPPOLICY);
+    mResolveOverlaps = true;
+    if (policy == null || "HighestConfidence".equals(policy)) {
+      mPreference = new Comparator<BaseAnnotation>() {
+        public int compare(BaseAnnotation a, BaseAnnotation b) {
+          int order = Float.compare(b.getConfidence(), a.getConfidence());
+          if (order == 0) {
+            order = compareLength(a, b);
+          }
+          return order != 0 ? order : comparePosition(a, b);
+        }
+      };
+    } else if ("Longest".equals(policy)) {
+      mPreference = new Comparator<BaseAnnotation>() {
+        public int compare(BaseAnnotation a, BaseAnnotation b) {
+          int order = compareLength(a, b);
+          if (order == 0) {
+            order = Float.compare(b.getConfidence(), a.getConfidence());
+          }
+          return order != 0 ? order : comparePosition(a, b);
+        }
+      };
+    } else if ("KeepAll".equals(policy)) {
+      mResolveOverlaps = false;
+    } else {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] { policy,
+                  PARAM_OVERLAPPOLICY });
+    }
+  }
+
+  /**
+   * Orders annotations by decreasing length.
+   */
+  private static int compareLength(BaseAnnotation a, BaseAnnotation b) {
+    int lengthA = a.getEnd() - a.getBegin();
+    int lengthB = b.getEnd() - b.getBegin();
+    return lengthA > lengthB ? -1 : (lengthA < lengthB ? 1 : 0);
+  }
+
+  /**
+   * Orders annotations by position, so ties are resolved the same way in every run.
+   */
+  private static int comparePosition(BaseAnnotation a, BaseAnnotation b) {
+    return a.getBegin() < b.getBegin() ? -1 : (a.getBegin() > b.getBegin() ? 1 : 0);
+  }
+}
@@ -1,5 +1,8 @@
 package ner.AnalysisEngine;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -7,12 +10,20 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+
+import edu.stanford.nlp.pipeline.DefaultPaths;
 
 import ner.TypeSystem.BaseAnnotation;
+import ner.TypeSystem.SourceSentenceInformation;
 import ner.util.PosTagNamedEntityRecognizer;
+import ner.util.PosTagNamedEntityRecognizerPool;
+import ner.util.SpanCache;
+import ner.util.SpanSink;
 
 /**
  * Annotator that wraps StanfordNLP NE Recognizer.
@@ -20,46 +31,254 @@ import ner.util.PosTagNamedEntityRecognizer;
 
 /**
  * The GeneStanfordNLPAnnotator class wraps the StanfordNLP NE Recognizer provided in the
- * assignment.
+ * assignment. It can be configured with the following parameters:
+ * 
+ * <ul>
+ * <li><code>CacheFile</code> - optional file of a persistent cache of the spans of each sentence</li>
+ * <li><code>CacheSize</code> - size of the cache file in megabytes</li>
+ * <li><code>DedupCacheSize</code> - megabytes of memory used to remember the spans of the sentences
+ * of this run, so duplicate sentences are annotated only once</li>
+ * <li><code>RecognizerPoolSize</code> - maximal number of Stanford recognizers shared by the
+ * annotator instances of the JVM, 0 for the number of processors</li>
+ * <li><code>ModelLoading</code> - when the first recognizer loads its models: <code>Eager</code>
+ * while the annotator is initialized, <code>Background</code> in a background thread started at
+ * initialization, or <code>Lazy</code> on the first call of process</li>
+ * </ul>
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
  */
 
 public class GeneStanfordNLPAnnotator extends JCasAnnotator_ImplBase {
 
+  /**
+   * Name of configuration parameter which set the cache file.
+   */
+  public static final String PARAM_CACHEFILE = "CacheFile";
+
+  /**
+   * Name of configuration parameter which set the size of the cache file.
+   */
+  public static final String PARAM_CACHESIZE = "CacheSize";
+
+  /**
+   * Name of configuration parameter which set the memory used to find duplicate sentences.
+   */
+  public static final String PARAM_DEDUPCACHESIZE = "DedupCacheSize";
+
+  /**
+   * Name of configuration parameter which set the maximal number of shared recognizers.
+   */
+  public static final String PARAM_RECOGNIZERPOOLSIZE = "RecognizerPoolSize";
+
+  /**
+   * Name of configuration parameter which set when the models are loaded.
+   */
+  public static final String PARAM_MODELLOADING = "ModelLoading";
+
+  /**
+   * Pool of the Stanford recognizers of this JVM
+   */
+  private PosTagNamedEntityRecognizerPool mRecognizerPool;
+
+  /**
+   * Recognizer taken from the pool for the current CAS, null if none is taken
+   */
   private PosTagNamedEntityRecognizer mNERecognizer;
 
+  /**
+   * Persistent cache of the spans of each sentence, null if not configured
+   */
+  private SpanCache mCache;
+
+  /**
+   * Cache of the spans of the sentences of this run, null if not configured
+   */
+  private SpanCache mDedupCache;
+
+  /**
+   * Number of sentences found in the cache of this run
+   */
+  private long mDuplicates;
+
+  /**
+   * Fingerprint of the model, part of the cache keys
+   */
+  private long mCacheFingerprint;
+
+  /**
+   * Number of sentences found in the cache
+   */
+  private long mCacheHits;
+
+  /**
+   * Number of sentences not found in the cache
+   */
+  private long mCacheMisses;
+
+  /**
+   * Reusable spans of the current sentence, relative to the sentence
+   */
+  private SpanSink mSpans = new SpanSink();
+
   /**
    * @see JCasAnnotator_ImplBase#process(JCas)
    */
-  public void process(JCas aJCas) {
+  public void process(JCas aJCas) throws AnalysisEngineProcessException {
 
     // get document text
     String docText = aJCas.getDocumentText();
 
-    // process via StanfordNLP NE recognizer
-    Map<Integer, Integer> geneSpans = mNERecognizer.getGeneSpans(docText);
+    try {
+      // recognize each sentence of the document on its own
+      Iterator sentenceIter = aJCas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
+      if (!sentenceIter.hasNext()) {
+        annotate(aJCas, docText, 0, docText.length());
+      }
+      while (sentenceIter.hasNext()) {
+        SourceSentenceInformation sentence = (SourceSentenceInformation) sentenceIter.next();
+        annotate(aJCas, docText, sentence.getBegin(), sentence.getEnd());
+      }
+    } catch (ResourceInitializationException e) {
+      throw new AnalysisEngineProcessException(e);
+    } finally {
+      // give the recognizer back for the other annotator instances
+      if (mNERecognizer != null) {
+        mRecognizerPool.release(mNERecognizer);
+        mNERecognizer = null;
+      }
+    }
+  }
 
-    Iterator it = geneSpans.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<Integer, Integer> pairs = (Entry<Integer, Integer>) it.next();
+  /**
+   * Adds the gene spans of one sentence to CAS.
+   */
+  private void annotate(JCas aJCas, String docText, int begin, int end)
+          throws ResourceInitializationException {
+    // look up the spans in the cache before recognizing the sentence
+    SpanSink spans = mSpans;
+    spans.clear();
+    boolean found = false;
+    long key = 0;
+    if (mDedupCache != null || mCache != null) {
+      key = SpanCache.key(mCacheFingerprint, docText, begin, end);
+    }
+    if (mDedupCache != null) {
+      found = mDedupCache.get(key, end - begin, spans);
+      if (found) {
+        mDuplicates++;
+      }
+    }
+    if (!found && mCache != null) {
+      found = mCache.get(key, end - begin, spans);
+      if (!found) {
+        mCacheMisses++;
+      } else {
+        mCacheHits++;
+        if (mDedupCache != null) {
+          mDedupCache.put(key, end - begin, spans);
+        }
+      }
+    }
+    if (!found) {
+      // take a recognizer for the rest of the CAS
+      if (mNERecognizer == null) {
+        mNERecognizer = mRecognizerPool.acquire();
+      }
+      mNERecognizer.recognize(docText, begin, end, spans);
+      if (mDedupCache != null) {
+        mDedupCache.put(key, end - begin, spans);
+      }
+      if (mCache != null) {
+        mCache.put(key, end - begin, spans);
+      }
+    }
 
-      // output the found spans
+    // output the found spans
+    for (int i = 0; i < spans.size(); i++) {
       BaseAnnotation annotation = new BaseAnnotation(aJCas);
-      annotation.setBegin(pairs.getKey());
-      annotation.setEnd(pairs.getValue());
+      annotation.setBegin(begin + spans.getBegin(i));
+      annotation.setEnd(begin + spans.getEnd(i));
       annotation.setSource(getClass().getName());
-      annotation.setConfidence(1.0f);
+      annotation.setConfidence(spans.getConfidence(i));
       annotation.addToIndexes();
     }
   }
 
+  /**
+   * @see org.apache.uima.analysis_component.AnalysisComponent_ImplBase#collectionProcessComplete()
+   */
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    if (mCache != null) {
+      mCache.flush();
+      getContext().getLogger().log(Level.INFO,
+              "Span cache: " + mCacheHits + " hits, " + mCacheMisses + " misses");
+    }
+    if (mDedupCache != null) {
+      getContext().getLogger().log(Level.INFO, "Duplicate sentences: " + mDuplicates);
+    }
+    getContext().getLogger().log(
+            Level.INFO,
+            "Recognizer pool: " + mRecognizerPool.getSize() + " recognizers, "
+                    + mRecognizerPool.getWaits() + " of " + mRecognizerPool.getAcquisitions()
+                    + " acquisitions waited " + mRecognizerPool.getWaitMillis() + " ms");
+  }
+
   @Override
   public void initialize(UimaContext aContext) throws ResourceInitializationException {
     super.initialize(aContext);
 
-    // initialize NE recognizer
-    mNERecognizer = new PosTagNamedEntityRecognizer();
+    // get the pool of NE recognizers
+    Integer poolSize = (Integer) aContext.getConfigParameterValue(PARAM_RECOGNIZERPOOLSIZE);
+    mRecognizerPool = PosTagNamedEntityRecognizerPool.getInstance(poolSize == null ? 0 : poolSize);
+
+    // report a missing tagger model now, even if it is loaded later
+    URL model = getClass().getClassLoader().getResource(DefaultPaths.DEFAULT_POS_MODEL);
+    if (model == null) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA,
+              new Object[] { DefaultPaths.DEFAULT_POS_MODEL });
+    }
+
+    // load the models now, in the background or on first use
+    String modelLoading = (String) aContext.getConfigParameterValue(PARAM_MODELLOADING);
+    if ("Eager".equals(modelLoading)) {
+      mRecognizerPool.release(mRecognizerPool.acquire());
+    } else if (modelLoading == null || "Background".equals(modelLoading)) {
+      mRecognizerPool.preload();
+    } else if (!"Lazy".equals(modelLoading)) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  modelLoading, PARAM_MODELLOADING });
+    }
+
+    // cached spans are keyed by the tagger model and its length and modification time
+    try {
+      mCacheFingerprint = SpanCache.fingerprint(getClass().getName(),
+              SpanCache.urlFingerprint(model));
+    } catch (IOException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA,
+              new Object[] { DefaultPaths.DEFAULT_POS_MODEL }, e);
+    }
+
+    // open the span cache
+    String cacheFile = (String) aContext.getConfigParameterValue(PARAM_CACHEFILE);
+    if (cacheFile != null && cacheFile.length() > 0) {
+      Integer cacheSize = (Integer) aContext.getConfigParameterValue(PARAM_CACHESIZE);
+      try {
+        mCache = SpanCache.open(new File(cacheFile), (cacheSize == null ? 64L : cacheSize) << 20);
+      } catch (IOException e) {
+        throw new ResourceInitializationException(
+                ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { cacheFile },
+                e);
+      }
+    }
 
+    // remember the spans of this run to annotate duplicate sentences only once
+    Integer dedupCacheSize = (Integer) aContext.getConfigParameterValue(PARAM_DEDUPCACHESIZE);
+    if (dedupCacheSize != null && dedupCacheSize > 0) {
+      mDedupCache = SpanCache.memory((long) dedupCacheSize << 20);
+    }
   }
 }
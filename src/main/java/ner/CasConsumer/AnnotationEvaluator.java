@@ -1,14 +1,33 @@
 package ner.CasConsumer;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Properties;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -23,13 +42,54 @@ import org.apache.uima.util.ProcessTrace;
 
 import ner.TypeSystem.BaseAnnotation;
 import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.CheckpointFile;
+import ner.util.CompletedLines;
+import ner.util.ExternalSorter;
+import ner.util.PackedAnswerSet;
 
 /**
  * AnnotationEvaluator evaluates the CPE's output with true answers and calculate the recall and
  * precision. Parameters needed by the AnnotationEvaluator are:
  * <ul>
  * <li><code>trueAnswerFile</code> - where the true answer file locates.</li>
+ * <li><code>Encoding</code> - character encoding of the true answer file and the error report,
+ * UTF-8 if not set like the collection reader's.</li>
+ * <li><code>ErrorReportFile</code> - where the false positives and false negatives are listed,
+ * one per line after <code>FP</code> or <code>FN</code> and a tab. If not set, no report is
+ * written and the system outputs are not kept.</li>
+ * <li><code>SortedMerge</code> - whether the true answers and the system outputs are sorted by
+ * identifier on disk and merged, instead of keeping the true answers in memory.</li>
+ * <li><code>SortBufferSize</code> - number of records sorted in memory in sorted merge mode.</li>
+ * <li><code>SortDirectory</code> - directory of the temporary files in sorted merge mode, the
+ * default temporary directory if not set.</li>
+ * <li><code>CheckpointFile</code> - where the counts are persisted. If it exists on
+ * initialization, counting continues from the persisted counts. Not supported in sorted merge
+ * mode.</li>
+ * <li><code>CheckpointInterval</code> - number of input lines between two checkpoints, the same as
+ * the collection reader's.</li>
  * </ul>
+ * The true answers are kept in a {@link PackedAnswerSet}, which needs a fraction of the memory of
+ * one String per answer.
+ * <p>
+ * A checkpoint persists all counts, including the answers found so far and the counts of each
+ * source, in a data file next to the checkpoint file, so a resumed run reports the same as an
+ * uninterrupted one. The false positives kept for the error report are appended to a second data
+ * file, whose length is part of the checkpoint. A run which writes an error report can only resume
+ * from a checkpoint which kept the false positives. Since CASes may arrive out of order, a
+ * checkpoint persists the lines completed without gaps, see {@link CompletedLines}, and it is only
+ * taken while no later CAS has been counted.
+ * <p>
+ * Besides the total recall, precision and F-measure, the true and false positives and the false
+ * negatives are reported by the source of the annotations, and the true and false positives of each
+ * source by confidence. The recall of a source counts each true answer it found once. Each
+ * processing thread counts into its own {@link EvaluationCounts} under the shared read lock of the
+ * counts, whose write lock a checkpoint takes to read them; the counts are added up when the
+ * collection is complete.
+ * <p>
+ * For true answers which do not fit into memory, the sorted merge mode writes the system outputs to
+ * an {@link ExternalSorter} and evaluates at the end of the collection: the true answers and the
+ * system outputs are both sorted by identifier and read side by side, so only the records of one
+ * sentence are held at a time. Its report lists the errors in the order of the identifiers.
  * <br>
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
@@ -42,25 +102,147 @@ public class AnnotationEvaluator extends CasConsumer_ImplBase implements CasObje
    */
   public static final String PARAM_TRUEANSWERFILE = "TrueAnswerFile";
 
+  /**
+   * Name of configuration parameter which set the character encoding of the true answer file and
+   * the error report.
+   */
+  public static final String PARAM_ENCODING = "Encoding";
+
+  /**
+   * Name of configuration parameter which set the path of the error report file.
+   */
+  public static final String PARAM_ERRORREPORTFILE = "ErrorReportFile";
+
+  /**
+   * Name of configuration parameter which set whether the evaluation is a sorted merge.
+   */
+  public static final String PARAM_SORTEDMERGE = "SortedMerge";
+
+  /**
+   * Name of configuration parameter which set the number of records sorted in memory.
+   */
+  public static final String PARAM_SORTBUFFERSIZE = "SortBufferSize";
+
+  /**
+   * Name of configuration parameter which set the directory of the temporary files.
+   */
+  public static final String PARAM_SORTDIRECTORY = "SortDirectory";
+
+  /**
+   * Name of configuration parameter which set the checkpoint file.
+   */
+  public static final String PARAM_CHECKPOINTFILE = "CheckpointFile";
+
+  /**
+   * Name of configuration parameter which set the number of input lines between two checkpoints.
+   */
+  public static final String PARAM_CHECKPOINTINTERVAL = "CheckpointInterval";
+
+  /**
+   * Checkpoint key of the count of TruePositive annotations.
+   */
+  private static final String KEY_TRUEPOSITIVE = "truePositive";
+
+  /**
+   * Checkpoint key of the count of FalsePositive annotations.
+   */
+  private static final String KEY_FALSEPOSITIVE = "falsePositive";
+
+  /**
+   * Default character encoding of the true answer file, the same as the collection reader's.
+   */
+  private static final String DEFAULT_ENCODING = "UTF-8";
+
+  /**
+   * Suffix of the data file of the counts, next to the checkpoint file.
+   */
+  private static final String SUFFIX_COUNTS = ".counts";
+
+  /**
+   * Suffix of the data file of the false positives, next to the checkpoint file.
+   */
+  private static final String SUFFIX_FALSEPOSITIVES = ".falsePositives";
+
   /**
    * The true answers will be stored here.
    */
-  HashSet<String> mTrueAnswers;
+  PackedAnswerSet mTrueAnswers;
+
+  /**
+   * The counts of the current thread.
+   */
+  ThreadLocal<EvaluationCounts> mThreadCounts;
 
   /**
-   * The system output will be stored here.
+   * The counts of all threads.
    */
-  HashSet<String> mSystemOutputs;
+  List<EvaluationCounts> mAllCounts = new ArrayList<EvaluationCounts>();
 
   /**
-   * The count of TruePositive annotations.
+   * Lock of the counts, read-locked while a CAS is counted and write-locked while a checkpoint
+   * reads them.
    */
-  int mTruePositiveCount;
+  ReadWriteLock mCountLock = new ReentrantReadWriteLock();
 
   /**
-   * The count of FalsePositive annotations.
+   * The true answer file.
    */
-  int mFalsePositiveCount;
+  File mTrueAnswerFile;
+
+  /**
+   * Character encoding of the true answer file and the error report.
+   */
+  Charset mCharset;
+
+  /**
+   * Sorter of the system outputs, null unless the evaluation is a sorted merge.
+   */
+  ExternalSorter mSystemOutputSorter;
+
+  /**
+   * Number of records sorted in memory.
+   */
+  int mSortBufferSize;
+
+  /**
+   * Directory of the temporary files, null for the default temporary directory.
+   */
+  File mSortDirectory;
+
+  /**
+   * The error report file, null if no report is written.
+   */
+  File mErrorReportFile;
+
+  /**
+   * The counts before the run was resumed, empty if it was not.
+   */
+  EvaluationCounts mResumedCounts;
+
+  /**
+   * Checkpoint file of the counts, null if checkpointing is disabled.
+   */
+  CheckpointFile mCheckpointFile;
+
+  /**
+   * Number of input lines between two checkpoints.
+   */
+  int mCheckpointInterval;
+
+  /**
+   * Number of input lines whose annotations have been evaluated, as of the last checkpoint.
+   */
+  volatile int mCheckpointLine;
+
+  /**
+   * Number of input lines whose annotations were evaluated before the run was resumed.
+   */
+  int mResumedLine;
+
+  /**
+   * Input lines whose annotations have been counted, null if checkpointing is disabled.
+   */
+  CompletedLines mCompletedLines;
 
   /**
    * Initializes this CAS Consumer with the parameters specified in the descriptor.
@@ -83,27 +265,243 @@ public class AnnotationEvaluator extends CasConsumer_ImplBase implements CasObje
     BufferedReader br;
     String line;
 
-    mTrueAnswers = new HashSet<String>();
-    mSystemOutputs = new HashSet<String>();
-    mTruePositiveCount = 0;
-    mFalsePositiveCount = 0;
-
-    // load the true answers into memory
+    mTrueAnswerFile = file;
+    String encoding = (String) getUimaContext().getConfigParameterValue(PARAM_ENCODING);
     try {
-      br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+      mCharset = Charset.forName(encoding == null || encoding.trim().length() == 0
+              ? DEFAULT_ENCODING : encoding.trim());
+    } catch (IllegalArgumentException e) {
+      throw new ResourceInitializationException(
+              ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  PARAM_ENCODING, this.getMetaData().getName(), encoding });
+    }
 
-      while ((line = br.readLine()) != null) {
-        mTrueAnswers.add(line);
+    Boolean sortedMerge = (Boolean) getUimaContext().getConfigParameterValue(PARAM_SORTEDMERGE);
+    if (sortedMerge != null && sortedMerge) {
+      if (!file.isFile()) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_TRUEANSWERFILE, this.getMetaData().getName(), file.getPath() });
+      }
+      Integer bufferSize = (Integer) getUimaContext().getConfigParameterValue(
+              PARAM_SORTBUFFERSIZE);
+      mSortBufferSize = bufferSize == null ? 1000000 : bufferSize;
+      String sortPath = (String) getUimaContext().getConfigParameterValue(PARAM_SORTDIRECTORY);
+      if (sortPath != null && sortPath.trim().length() > 0) {
+        mSortDirectory = new File(sortPath.trim());
       }
+      mSystemOutputSorter = new ExternalSorter(ExternalSorter.RECORD_ORDER, mSortBufferSize,
+              mSortDirectory);
+    } else {
+      mTrueAnswers = new PackedAnswerSet();
 
-      br.close();
+      // load the true answers into memory
+      try {
+        br = new BufferedReader(new InputStreamReader(new FileInputStream(file), mCharset));
 
-    } catch (FileNotFoundException e) {
-      throw new ResourceInitializationException(
-              ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
-                  PARAM_TRUEANSWERFILE, this.getMetaData().getName(), file.getPath() });
-    } catch (IOException e) {
-      e.printStackTrace();
+        while ((line = br.readLine()) != null) {
+          mTrueAnswers.add(line);
+        }
+
+        br.close();
+
+      } catch (FileNotFoundException e) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_TRUEANSWERFILE, this.getMetaData().getName(), file.getPath() });
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    // keep the false positives only for the error report, a sorted merge finds them at the end
+    String reportPath = (String) getUimaContext().getConfigParameterValue(PARAM_ERRORREPORTFILE);
+    if (reportPath != null && reportPath.trim().length() > 0) {
+      mErrorReportFile = new File(reportPath.trim());
+    }
+    final boolean keepFalsePositives = mErrorReportFile != null && mSystemOutputSorter == null;
+    mResumedCounts = new EvaluationCounts(keepFalsePositives);
+    mThreadCounts = new ThreadLocal<EvaluationCounts>() {
+      protected EvaluationCounts initialValue() {
+        EvaluationCounts counts = new EvaluationCounts(keepFalsePositives);
+        synchronized (mAllCounts) {
+          mAllCounts.add(counts);
+        }
+        return counts;
+      }
+    };
+
+    // continue counting from the last checkpoint
+    String checkpointPath = (String) getUimaContext().getConfigParameterValue(
+            PARAM_CHECKPOINTFILE);
+    if (checkpointPath != null && checkpointPath.trim().length() > 0) {
+      // the counts of a sorted merge are only known at the end
+      if (mSystemOutputSorter != null) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_CHECKPOINTFILE, this.getMetaData().getName(), checkpointPath });
+      }
+      Integer interval = (Integer) getUimaContext().getConfigParameterValue(
+              PARAM_CHECKPOINTINTERVAL);
+      mCheckpointInterval = interval == null ? 10000 : interval;
+      mCheckpointFile = new CheckpointFile(new File(checkpointPath.trim()));
+      boolean resumed;
+      try {
+        resumed = resume();
+      } catch (IOException e) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_CHECKPOINTFILE, this.getMetaData().getName(), checkpointPath });
+      }
+
+      mCompletedLines = new CompletedLines(mCheckpointLine);
+
+      // the false positives before the checkpoint are missing from the report
+      if (!resumed) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_ERRORREPORTFILE, this.getMetaData().getName(),
+                    mErrorReportFile.getPath() });
+      }
+    }
+  }
+
+  /**
+   * Continues counting from the last checkpoint, if there is one. The data file of the counts is
+   * stored before the checkpoint file, so it may be one checkpoint ahead and its line is taken.
+   *
+   * @return false if the false positives are kept but the checkpoint did not keep them
+   */
+  private boolean resume() throws IOException {
+    Properties checkpoint = mCheckpointFile.load();
+    File falsePositivesFile = mCheckpointFile.getDataFile(SUFFIX_FALSEPOSITIVES);
+    if (checkpoint == null) {
+      // the data files of a run without a checkpoint are not continued
+      if (falsePositivesFile.exists() && !falsePositivesFile.delete()) {
+        throw new IOException("Can not delete " + falsePositivesFile.getPath());
+      }
+      return true;
+    }
+    byte[] data = mCheckpointFile.loadData(SUFFIX_COUNTS);
+    if (data == null) {
+      throw new IOException("Missing " + mCheckpointFile.getDataFile(SUFFIX_COUNTS));
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    int line = in.readInt();
+    int trueAnswerCount = in.readInt();
+    long falsePositivesLength = in.readLong();
+    if (trueAnswerCount != mTrueAnswers.size()) {
+      throw new IOException("The checkpoint is for another true answer file");
+    }
+    mResumedCounts.read(in);
+
+    // drop the false positives appended after the checkpoint
+    if (mResumedCounts.mFalsePositives != null) {
+      if (falsePositivesLength < 0) {
+        return false;
+      }
+      RandomAccessFile file = new RandomAccessFile(falsePositivesFile, "rw");
+      try {
+        file.setLength(falsePositivesLength);
+      } finally {
+        file.close();
+      }
+      BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(
+              falsePositivesFile), "UTF-8"));
+      try {
+        String falsePositive;
+        while ((falsePositive = br.readLine()) != null) {
+          mResumedCounts.mFalsePositives.add(falsePositive);
+        }
+      } finally {
+        br.close();
+      }
+      mResumedCounts.mPersistedFalsePositiveCount = mResumedCounts.mFalsePositives.size();
+    }
+    mCheckpointLine = line;
+    mResumedLine = line;
+    return true;
+  }
+
+  /**
+   * Takes a checkpoint once the completed input lines reach the checkpoint interval and no later
+   * lines have been counted.
+   */
+  private void checkpointIfDue() throws IOException {
+    if (mCheckpointFile == null
+            || mCompletedLines.getLine() / mCheckpointInterval
+                    <= mCheckpointLine / mCheckpointInterval) {
+      return;
+    }
+    synchronized (this) {
+      // no CAS is counted meanwhile, so the counts are those of the completed lines
+      int line;
+      EvaluationCounts snapshot = new EvaluationCounts(false);
+      List<String> falsePositives = new ArrayList<String>();
+      mCountLock.writeLock().lock();
+      try {
+        line = mCompletedLines.getLine();
+        if (line / mCheckpointInterval <= mCheckpointLine / mCheckpointInterval
+                || !mCompletedLines.isContiguous()) {
+          return;
+        }
+        snapshot.addAll(mResumedCounts);
+        synchronized (mAllCounts) {
+          for (EvaluationCounts counts : mAllCounts) {
+            snapshot.addAll(counts);
+            if (counts.mFalsePositives != null) {
+              int count = counts.mFalsePositives.size();
+              falsePositives.addAll(counts.mFalsePositives.subList(
+                      counts.mPersistedFalsePositiveCount, count));
+              counts.mPersistedFalsePositiveCount = count;
+            }
+          }
+        }
+      } finally {
+        mCountLock.writeLock().unlock();
+      }
+      long falsePositivesLength = -1;
+      if (mResumedCounts.mFalsePositives != null) {
+        falsePositivesLength = appendFalsePositives(falsePositives);
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(line);
+      out.writeInt(mTrueAnswers.size());
+      out.writeLong(falsePositivesLength);
+      snapshot.write(out);
+      out.close();
+      mCheckpointFile.storeData(SUFFIX_COUNTS, bytes.toByteArray());
+
+      Properties checkpoint = new Properties();
+      checkpoint.setProperty(CheckpointFile.KEY_LINE, String.valueOf(line));
+      checkpoint.setProperty(KEY_TRUEPOSITIVE, String.valueOf(snapshot.mTruePositiveCount));
+      checkpoint.setProperty(KEY_FALSEPOSITIVE, String.valueOf(snapshot.mFalsePositiveCount));
+      mCheckpointFile.store(checkpoint);
+      mCheckpointLine = line;
+    }
+  }
+
+  /**
+   * Appends false positives to their data file and syncs it.
+   *
+   * @return length of the data file
+   */
+  private long appendFalsePositives(List<String> falsePositives) throws IOException {
+    FileOutputStream out = new FileOutputStream(
+            mCheckpointFile.getDataFile(SUFFIX_FALSEPOSITIVES), true);
+    try {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+      for (String falsePositive : falsePositives) {
+        writer.write(falsePositive);
+        writer.write('\n');
+      }
+      writer.flush();
+      out.getFD().sync();
+      return out.getChannel().size();
+    } finally {
+      out.close();
     }
   }
 
@@ -118,7 +516,7 @@ public class AnnotationEvaluator extends CasConsumer_ImplBase implements CasObje
    * 
    * @see org.apache.uima.collection.base_cpm.CasObjectProcessor#processCas(CAS)
    */
-  public synchronized void processCas(CAS aCAS) throws ResourceProcessException {
+  public void processCas(CAS aCAS) throws ResourceProcessException {
     JCas jcas;
     try {
       jcas = aCAS.getJCas();
@@ -126,50 +524,88 @@ public class AnnotationEvaluator extends CasConsumer_ImplBase implements CasObje
       throw new ResourceProcessException(e);
     }
 
-    String identifier = null;
+    // collect the sentences of the document, they are sorted by their offsets
+    ArrayList<SourceSentenceInformation> sentences = new ArrayList<SourceSentenceInformation>();
     Iterator it = jcas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
-    if (it.hasNext()) {
-      SourceSentenceInformation srcDocInfo = (SourceSentenceInformation) it.next();
-      identifier = srcDocInfo.getIdentifier();
+    while (it.hasNext()) {
+      sentences.add((SourceSentenceInformation) it.next());
     }
+    if (sentences.isEmpty()) {
+      return;
+    }
+    int sentenceIndex = 0;
+    MentionFormatter formatter = new MentionFormatter(jcas.getDocumentText());
+    EvaluationCounts counts = mThreadCounts.get();
+    StringBuilder output = new StringBuilder();
+    List<String> sortedOutputs = mSystemOutputSorter == null ? null : new ArrayList<String>();
 
-    // iterate and evaluate annotations
+    // iterate and evaluate annotations, a checkpoint reads the counts between two CASes
     Iterator annotationIter = jcas.getAnnotationIndex(BaseAnnotation.type).iterator();
     // Iterator annotationIter = jcas.getAnnotationIndex().iterator();
-    while (annotationIter.hasNext()) {
-      BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
+    mCountLock.readLock().lock();
+    try {
+      while (annotationIter.hasNext()) {
+        BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
 
-      // get the number of spaces in the prefix string of this entity
-      int prefixSpaceNum = 0;
-      String prefixString = jcas.getDocumentText().substring(0, annot.getBegin());
-      for (int i = 0; i < prefixString.length(); i++) {
-        if (prefixString.charAt(i) == ' ')
-          prefixSpaceNum++;
-      }
+        // find the sentence containing this entity
+        while (sentenceIndex < sentences.size() - 1
+                && annot.getBegin() > sentences.get(sentenceIndex).getEnd()) {
+          sentenceIndex++;
+        }
+        SourceSentenceInformation sentence = sentences.get(sentenceIndex);
 
-      // get the number of spaces in the content string of this entity
-      int contentSpaceNum = 0;
-      String contentString = jcas.getDocumentText().substring(annot.getBegin(), annot.getEnd());
-      for (int i = 0; i < contentString.length(); i++) {
-        if (contentString.charAt(i) == ' ')
-          contentSpaceNum++;
-      }
+        // skip sentences which were evaluated before the run was resumed
+        if (sentence.getLineIndex() < mResumedLine) {
+          continue;
+        }
+
+        // form the output string
+        output.setLength(0);
+        formatter.append(output, sentence, annot);
 
-      // calculate the non-space version beg and end position and form the output string
-      String outputString = identifier + "|" + (annot.getBegin() - prefixSpaceNum) + " "
-              + (annot.getEnd() - prefixSpaceNum - contentSpaceNum - 1) + "|"
-              + annot.getCoveredText();
+        // the records of a sorted merge are compared at the end, with their source and confidence
+        if (sortedOutputs != null) {
+          String source = annot.getSource();
+          output.append('\t').append(source == null ? EvaluationCounts.UNKNOWN_SOURCE : source)
+                  .append('\t').append(annot.getConfidence());
+          sortedOutputs.add(output.toString());
+          continue;
+        }
 
-      // store the output string
-      mSystemOutputs.add(outputString);
+        // compare the result with true answer
+        int answer = mTrueAnswers.indexOf(output);
+        if (answer >= 0) {
+          counts.addTruePositive(annot.getSource(), annot.getConfidence(), answer);
+        } else {
+          counts.addFalsePositive(annot.getSource(), annot.getConfidence(),
+                  counts.mFalsePositives == null ? null : output.toString());
+        }
+      }
+      if (mCompletedLines != null) {
+        mCompletedLines.complete(sentences.get(0).getFirstLineIndex(), sentences.get(
+                sentences.size() - 1).getLineIndex() + 1);
+      }
+    } finally {
+      mCountLock.readLock().unlock();
+    }
 
-      // compare the result with true answer
-      if (mTrueAnswers.contains(outputString))
-        mTruePositiveCount++;
-      else {
-        mFalsePositiveCount++;
+    if (sortedOutputs != null && !sortedOutputs.isEmpty()) {
+      try {
+        synchronized (mSystemOutputSorter) {
+          for (String sortedOutput : sortedOutputs) {
+            mSystemOutputSorter.add(sortedOutput);
+          }
+        }
+      } catch (IOException e) {
+        throw new ResourceProcessException(e);
       }
     }
+
+    try {
+      checkpointIfDue();
+    } catch (IOException e) {
+      throw new ResourceProcessException(e);
+    }
   }
 
   /**
@@ -185,13 +621,198 @@ public class AnnotationEvaluator extends CasConsumer_ImplBase implements CasObje
    */
   public void collectionProcessComplete(ProcessTrace aTrace) throws ResourceProcessException,
           IOException {
+    // add up the counts of all threads
+    EvaluationCounts total = new EvaluationCounts(mErrorReportFile != null
+            && mSystemOutputSorter == null);
+    total.addAll(mResumedCounts);
+    synchronized (mAllCounts) {
+      for (EvaluationCounts counts : mAllCounts) {
+        total.addAll(counts);
+      }
+    }
+
+    int trueAnswerCount;
+    if (mSystemOutputSorter != null) {
+      trueAnswerCount = evaluateSortedMerge(total);
+    } else {
+      trueAnswerCount = mTrueAnswers.size();
+      if (mErrorReportFile != null) {
+        writeErrorReport(total);
+      }
+    }
+
     System.out.println("Finished with ");
-    float recall = (float) mTruePositiveCount / mTrueAnswers.size();
-    float precision = (float) mTruePositiveCount / (mTruePositiveCount + mFalsePositiveCount);
+    float recall = (float) total.mTruePositiveCount / trueAnswerCount;
+    float precision = (float) total.mTruePositiveCount
+            / (total.mTruePositiveCount + total.mFalsePositiveCount);
     float fmeasure = 2 * recall * precision / (recall + precision);
     System.out.println("Recall = " + recall);
     System.out.println("Precision = " + precision);
     System.out.println("F-measure= " + fmeasure);
+    printSourceCounts(total, trueAnswerCount);
+  }
+
+  /**
+   * Prints the counts of each source and its counts by confidence.
+   */
+  private void printSourceCounts(EvaluationCounts total, int trueAnswerCount) {
+    Map<String, EvaluationCounts.SourceCounts> sources;
+    sources = new TreeMap<String, EvaluationCounts.SourceCounts>(total.mSources);
+    for (Map.Entry<String, EvaluationCounts.SourceCounts> entry : sources.entrySet()) {
+      EvaluationCounts.SourceCounts counts = entry.getValue();
+      int truePositiveCount = counts.getTruePositiveCount();
+      int falsePositiveCount = counts.getFalsePositiveCount();
+      int foundCount = counts.getFoundCount();
+      float recall = (float) foundCount / trueAnswerCount;
+      float precision = (float) truePositiveCount / (truePositiveCount + falsePositiveCount);
+      float fmeasure = 2 * recall * precision / (recall + precision);
+      System.out.println("Source " + entry.getKey() + ": TP = " + truePositiveCount + ", FP = "
+              + falsePositiveCount + ", FN = " + (trueAnswerCount - foundCount) + ", Recall = "
+              + recall + ", Precision = " + precision + ", F-measure = " + fmeasure);
+      for (int bucket = EvaluationCounts.BUCKET_COUNT - 1; bucket >= 0; bucket--) {
+        int bucketTruePositives = counts.mTruePositives[bucket];
+        int bucketFalsePositives = counts.mFalsePositives[bucket];
+        if (bucketTruePositives + bucketFalsePositives == 0) {
+          continue;
+        }
+        System.out.println(String.format("  Confidence %.1f-%.1f: TP = %d, FP = %d, Precision = %s",
+                (float) bucket / EvaluationCounts.BUCKET_COUNT, (float) (bucket + 1)
+                        / EvaluationCounts.BUCKET_COUNT, bucketTruePositives,
+                bucketFalsePositives, (float) bucketTruePositives
+                        / (bucketTruePositives + bucketFalsePositives)));
+      }
+    }
+  }
+
+  /**
+   * Sorts the true answers and merges them with the sorted system outputs sentence by sentence,
+   * counting the true and false positives and writing the errors to the report.
+   * 
+   * @param total
+   *          the counts
+   * @return number of distinct true answers
+   */
+  private int evaluateSortedMerge(EvaluationCounts total) throws IOException {
+    ExternalSorter trueAnswerSorter = new ExternalSorter(ExternalSorter.RECORD_ORDER,
+            mSortBufferSize, mSortDirectory);
+    BufferedWriter report = null;
+    int trueAnswerCount = 0;
+    int falseNegativeCount = 0;
+    try {
+      BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(
+              mTrueAnswerFile), mCharset));
+      try {
+        String line;
+        while ((line = br.readLine()) != null) {
+          trueAnswerSorter.add(line);
+        }
+      } finally {
+        br.close();
+      }
+      if (mErrorReportFile != null) {
+        report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                mErrorReportFile), mCharset));
+      }
+
+      // the true answers and system outputs of one sentence at a time
+      Set<String> answers = new LinkedHashSet<String>();
+      Set<String> found = new HashSet<String>();
+      Map<String, Set<String>> foundBySource = new HashMap<String, Set<String>>();
+      String answer = trueAnswerSorter.readLine();
+      String output = mSystemOutputSorter.readLine();
+      while (answer != null || output != null) {
+        String sentence = output;
+        if (answer != null
+                && (output == null || ExternalSorter.compareIdentifiers(answer, output) <= 0)) {
+          sentence = answer;
+        }
+        answers.clear();
+        found.clear();
+        foundBySource.clear();
+        while (answer != null && ExternalSorter.compareIdentifiers(answer, sentence) == 0) {
+          answers.add(answer);
+          answer = trueAnswerSorter.readLine();
+        }
+        trueAnswerCount += answers.size();
+        while (output != null && ExternalSorter.compareIdentifiers(output, sentence) == 0) {
+          // split the source and confidence from the record
+          int confidenceStart = output.lastIndexOf('\t');
+          int sourceStart = output.lastIndexOf('\t', confidenceStart - 1);
+          String record = output.substring(0, sourceStart);
+          String source = output.substring(sourceStart + 1, confidenceStart);
+          float confidence = Float.parseFloat(output.substring(confidenceStart + 1));
+          if (answers.contains(record)) {
+            total.addTruePositive(source, confidence, -1);
+            found.add(record);
+            Set<String> sourceFound = foundBySource.get(source);
+            if (sourceFound == null) {
+              sourceFound = new HashSet<String>();
+              foundBySource.put(source, sourceFound);
+            }
+            sourceFound.add(record);
+          } else {
+            total.addFalsePositive(source, confidence, null);
+            writeError(report, "FP", record);
+          }
+          output = mSystemOutputSorter.readLine();
+        }
+        for (Map.Entry<String, Set<String>> entry : foundBySource.entrySet()) {
+          total.getSourceCounts(entry.getKey()).mFoundCount += entry.getValue().size();
+        }
+        for (String missed : answers) {
+          if (!found.contains(missed)) {
+            falseNegativeCount++;
+            writeError(report, "FN", missed);
+          }
+        }
+      }
+    } finally {
+      trueAnswerSorter.close();
+      mSystemOutputSorter.close();
+      if (report != null) {
+        report.close();
+      }
+    }
+    if (mErrorReportFile != null) {
+      System.out.println("Wrote " + total.mFalsePositiveCount + " false positives and "
+              + falseNegativeCount + " false negatives to " + mErrorReportFile.getPath());
+    }
+    return trueAnswerCount;
+  }
+
+  /**
+   * Writes an error to the report, if one is written.
+   */
+  private static void writeError(BufferedWriter report, String kind, String record)
+          throws IOException {
+    if (report != null) {
+      report.write(kind);
+      report.write('\t');
+      report.write(record);
+      report.newLine();
+    }
+  }
+
+  /**
+   * Writes the false positives and the true answers which were not found to the error report.
+   */
+  private void writeErrorReport(EvaluationCounts total) throws IOException {
+    List<String> falseNegatives = new ArrayList<String>();
+    mTrueAnswers.getMissing(total.mFound, falseNegatives);
+    BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+            mErrorReportFile), mCharset));
+    try {
+      for (String falsePositive : total.mFalsePositives) {
+        writeError(bw, "FP", falsePositive);
+      }
+      for (String falseNegative : falseNegatives) {
+        writeError(bw, "FN", falseNegative);
+      }
+    } finally {
+      bw.close();
+    }
+    System.out.println("Wrote " + total.mFalsePositives.size() + " false positives and "
+            + falseNegatives.size() + " false negatives to " + mErrorReportFile.getPath());
   }
 
   /**
@@ -1,9 +1,13 @@
 package ner.CasConsumer;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Properties;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -14,18 +18,50 @@ import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceConfigurationException;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.ResourceProcessException;
+import org.apache.uima.util.Level;
 import org.apache.uima.util.ProcessTrace;
 
 import ner.TypeSystem.BaseAnnotation;
 import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.AsyncBinaryAnnotationWriter;
+import ner.util.AsyncFileWriter;
+import ner.util.AsyncWriter;
+import ner.util.BinaryAnnotationWriter;
+import ner.util.CheckpointFile;
+import ner.util.CompletedLines;
 
 /**
  * AnnotationPrinter prints to an output file all annotations in the CAS. <br>
  * Parameters needed by the AnnotationPrinter are
  * <ul>
  * <li><code>OutputFile</code> - where the output files should be written.</li>
+ * <li><code>Encoding</code> - character encoding of the text output file, UTF-8 if not set like
+ * the collection reader's.</li>
+ * <li><code>CheckpointFile</code> - where the output length is persisted. If it exists on
+ * initialization, the output file is truncated to the persisted length and appended to.</li>
+ * <li><code>CheckpointInterval</code> - number of input lines between two checkpoints, the same as
+ * the collection reader's.</li>
+ * <li><code>QueueSize</code> - number of documents whose output can wait to be written.</li>
+ * <li><code>FlushRecords</code> - number of annotations after which the output is written to the
+ * file, 0 if only by time.</li>
+ * <li><code>FlushInterval</code> - milliseconds after which the output is written to the file, 0
+ * if only by number.</li>
+ * <li><code>SyncOnFlush</code> - whether the file is also synced to disk when the output is
+ * written.</li>
+ * <li><code>OutputFormat</code> - <code>Text</code>, the default, for lines of
+ * <code>identifier|begin end|text</code>, or <code>Binary</code> for the format of
+ * {@link BinaryAnnotationWriter}, which also keeps the source and confidence of each annotation
+ * and writes an index by identifier next to the output file.</li>
  * </ul>
- * <br>
+ * The output of each document is handed to a writer thread, which writes many documents at once,
+ * so processing threads do not wait for the disk. If neither flush parameter is set, output is
+ * written when the writer's buffer is full and at the end. Checkpoints are taken by the writer
+ * thread once the output before them is synced. Since documents may arrive out of order, a
+ * checkpoint persists the lines completed without gaps, see {@link CompletedLines}, and it is only
+ * taken while no later document has been printed. Binary output goes to an
+ * {@link AsyncBinaryAnnotationWriter}, whose thread also compresses the blocks and writes them
+ * when they are full; a flush or a checkpoint ends the current block, and a resumed run reads the
+ * blocks before the checkpoint again to rebuild the entries of the index. <br>
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
  */
@@ -37,15 +73,111 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
    */
   public static final String PARAM_OUTPUTFILE = "OutputFile";
 
+  /**
+   * Name of configuration parameter which set the character encoding of the output file.
+   */
+  public static final String PARAM_ENCODING = "Encoding";
+
+  /**
+   * Name of configuration parameter which set the checkpoint file.
+   */
+  public static final String PARAM_CHECKPOINTFILE = "CheckpointFile";
+
+  /**
+   * Name of configuration parameter which set the number of input lines between two checkpoints.
+   */
+  public static final String PARAM_CHECKPOINTINTERVAL = "CheckpointInterval";
+
+  /**
+   * Name of configuration parameter which set the number of documents waiting to be written.
+   */
+  public static final String PARAM_QUEUESIZE = "QueueSize";
+
+  /**
+   * Name of configuration parameter which set the number of annotations between two flushes.
+   */
+  public static final String PARAM_FLUSHRECORDS = "FlushRecords";
+
+  /**
+   * Name of configuration parameter which set the milliseconds between two flushes.
+   */
+  public static final String PARAM_FLUSHINTERVAL = "FlushInterval";
+
+  /**
+   * Name of configuration parameter which set whether flushes sync the file.
+   */
+  public static final String PARAM_SYNCONFLUSH = "SyncOnFlush";
+
+  /**
+   * Name of configuration parameter which set the format of the output file.
+   */
+  public static final String PARAM_OUTPUTFORMAT = "OutputFormat";
+
+  /**
+   * Output format of text lines.
+   */
+  public static final String FORMAT_TEXT = "Text";
+
+  /**
+   * Output format of {@link BinaryAnnotationWriter}.
+   */
+  public static final String FORMAT_BINARY = "Binary";
+
+  /**
+   * Default character encoding of the output file, the same as the collection reader's.
+   */
+  private static final String DEFAULT_ENCODING = "UTF-8";
+
+  /**
+   * Checkpoint key of the length of the output file.
+   */
+  private static final String KEY_LENGTH = "length";
+
   /**
    * Output File
    */
   File outFile;
 
   /**
-   * Output File Writer
+   * Output File Stream
+   */
+  FileOutputStream outStream;
+
+  /**
+   * Writer thread of the output file
+   */
+  AsyncFileWriter fileWriter;
+
+  /**
+   * Writer thread of the binary output file, null if the output is text
+   */
+  AsyncBinaryAnnotationWriter binaryWriter;
+
+  /**
+   * Checkpoint file of the output length, null if checkpointing is disabled.
+   */
+  CheckpointFile checkpointFile;
+
+  /**
+   * Number of input lines between two checkpoints.
+   */
+  int checkpointInterval;
+
+  /**
+   * Number of input lines whose annotations have been printed, as of the last checkpoint.
+   */
+  int checkpointLine;
+
+  /**
+   * Number of input lines whose annotations were printed before the run was resumed.
+   */
+  int resumedLine;
+
+  /**
+   * Input lines whose annotations have been handed to the writer, null if checkpointing is
+   * disabled.
    */
-  FileWriter fileWriter;
+  CompletedLines completedLines;
 
   /**
    * Initializes this CAS Consumer with the parameters specified in the descriptor.
@@ -69,11 +201,114 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
                 ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] { oPath,
                     PARAM_OUTPUTFILE });
     }
+    String checkpointPath = (String) getUimaContext().getConfigParameterValue(
+            PARAM_CHECKPOINTFILE);
+    String format = (String) getUimaContext().getConfigParameterValue(PARAM_OUTPUTFORMAT);
+    format = format == null || format.trim().length() == 0 ? FORMAT_TEXT : format.trim();
+    if (!FORMAT_TEXT.equals(format) && !FORMAT_BINARY.equals(format)) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] { format,
+                  PARAM_OUTPUTFORMAT });
+    }
+    String encoding = (String) getUimaContext().getConfigParameterValue(PARAM_ENCODING);
+    Charset charset;
+    try {
+      charset = Charset.forName(encoding == null || encoding.trim().length() == 0
+              ? DEFAULT_ENCODING : encoding.trim());
+    } catch (IllegalArgumentException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.RESOURCE_DATA_NOT_VALID, new Object[] { encoding,
+                  PARAM_ENCODING });
+    }
+    // the output is written when the writer's buffer is full without a flush policy
+    Integer queueSize = (Integer) getUimaContext().getConfigParameterValue(PARAM_QUEUESIZE);
+    Integer flushRecords = (Integer) getUimaContext().getConfigParameterValue(PARAM_FLUSHRECORDS);
+    Integer flushInterval = (Integer) getUimaContext().getConfigParameterValue(PARAM_FLUSHINTERVAL);
+    Boolean syncOnFlush = (Boolean) getUimaContext().getConfigParameterValue(PARAM_SYNCONFLUSH);
+    long length = -1;
     try {
-      fileWriter = new FileWriter(outFile);
+      if (checkpointPath != null && checkpointPath.trim().length() > 0) {
+        Integer interval = (Integer) getUimaContext().getConfigParameterValue(
+                PARAM_CHECKPOINTINTERVAL);
+        checkpointInterval = interval == null ? 10000 : interval;
+        checkpointFile = new CheckpointFile(new File(checkpointPath.trim()));
+        length = resume();
+        completedLines = new CompletedLines(checkpointLine);
+      }
+      if (FORMAT_BINARY.equals(format)) {
+        // the binary writer drops the blocks after the checkpoint itself
+        BinaryAnnotationWriter writer = BinaryAnnotationWriter.append(outFile,
+                Math.max(length, 0), BinaryAnnotationWriter.DEFAULT_BLOCK_SIZE, null);
+        binaryWriter = new AsyncBinaryAnnotationWriter(writer, queueSize == null ? 1024
+                : queueSize, flushRecords == null ? 0 : flushRecords, flushInterval == null ? 0
+                : flushInterval, syncOnFlush != null && syncOnFlush, getClass().getSimpleName()
+                + " writer");
+        return;
+      }
+      if (length >= 0) {
+        RandomAccessFile file = new RandomAccessFile(outFile, "rw");
+        try {
+          file.setLength(length);
+        } finally {
+          file.close();
+        }
+      }
+      outStream = new FileOutputStream(outFile, length >= 0);
     } catch (IOException e) {
       throw new ResourceInitializationException(e);
     }
+
+    fileWriter = new AsyncFileWriter(outStream.getChannel(), charset,
+            queueSize == null ? 1024 : queueSize, flushRecords == null ? 0 : flushRecords,
+            flushInterval == null ? 0 : flushInterval, syncOnFlush != null && syncOnFlush,
+            getClass().getSimpleName() + " writer");
+  }
+
+  /**
+   * Continues from the last checkpoint, if there is one.
+   * 
+   * @return length of the output file at the checkpoint, to which it is truncated and appended,
+   *         or -1 if there is no checkpoint
+   */
+  private long resume() throws IOException {
+    Properties checkpoint = checkpointFile.load();
+    if (checkpoint == null) {
+      return -1;
+    }
+    checkpointLine = (int) CheckpointFile.getLong(checkpoint, CheckpointFile.KEY_LINE);
+    resumedLine = checkpointLine;
+    return CheckpointFile.getLong(checkpoint, KEY_LENGTH);
+  }
+
+  /**
+   * Marks the input lines of a document as printed and takes a checkpoint once the completed lines
+   * reach the checkpoint interval and no later lines have been printed. The writer thread syncs the
+   * output to disk before its length is persisted.
+   */
+  private void checkpointIfDue(int firstLineIndex, int lastLineIndex) throws IOException {
+    if (checkpointFile == null) {
+      return;
+    }
+    completedLines.complete(firstLineIndex, lastLineIndex + 1);
+    final int line = completedLines.getLine();
+    if (line / checkpointInterval <= checkpointLine / checkpointInterval
+            || !completedLines.isContiguous()) {
+      return;
+    }
+    AsyncWriter.SyncListener listener = new AsyncWriter.SyncListener() {
+      public void synced(long position) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(CheckpointFile.KEY_LINE, String.valueOf(line));
+        checkpoint.setProperty(KEY_LENGTH, String.valueOf(position));
+        checkpointFile.store(checkpoint);
+      }
+    };
+    if (binaryWriter != null) {
+      binaryWriter.sync(listener);
+    } else {
+      fileWriter.sync(listener);
+    }
+    checkpointLine = line;
   }
 
   /**
@@ -87,7 +322,7 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
    * 
    * @see org.apache.uima.collection.base_cpm.CasObjectProcessor#processCas(CAS)
    */
-  public synchronized void processCas(CAS aCAS) throws ResourceProcessException {
+  public void processCas(CAS aCAS) throws ResourceProcessException {
     JCas jcas;
     try {
       jcas = aCAS.getJCas();
@@ -95,44 +330,63 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
       throw new ResourceProcessException(e);
     }
 
-    String identifier = null;
+    // collect the sentences of the document, they are sorted by their offsets
+    ArrayList<SourceSentenceInformation> sentences = new ArrayList<SourceSentenceInformation>();
     Iterator it = jcas.getAnnotationIndex(SourceSentenceInformation.type).iterator();
-    if (it.hasNext()) {
-      SourceSentenceInformation srcDocInfo = (SourceSentenceInformation) it.next();
-      identifier = srcDocInfo.getIdentifier();
+    while (it.hasNext()) {
+      sentences.add((SourceSentenceInformation) it.next());
+    }
+    if (sentences.isEmpty()) {
+      return;
     }
+    int sentenceIndex = 0;
+    MentionFormatter formatter = new MentionFormatter(jcas.getDocumentText());
+    StringBuilder output = new StringBuilder();
+    int recordCount = 0;
+    AsyncBinaryAnnotationWriter.Batch mentions = binaryWriter == null ? null
+            : new AsyncBinaryAnnotationWriter.Batch();
 
     // iterate and print annotations
     Iterator annotationIter = jcas.getAnnotationIndex(BaseAnnotation.type).iterator();
     while (annotationIter.hasNext()) {
       BaseAnnotation annot = (BaseAnnotation) annotationIter.next();
 
-      // get the number of spaces in the prefix string of this entity
-      int prefixSpaceNum = 0;
-      String prefixString = jcas.getDocumentText().substring(0, annot.getBegin());
-      for (int i = 0; i < prefixString.length(); i++) {
-        if (prefixString.charAt(i) == ' ')
-          prefixSpaceNum++;
+      // find the sentence containing this entity
+      while (sentenceIndex < sentences.size() - 1
+              && annot.getBegin() > sentences.get(sentenceIndex).getEnd()) {
+        sentenceIndex++;
       }
+      SourceSentenceInformation sentence = sentences.get(sentenceIndex);
 
-      // get the number of spaces in the content string of this entity
-      int contentSpaceNum = 0;
-      String contentString = jcas.getDocumentText().substring(annot.getBegin(), annot.getEnd());
-      for (int i = 0; i < contentString.length(); i++) {
-        if (contentString.charAt(i) == ' ')
-          contentSpaceNum++;
+      // skip sentences which were printed before the run was resumed
+      if (sentence.getLineIndex() < resumedLine) {
+        continue;
       }
 
-      // calculate the non-space version beg and end position and form the output string
-      String outputString = identifier + "|" + (annot.getBegin() - prefixSpaceNum) + " "
-              + (annot.getEnd() - prefixSpaceNum - contentSpaceNum - 1) + "|"
-              + annot.getCoveredText();
-
       // output the result
+      if (mentions != null) {
+        mentions.add(sentence.getIdentifier(), formatter.getBegin(sentence, annot),
+                formatter.getEnd(sentence, annot), annot.getCoveredText(), annot.getSource(),
+                annot.getConfidence());
+        continue;
+      }
+      formatter.append(output, sentence, annot);
+      output.append('\n');
+      recordCount++;
+    }
+
+    // hand over the output in document order
+    synchronized (this) {
       try {
-        fileWriter.write(outputString);
-        fileWriter.write("\n");
-        fileWriter.flush();
+        if (mentions != null) {
+          if (mentions.size() > 0) {
+            binaryWriter.write(mentions);
+          }
+        } else if (recordCount > 0) {
+          fileWriter.write(output.toString(), recordCount);
+        }
+        checkpointIfDue(sentences.get(0).getFirstLineIndex(), sentences.get(
+                sentences.size() - 1).getLineIndex());
       } catch (IOException e) {
         throw new ResourceProcessException(e);
       }
@@ -152,8 +406,24 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
    */
   public void collectionProcessComplete(ProcessTrace aTrace) throws ResourceProcessException,
           IOException {
+    if (binaryWriter != null) {
+      try {
+        binaryWriter.close();
+        getUimaContext().getLogger().log(Level.INFO,
+                "Output queue was full " + binaryWriter.getQueueFullCount() + " times");
+      } finally {
+        binaryWriter = null;
+      }
+    }
     if (fileWriter != null) {
-      fileWriter.close();
+      try {
+        fileWriter.close();
+        getUimaContext().getLogger().log(Level.INFO,
+                "Output queue was full " + fileWriter.getQueueFullCount() + " times");
+      } finally {
+        fileWriter = null;
+        outStream.close();
+      }
     }
   }
 
@@ -163,12 +433,26 @@ public class AnnotationPrinter extends CasConsumer_ImplBase implements CasObject
    * @see org.apache.uima.resource.Resource#destroy()
    */
   public void destroy() {
+    if (binaryWriter != null) {
+      try {
+        binaryWriter.close();
+      } catch (IOException e) {
+        // ignore IOException on destroy
+      }
+      binaryWriter = null;
+    }
     if (fileWriter != null) {
       try {
         fileWriter.close();
       } catch (IOException e) {
         // ignore IOException on destroy
       }
+      try {
+        outStream.close();
+      } catch (IOException e) {
+        // ignore IOException on destroy
+      }
+      fileWriter = null;
     }
   }
 
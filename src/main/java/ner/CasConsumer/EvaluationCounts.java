@@ -0,0 +1,311 @@
+package ner.CasConsumer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EvaluationCounts class counts the true and false positives of the annotations evaluated by
+ * one thread, in total and by the source and the confidence of the annotations, and remembers
+ * which true answers were found. Each processing thread of the evaluator counts into its own
+ * instance, holding a read lock shared by all threads only against checkpoints, and the instances
+ * are added up when the collection is complete. The counts can be written to a checkpoint and read back; the
+ * records of the false positives are persisted separately.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+class EvaluationCounts {
+
+  /**
+   * Number of confidence buckets, each a tenth of the range from 0 to 1.
+   */
+  static final int BUCKET_COUNT = 10;
+
+  /**
+   * Source of annotations which do not name one.
+   */
+  static final String UNKNOWN_SOURCE = "unknown";
+
+  /**
+   * The counts of the annotations of one source.
+   */
+  static class SourceCounts {
+
+    /**
+     * True positives by confidence bucket.
+     */
+    final int[] mTruePositives = new int[BUCKET_COUNT];
+
+    /**
+     * False positives by confidence bucket.
+     */
+    final int[] mFalsePositives = new int[BUCKET_COUNT];
+
+    /**
+     * Indexes of the true answers found by the source.
+     */
+    final BitSet mFound = new BitSet();
+
+    /**
+     * Number of true answers found by the source which are not in the bit set.
+     */
+    int mFoundCount;
+
+    /**
+     * @return number of true positives
+     */
+    int getTruePositiveCount() {
+      return sum(mTruePositives);
+    }
+
+    /**
+     * @return number of false positives
+     */
+    int getFalsePositiveCount() {
+      return sum(mFalsePositives);
+    }
+
+    /**
+     * @return number of distinct true answers found by the source
+     */
+    int getFoundCount() {
+      return mFoundCount + mFound.cardinality();
+    }
+
+    /**
+     * Adds the counts of another instance.
+     */
+    void addAll(SourceCounts other) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        mTruePositives[i] += other.mTruePositives[i];
+        mFalsePositives[i] += other.mFalsePositives[i];
+      }
+      mFound.or(other.mFound);
+      mFoundCount += other.mFoundCount;
+    }
+
+    /**
+     * Writes the counts.
+     */
+    void write(DataOutputStream out) throws IOException {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        out.writeInt(mTruePositives[i]);
+        out.writeInt(mFalsePositives[i]);
+      }
+      out.writeInt(mFoundCount);
+      writeBits(out, mFound);
+    }
+
+    /**
+     * Adds counts written by {@link #write(DataOutputStream)}.
+     */
+    void read(DataInputStream in) throws IOException {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        mTruePositives[i] += in.readInt();
+        mFalsePositives[i] += in.readInt();
+      }
+      mFoundCount += in.readInt();
+      readBits(in, mFound);
+    }
+  }
+
+  /**
+   * Number of true positives.
+   */
+  int mTruePositiveCount;
+
+  /**
+   * Number of false positives.
+   */
+  int mFalsePositiveCount;
+
+  /**
+   * Indexes of the true answers found.
+   */
+  final BitSet mFound = new BitSet();
+
+  /**
+   * Records of the false positives, null if they are not kept.
+   */
+  final List<String> mFalsePositives;
+
+  /**
+   * Number of the records of the false positives which have been persisted.
+   */
+  int mPersistedFalsePositiveCount;
+
+  /**
+   * Counts by source.
+   */
+  final Map<String, SourceCounts> mSources = new HashMap<String, SourceCounts>();
+
+  /**
+   * @param keepFalsePositives
+   *          whether the records of the false positives are kept
+   */
+  EvaluationCounts(boolean keepFalsePositives) {
+    mFalsePositives = keepFalsePositives ? new ArrayList<String>() : null;
+  }
+
+  /**
+   * Counts a true positive.
+   *
+   * @param source
+   *          source of the annotation, null if unknown
+   * @param confidence
+   *          confidence of the annotation
+   * @param answer
+   *          index of the true answer, -1 if the caller counts the answers found itself
+   */
+  void addTruePositive(String source, float confidence, int answer) {
+    mTruePositiveCount++;
+    SourceCounts counts = getSourceCounts(source);
+    counts.mTruePositives[getBucket(confidence)]++;
+    if (answer >= 0) {
+      mFound.set(answer);
+      counts.mFound.set(answer);
+    }
+  }
+
+  /**
+   * Counts a false positive.
+   *
+   * @param source
+   *          source of the annotation, null if unknown
+   * @param confidence
+   *          confidence of the annotation
+   * @param record
+   *          record of the annotation, kept if false positives are kept
+   */
+  void addFalsePositive(String source, float confidence, String record) {
+    mFalsePositiveCount++;
+    getSourceCounts(source).mFalsePositives[getBucket(confidence)]++;
+    if (mFalsePositives != null) {
+      mFalsePositives.add(record);
+    }
+  }
+
+  /**
+   * Gets the counts of a source, creating them if it has none.
+   */
+  SourceCounts getSourceCounts(String source) {
+    if (source == null) {
+      source = UNKNOWN_SOURCE;
+    }
+    SourceCounts counts = mSources.get(source);
+    if (counts == null) {
+      counts = new SourceCounts();
+      mSources.put(source, counts);
+    }
+    return counts;
+  }
+
+  /**
+   * Adds the counts of another instance.
+   */
+  void addAll(EvaluationCounts other) {
+    mTruePositiveCount += other.mTruePositiveCount;
+    mFalsePositiveCount += other.mFalsePositiveCount;
+    mFound.or(other.mFound);
+    if (mFalsePositives != null && other.mFalsePositives != null) {
+      mFalsePositives.addAll(other.mFalsePositives);
+    }
+    for (Map.Entry<String, SourceCounts> entry : other.mSources.entrySet()) {
+      getSourceCounts(entry.getKey()).addAll(entry.getValue());
+    }
+  }
+
+  /**
+   * Writes the counts, without the records of the false positives.
+   *
+   * @param out
+   *          where the counts are written
+   * @throws IOException
+   *           if the counts can not be written
+   */
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(mTruePositiveCount);
+    out.writeInt(mFalsePositiveCount);
+    writeBits(out, mFound);
+    out.writeInt(mSources.size());
+    for (Map.Entry<String, SourceCounts> entry : mSources.entrySet()) {
+      out.writeUTF(entry.getKey());
+      entry.getValue().write(out);
+    }
+  }
+
+  /**
+   * Adds counts written by {@link #write(DataOutputStream)}.
+   *
+   * @param in
+   *          where the counts are read from
+   * @throws IOException
+   *           if the counts can not be read
+   */
+  void read(DataInputStream in) throws IOException {
+    mTruePositiveCount += in.readInt();
+    mFalsePositiveCount += in.readInt();
+    readBits(in, mFound);
+    int sourceCount = in.readInt();
+    for (int i = 0; i < sourceCount; i++) {
+      getSourceCounts(in.readUTF()).read(in);
+    }
+  }
+
+  /**
+   * Writes a bit set as its number of words followed by the words.
+   */
+  private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+    int wordCount = (bits.length() + 63) >>> 6;
+    out.writeInt(wordCount);
+    int index = bits.nextSetBit(0);
+    for (int i = 0; i < wordCount; i++) {
+      long word = 0;
+      while (index >= 0 && index >>> 6 == i) {
+        word |= 1L << (index & 63);
+        index = bits.nextSetBit(index + 1);
+      }
+      out.writeLong(word);
+    }
+  }
+
+  /**
+   * Sets the bits written by {@link #writeBits(DataOutputStream, BitSet)}.
+   */
+  private static void readBits(DataInputStream in, BitSet bits) throws IOException {
+    int wordCount = in.readInt();
+    for (int i = 0; i < wordCount; i++) {
+      long word = in.readLong();
+      for (int bit = 0; word != 0; bit++, word >>>= 1) {
+        if ((word & 1) != 0) {
+          bits.set((i << 6) + bit);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the bucket of a confidence, confidences out of range fall into the first or last one.
+   */
+  static int getBucket(float confidence) {
+    int bucket = (int) (confidence * BUCKET_COUNT);
+    return bucket < 0 ? 0 : (bucket >= BUCKET_COUNT ? BUCKET_COUNT - 1 : bucket);
+  }
+
+  /**
+   * Adds up counts.
+   */
+  private static int sum(int[] counts) {
+    int sum = 0;
+    for (int count : counts) {
+      sum += count;
+    }
+    return sum;
+  }
+}
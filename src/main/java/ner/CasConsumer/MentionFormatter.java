@@ -0,0 +1,161 @@
+package ner.CasConsumer;
+
+import ner.TypeSystem.BaseAnnotation;
+import ner.TypeSystem.SourceSentenceInformation;
+
+import org.apache.uima.jcas.cas.IntegerArray;
+
+/**
+ * The MentionFormatter class formats gene mentions as the records of the output and answer files,
+ * <code>identifier|begin end|text</code>, where begin and end are offsets in the sentence with the
+ * spaces left out and end is inclusive. The offsets are mapped with the space counts the reader
+ * stores with each sentence, so a record takes constant time however long the sentence is. The
+ * counts of sentences without them are computed once per sentence.
+ * <p>
+ * A formatter is used by one thread at a time, for the sentences of one document in order.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+class MentionFormatter {
+
+  /**
+   * Text of the document.
+   */
+  private String mDocumentText;
+
+  /**
+   * The current sentence.
+   */
+  private SourceSentenceInformation mSentence;
+
+  /**
+   * Begin of the current sentence.
+   */
+  private int mSentenceBegin;
+
+  /**
+   * Length of the current sentence.
+   */
+  private int mSentenceLength;
+
+  /**
+   * Identifier of the current sentence.
+   */
+  private String mIdentifier;
+
+  /**
+   * Space counts of the current sentence stored by the reader, null if it stored none.
+   */
+  private IntegerArray mStoredCounts;
+
+  /**
+   * Space counts of the current sentence computed here, if the reader stored none.
+   */
+  private int[] mComputedCounts = new int[0];
+
+  /**
+   * @param documentText
+   *          text of the document
+   */
+  MentionFormatter(String documentText) {
+    mDocumentText = documentText;
+  }
+
+  /**
+   * Appends the record of a mention.
+   *
+   * @param output
+   *          the output
+   * @param sentence
+   *          sentence containing the mention
+   * @param annot
+   *          the mention
+   */
+  void append(StringBuilder output, SourceSentenceInformation sentence, BaseAnnotation annot) {
+    int begin = getBegin(sentence, annot);
+    int end = getEnd(sentence, annot);
+    output.append(mIdentifier).append('|').append(begin).append(' ').append(end).append('|')
+            .append(mDocumentText, annot.getBegin(), annot.getEnd());
+  }
+
+  /**
+   * Gets the begin of a mention in its sentence with the spaces left out.
+   *
+   * @param sentence
+   *          sentence containing the mention
+   * @param annot
+   *          the mention
+   * @return the begin
+   */
+  int getBegin(SourceSentenceInformation sentence, BaseAnnotation annot) {
+    if (sentence != mSentence) {
+      setSentence(sentence);
+    }
+    int begin = annot.getBegin();
+    return begin - mSentenceBegin - countSpaces(begin);
+  }
+
+  /**
+   * Gets the inclusive end of a mention in its sentence with the spaces left out.
+   *
+   * @param sentence
+   *          sentence containing the mention
+   * @param annot
+   *          the mention
+   * @return the end
+   */
+  int getEnd(SourceSentenceInformation sentence, BaseAnnotation annot) {
+    if (sentence != mSentence) {
+      setSentence(sentence);
+    }
+    int end = annot.getEnd();
+    return end - mSentenceBegin - countSpaces(end) - 1;
+  }
+
+  /**
+   * Makes a sentence current and gets its space counts.
+   */
+  private void setSentence(SourceSentenceInformation sentence) {
+    mSentence = sentence;
+    mSentenceBegin = sentence.getBegin();
+    mSentenceLength = sentence.getEnd() - mSentenceBegin;
+    mIdentifier = sentence.getIdentifier();
+    mStoredCounts = sentence.getSpacePrefixCounts();
+    if (mStoredCounts != null && mStoredCounts.size() == mSentenceLength + 1) {
+      return;
+    }
+
+    // the sentence comes from a reader which does not count spaces
+    mStoredCounts = null;
+    if (mComputedCounts.length < mSentenceLength + 1) {
+      mComputedCounts = new int[mSentenceLength + 1];
+    }
+    int count = 0;
+    for (int i = 0; i < mSentenceLength; i++) {
+      if (mDocumentText.charAt(mSentenceBegin + i) == ' ') {
+        count++;
+      }
+      mComputedCounts[i + 1] = count;
+    }
+  }
+
+  /**
+   * Gets the number of spaces between the begin of the current sentence and an offset.
+   */
+  private int countSpaces(int offset) {
+    int index = offset - mSentenceBegin;
+    if (index >= 0 && index <= mSentenceLength) {
+      return mStoredCounts != null ? mStoredCounts.get(index) : mComputedCounts[index];
+    }
+
+    // a mention reaching beyond its sentence also counts the spaces after the sentence
+    int count = 0;
+    for (int i = mSentenceBegin; i < offset; i++) {
+      if (mDocumentText.charAt(i) == ' ') {
+        count++;
+      }
+    }
+    return count;
+  }
+}
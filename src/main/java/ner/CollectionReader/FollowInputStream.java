@@ -0,0 +1,89 @@
+package ner.CollectionReader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The FollowInputStream class follows a file which is still being appended to, like
+ * <code>tail -f</code>. When the wrapped stream reaches its end, reads wait and poll it again until
+ * new data is appended. The stream ends only after no data was appended for the idle timeout.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class FollowInputStream extends FilterInputStream {
+
+  /**
+   * Milliseconds to wait before the wrapped stream is polled again.
+   */
+  private long mPollInterval;
+
+  /**
+   * Milliseconds without new data after which the stream ends, 0 to follow forever.
+   */
+  private long mIdleTimeout;
+
+  /**
+   * Creates a stream which follows the given stream.
+   *
+   * @param in
+   *          stream of the followed file
+   * @param pollInterval
+   *          milliseconds to wait before the followed stream is polled again
+   * @param idleTimeout
+   *          milliseconds without new data after which the stream ends, 0 to follow forever
+   */
+  public FollowInputStream(InputStream in, long pollInterval, long idleTimeout) {
+    super(in);
+    mPollInterval = pollInterval;
+    mIdleTimeout = idleTimeout;
+  }
+
+  /**
+   * @see java.io.FilterInputStream#read()
+   */
+  public int read() throws IOException {
+    long idleSince = System.currentTimeMillis();
+    while (true) {
+      int b = in.read();
+      if (b >= 0 || !waitForData(idleSince)) {
+        return b;
+      }
+    }
+  }
+
+  /**
+   * @see java.io.FilterInputStream#read(byte[], int, int)
+   */
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    long idleSince = System.currentTimeMillis();
+    while (true) {
+      int n = in.read(b, off, len);
+      if (n > 0 || !waitForData(idleSince)) {
+        return n;
+      }
+    }
+  }
+
+  /**
+   * Waits one poll interval for new data.
+   *
+   * @return false if the idle timeout has expired and the stream should end
+   */
+  private boolean waitForData(long idleSince) throws IOException {
+    if (mIdleTimeout > 0 && System.currentTimeMillis() - idleSince >= mIdleTimeout) {
+      return false;
+    }
+    try {
+      Thread.sleep(mPollInterval);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+}
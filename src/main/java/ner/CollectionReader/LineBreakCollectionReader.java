@@ -1,5 +1,6 @@
 package ner.CollectionReader;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,9 +10,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
 import ner.TypeSystem.SourceSentenceInformation;
+import ner.util.CheckpointFile;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -19,6 +24,7 @@ import org.apache.uima.collection.CollectionException;
 import org.apache.uima.collection.CollectionReader_ImplBase;
 import org.apache.uima.examples.SourceDocumentInformation;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.IntegerArray;
 import org.apache.uima.jcas.tcas.DocumentAnnotation;
 import org.apache.uima.resource.ResourceConfigurationException;
 import org.apache.uima.resource.ResourceInitializationException;
@@ -32,7 +38,29 @@ import org.apache.uima.util.ProgressImpl;
  * parameters:
  * 
  * <ul>
- * <li><code>InputFile</code> - path to the input file</li>
+ * <li><code>InputFile</code> - path to the input file, or <code>-</code> for the standard input in
+ * streaming mode</li>
+ * <li><code>Encoding</code> - character encoding of the input file. The memory-mapped and sharded
+ * modes need an encoding of line breaks as single ASCII bytes, e.g. not UTF-16</li>
+ * <li><code>MemoryMapped</code> - read the input file through memory-mapped windows instead of
+ * counting its lines up front</li>
+ * <li><code>SentencesPerCas</code> - number of lines packed into one CAS. Packed lines are
+ * separated by line breaks and each of them gets its own {@link SourceSentenceInformation}
+ * span</li>
+ * <li><code>ShardIndex</code> - index of the shard read by this reader, starting with 0</li>
+ * <li><code>ShardCount</code> - number of shards the input file is split into. Each shard is an
+ * equal byte range of the file and reads the lines starting inside it, so every line is read by
+ * exactly one shard</li>
+ * <li><code>Streaming</code> - read the input as a stream without counting its lines, so it can be
+ * a pipe, the standard input or a gzip compressed file</li>
+ * <li><code>FollowInterval</code> - in streaming mode, follow the input file while it is appended
+ * to and poll it for new lines at this interval in milliseconds. 0 disables following</li>
+ * <li><code>FollowIdleTimeout</code> - milliseconds without new lines after which a followed input
+ * file ends. 0 follows forever</li>
+ * <li><code>CheckpointFile</code> - file where the reading position is persisted. If it exists on
+ * initialization, reading resumes at the persisted position</li>
+ * <li><code>CheckpointInterval</code> - number of lines between two checkpoints. It has to match the
+ * interval of the CAS consumers, and should be larger than the number of lines in flight</li>
  * </ul>
  * 
  * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
@@ -44,16 +72,101 @@ public class LineBreakCollectionReader extends CollectionReader_ImplBase {
    */
   public static final String PARAM_INPUTFILE = "InputFile";
 
+  /**
+   * Name of configuration parameter which set the character encoding of the input file.
+   */
+  public static final String PARAM_ENCODING = "Encoding";
+
+  /**
+   * Name of configuration parameter which enables the memory-mapped reading mode.
+   */
+  public static final String PARAM_MEMORYMAPPED = "MemoryMapped";
+
+  /**
+   * Name of configuration parameter which set the number of lines packed into one CAS.
+   */
+  public static final String PARAM_SENTENCESPERCAS = "SentencesPerCas";
+
+  /**
+   * Name of configuration parameter which set the index of the shard read by this reader.
+   */
+  public static final String PARAM_SHARDINDEX = "ShardIndex";
+
+  /**
+   * Name of configuration parameter which set the number of shards of the input file.
+   */
+  public static final String PARAM_SHARDCOUNT = "ShardCount";
+
+  /**
+   * Name of configuration parameter which enables the streaming mode.
+   */
+  public static final String PARAM_STREAMING = "Streaming";
+
+  /**
+   * Name of configuration parameter which set the poll interval for following the input file.
+   */
+  public static final String PARAM_FOLLOWINTERVAL = "FollowInterval";
+
+  /**
+   * Name of configuration parameter which set the idle timeout for following the input file.
+   */
+  public static final String PARAM_FOLLOWIDLETIMEOUT = "FollowIdleTimeout";
+
+  /**
+   * Name of configuration parameter which set the checkpoint file.
+   */
+  public static final String PARAM_CHECKPOINTFILE = "CheckpointFile";
+
+  /**
+   * Name of configuration parameter which set the number of lines between two checkpoints.
+   */
+  public static final String PARAM_CHECKPOINTINTERVAL = "CheckpointInterval";
+
+  /**
+   * Checkpoint key of the file offset of the next line, -1 if it is unknown.
+   */
+  private static final String KEY_OFFSET = "offset";
+
+  /**
+   * Input file name which selects the standard input in streaming mode.
+   */
+  private static final String STDIN = "-";
+
+  /**
+   * Default character encoding of the input file.
+   */
+  private static final String DEFAULT_ENCODING = "UTF-8";
+
   /**
    * The input file.
    */
   private File mFile;
 
+  /**
+   * Character encoding of the input file.
+   */
+  private Charset mCharset;
+
+  /**
+   * Memory-mapped reader of the input file, null if the file is read by the BufferedReader.
+   */
+  private MappedLineReader mMappedReader;
+
   /**
    * BufferedReader to the input file.
    */
   private BufferedReader mBufferedReader;
 
+  /**
+   * True if the input is read as a stream, whose lines are not counted.
+   */
+  private boolean mStreaming;
+
+  /**
+   * Line read ahead by {@link #hasNext()} in streaming mode.
+   */
+  private String mPendingLine;
+
   /**
    * Line number of the input file.
    */
@@ -64,29 +177,202 @@ public class LineBreakCollectionReader extends CollectionReader_ImplBase {
    */
   private int mNextLine;
 
+  /**
+   * Index of the first line which did not become part of a sentence yet. The lines of the sentences
+   * from it on tile the input, even when lines without identifier or content are skipped.
+   */
+  private int mFirstLine;
+
+  /**
+   * Number of lines packed into one CAS.
+   */
+  private int mSentencesPerCas;
+
+  /**
+   * Checkpoint file of the reading position, null if checkpointing is disabled.
+   */
+  private CheckpointFile mCheckpointFile;
+
+  /**
+   * Number of lines between two checkpoints.
+   */
+  private int mCheckpointInterval;
+
+  /**
+   * Reading position of the last checkpoint, which is persisted at the next checkpoint.
+   */
+  private Properties mPendingCheckpoint;
+
+  /**
+   * Reusable buffer of the space counts of a sentence.
+   */
+  private int[] mSpaceCounts = new int[256];
+
   /**
    * @see org.apache.uima.collection.CollectionReader_ImplBase#initialize()
    */
   public void initialize() throws ResourceInitializationException {
-    File file = new File(((String) getConfigParameterValue(PARAM_INPUTFILE)).trim());
-    if (!file.exists() || !file.isFile()) {
+    String inputFile = ((String) getConfigParameterValue(PARAM_INPUTFILE)).trim();
+    Boolean streaming = (Boolean) getConfigParameterValue(PARAM_STREAMING);
+    mStreaming = streaming != null && streaming;
+
+    File file = new File(inputFile);
+    if (!(mStreaming && STDIN.equals(inputFile)) && (!file.exists() || !file.isFile())) {
       throw new ResourceInitializationException(
               ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
                   PARAM_INPUTFILE, this.getMetaData().getName(), file.getPath() });
     }
 
+    String encoding = (String) getConfigParameterValue(PARAM_ENCODING);
+    try {
+      mCharset = Charset.forName(encoding == null ? DEFAULT_ENCODING : encoding.trim());
+    } catch (IllegalArgumentException e) {
+      throw new ResourceInitializationException(
+              ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  PARAM_ENCODING, this.getMetaData().getName(), encoding });
+    }
+
+    Boolean memoryMapped = (Boolean) getConfigParameterValue(PARAM_MEMORYMAPPED);
+
+    Integer sentencesPerCas = (Integer) getConfigParameterValue(PARAM_SENTENCESPERCAS);
+    mSentencesPerCas = sentencesPerCas == null ? 1 : sentencesPerCas;
+
+    Integer shardIndex = (Integer) getConfigParameterValue(PARAM_SHARDINDEX);
+    Integer shardCount = (Integer) getConfigParameterValue(PARAM_SHARDCOUNT);
+    if (shardIndex == null) {
+      shardIndex = 0;
+    }
+    if (shardCount == null) {
+      shardCount = 1;
+    }
+    if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+      throw new ResourceInitializationException(
+              ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  PARAM_SHARDINDEX, this.getMetaData().getName(), shardIndex + "/" + shardCount });
+    }
+
+    // the memory-mapped reader splits lines at single bytes
+    if (!mStreaming && (shardCount > 1 || memoryMapped != null && memoryMapped)
+            && !MappedLineReader.supports(mCharset)) {
+      throw new ResourceInitializationException(
+              ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                  PARAM_ENCODING, this.getMetaData().getName(), encoding });
+    }
+
     mFile = file;
-    mLineNumber = getLineNumber(mFile);
     mNextLine = 0;
 
     // open the file
     try {
-      mBufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile)));
-    } catch (FileNotFoundException e) {
+      if (mStreaming) {
+        mBufferedReader = new BufferedReader(new InputStreamReader(openStream(inputFile),
+                mCharset));
+      } else if (shardCount > 1) {
+        // shards seek to their byte range, which needs the memory-mapped reader
+        long length = mFile.length();
+        long begin = length * shardIndex / shardCount;
+        long end = length * (shardIndex + 1) / shardCount;
+        mMappedReader = new MappedLineReader(mFile, mCharset, begin, end);
+        mMappedReader.startLineCounter();
+      } else if (memoryMapped != null && memoryMapped) {
+        // lines are counted in the background, only for progress reporting
+        mMappedReader = new MappedLineReader(mFile, mCharset);
+        mMappedReader.startLineCounter();
+      } else {
+        mLineNumber = getLineNumber(mFile);
+        mBufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile),
+                mCharset));
+      }
+    } catch (IOException e) {
       throw new ResourceInitializationException(
               ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
                   PARAM_INPUTFILE, this.getMetaData().getName(), file.getPath() });
     }
+
+    // resume at the last checkpoint
+    String checkpointPath = (String) getConfigParameterValue(PARAM_CHECKPOINTFILE);
+    if (checkpointPath != null && checkpointPath.trim().length() > 0) {
+      Integer checkpointInterval = (Integer) getConfigParameterValue(PARAM_CHECKPOINTINTERVAL);
+      mCheckpointInterval = checkpointInterval == null ? 10000 : checkpointInterval;
+      mCheckpointFile = new CheckpointFile(new File(checkpointPath.trim()));
+      try {
+        resume();
+      } catch (IOException e) {
+        throw new ResourceInitializationException(
+                ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] {
+                    PARAM_CHECKPOINTFILE, this.getMetaData().getName(), checkpointPath });
+      }
+    }
+    mFirstLine = mNextLine;
+  }
+
+  /**
+   * Moves the reading position to the last checkpoint. The memory-mapped reader seeks to the
+   * persisted offset, the other modes skip the lines which have been read before.
+   */
+  private void resume() throws IOException {
+    Properties checkpoint = mCheckpointFile.load();
+    if (checkpoint == null) {
+      return;
+    }
+    int line = (int) CheckpointFile.getLong(checkpoint, CheckpointFile.KEY_LINE);
+    long offset = CheckpointFile.getLong(checkpoint, KEY_OFFSET);
+    if (mMappedReader != null && offset >= 0) {
+      mMappedReader.seek(offset);
+      mNextLine = line;
+    } else {
+      while (mNextLine < line && hasNext()) {
+        readLine();
+      }
+    }
+    mPendingCheckpoint = checkpoint;
+  }
+
+  /**
+   * Remembers the current reading position and persists the one of the previous checkpoint. The
+   * CAS consumers have processed all lines before the previous checkpoint by now, as long as fewer
+   * lines than the checkpoint interval are in flight.
+   */
+  private void checkpoint() throws IOException {
+    if (mPendingCheckpoint != null) {
+      mCheckpointFile.store(mPendingCheckpoint);
+    }
+    mPendingCheckpoint = new Properties();
+    mPendingCheckpoint.setProperty(CheckpointFile.KEY_LINE, String.valueOf(mNextLine));
+    mPendingCheckpoint.setProperty(KEY_OFFSET, String.valueOf(mMappedReader != null ? mMappedReader
+            .getPosition() : -1));
+  }
+
+  /**
+   * Opens the input of the streaming mode. Gzip compressed input is recognized by its magic number
+   * and decompressed on the fly.
+   * 
+   * @param inputFile
+   *          path to the input file, or <code>-</code> for the standard input
+   */
+  private InputStream openStream(String inputFile) throws IOException {
+    InputStream in;
+    if (STDIN.equals(inputFile)) {
+      in = System.in;
+    } else {
+      in = new FileInputStream(inputFile);
+      Integer followInterval = (Integer) getConfigParameterValue(PARAM_FOLLOWINTERVAL);
+      Integer followIdleTimeout = (Integer) getConfigParameterValue(PARAM_FOLLOWIDLETIMEOUT);
+      if (followInterval != null && followInterval > 0) {
+        in = new FollowInputStream(in, followInterval, followIdleTimeout == null ? 0
+                : followIdleTimeout);
+      }
+    }
+
+    // peek at the magic number of gzip
+    in = new BufferedInputStream(in, 65536);
+    in.mark(2);
+    int magic = in.read() | (in.read() << 8);
+    in.reset();
+    if (magic == GZIPInputStream.GZIP_MAGIC) {
+      in = new GZIPInputStream(in, 65536);
+    }
+    return in;
   }
 
   /**
@@ -111,7 +397,17 @@ public class LineBreakCollectionReader extends CollectionReader_ImplBase {
   /**
    * @see org.apache.uima.collection.CollectionReader#hasNext()
    */
-  public boolean hasNext() {
+  public boolean hasNext() throws IOException {
+    if (mStreaming) {
+      // the stream has more lines if one more line can be read ahead
+      if (mPendingLine == null) {
+        mPendingLine = mBufferedReader.readLine();
+      }
+      return mPendingLine != null;
+    }
+    if (mMappedReader != null) {
+      return mMappedReader.hasNext();
+    }
     return mNextLine < mLineNumber;
   }
 
@@ -119,19 +415,6 @@ public class LineBreakCollectionReader extends CollectionReader_ImplBase {
    * @see org.apache.uima.collection.CollectionReader#getNext(org.apache.uima.cas.CAS)
    */
   public void getNext(CAS aCAS) throws IOException, CollectionException {
-
-    // update the line index
-    mNextLine++;
-
-    String line;
-    String identifier;
-    String content;
-
-    line = mBufferedReader.readLine();
-    if (line == null) {
-      return;
-    }
-
     JCas jcas;
     try {
       jcas = aCAS.getJCas();
@@ -139,47 +422,185 @@ public class LineBreakCollectionReader extends CollectionReader_ImplBase {
       throw new CollectionException(e);
     }
 
-    // break the sentence into identifier and content
-    String strArray[] = line.split(" ", 2);
+    if (mSentencesPerCas <= 1) {
+      String line = readLine();
+      if (line == null) {
+        return;
+      }
+
+      // break the sentence into identifier and content
+      String strArray[] = line.split(" ", 2);
+
+      if (strArray.length < 2) {
+        return;
+      }
+
+      // store the content of the line in CAS
+      jcas.setDocumentText(strArray[1]);
 
-    if (strArray.length < 2) {
+      // also store identifier of the line in the source document in CAS.
+      addSentence(jcas, strArray[0], strArray[1], 0);
+      checkpointIfDue();
       return;
     }
 
-    identifier = strArray[0];
-    content = strArray[1];
+    // pack the next lines into one document, separated by line breaks
+    StringBuilder text = new StringBuilder();
+    int packedLines = 0;
+    while (packedLines < mSentencesPerCas) {
+      // a followed stream does not wait for more lines to fill the CAS
+      if (mStreaming && packedLines > 0 && mPendingLine == null && !mBufferedReader.ready()) {
+        break;
+      }
+      if (!hasNext()) {
+        break;
+      }
+      String line = readLine();
+      if (line == null) {
+        break;
+      }
 
-    // store the content of the line in CAS
-    jcas.setDocumentText(content);
+      // lines without identifier and content do not become sentences
+      String strArray[] = line.split(" ", 2);
+      if (strArray.length < 2) {
+        continue;
+      }
 
-    // also store identifier of the line in the source document in CAS.
-    SourceSentenceInformation srcSentenceInfo = new SourceSentenceInformation(jcas);
-    srcSentenceInfo.setIdentifier(identifier);
+      if (packedLines > 0) {
+        text.append('\n');
+      }
+      addSentence(jcas, strArray[0], strArray[1], text.length());
+      text.append(strArray[1]);
+      packedLines++;
+    }
+    jcas.setDocumentText(text.toString());
+    checkpointIfDue();
+  }
+
+  /**
+   * Reads the next line of the input file and updates the line index.
+   * 
+   * @return the next line, or null if the end of the file is reached
+   */
+  private String readLine() throws IOException {
+    mNextLine++;
+    if (mPendingLine != null) {
+      String line = mPendingLine;
+      mPendingLine = null;
+      return line;
+    }
+    if (mMappedReader != null) {
+      return mMappedReader.readLine();
+    }
+    return mBufferedReader.readLine();
+  }
 
+  /**
+   * Stores the identifier, the line indexes, the span and the space counts of the last read
+   * sentence in the CAS. The sentence gets the skipped lines before it, so the CAS consumers can
+   * tell which lines a CAS completes.
+   */
+  private void addSentence(JCas jcas, String identifier, String content, int begin) {
+    SourceSentenceInformation srcSentenceInfo = new SourceSentenceInformation(jcas, begin, begin
+            + content.length());
+    srcSentenceInfo.setIdentifier(identifier);
+    srcSentenceInfo.setLineIndex(mNextLine - 1);
+    srcSentenceInfo.setFirstLineIndex(mFirstLine);
+    mFirstLine = mNextLine;
+    srcSentenceInfo.setSpacePrefixCounts(countSpaces(jcas, content));
     srcSentenceInfo.addToIndexes();
   }
 
+  /**
+   * Counts the spaces before each offset of a sentence once, so consumers can map offsets to the
+   * whitespace-free offsets of the output in constant time.
+   * 
+   * @return array whose element i is the number of spaces in the first i characters
+   */
+  private IntegerArray countSpaces(JCas jcas, String content) {
+    int length = content.length();
+    if (mSpaceCounts.length < length + 1) {
+      mSpaceCounts = new int[Math.max(length + 1, 2 * mSpaceCounts.length)];
+    }
+    int[] counts = mSpaceCounts;
+    int count = 0;
+    counts[0] = 0;
+    for (int i = 0; i < length; i++) {
+      if (content.charAt(i) == ' ') {
+        count++;
+      }
+      counts[i + 1] = count;
+    }
+    IntegerArray spaceCounts = new IntegerArray(jcas, length + 1);
+    spaceCounts.copyFromArray(counts, 0, 0, length + 1);
+    return spaceCounts;
+  }
+
+  /**
+   * Takes a checkpoint if the lines of the current CAS reached the checkpoint interval.
+   */
+  private void checkpointIfDue() throws IOException {
+    if (mCheckpointFile == null) {
+      return;
+    }
+    int checkpointLine = mPendingCheckpoint == null ? 0 : (int) CheckpointFile.getLong(
+            mPendingCheckpoint, CheckpointFile.KEY_LINE);
+    if (mNextLine / mCheckpointInterval > checkpointLine / mCheckpointInterval) {
+      checkpoint();
+    }
+  }
+
   /**
    * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
    */
   public void close() throws IOException {
-    mBufferedReader.close();
+    if (mMappedReader != null) {
+      mMappedReader.close();
+    } else {
+      mBufferedReader.close();
+    }
   }
 
   /**
    * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#getProgress()
    */
   public Progress[] getProgress() {
+    if (mStreaming) {
+      // the total of a stream is unknown
+      return new Progress[] { new ProgressImpl(mNextLine, -1, Progress.ENTITIES, true) };
+    }
+    if (mMappedReader != null) {
+      long lineCount = mMappedReader.getLineCount();
+      if (lineCount >= 0) {
+        return new Progress[] { new ProgressImpl(mNextLine, (int) lineCount, Progress.ENTITIES) };
+      }
+
+      // estimate the line count from the bytes read so far until the lines are counted
+      long read = mMappedReader.getPosition() - mMappedReader.getBegin();
+      long size = mMappedReader.getEnd() - mMappedReader.getBegin();
+      int estimate = mNextLine;
+      if (read > 0) {
+        estimate = (int) Math.max(mNextLine, (double) mNextLine * size / read);
+      }
+      return new Progress[] { new ProgressImpl(mNextLine, estimate, Progress.ENTITIES, true) };
+    }
     return new Progress[] { new ProgressImpl(mNextLine, mLineNumber, Progress.ENTITIES) };
   }
 
   /**
    * Gets the total number of documents that will be returned by this collection reader. This is not
-   * part of the general collection reader interface.
+   * part of the general collection reader interface. In memory-mapped mode this is -1 until the
+   * lines are counted in the background, in streaming mode it is always -1.
    * 
    * @return the number of documents in the collection
    */
   public int getNumberOfDocuments() {
+    if (mStreaming) {
+      return -1;
+    }
+    if (mMappedReader != null) {
+      return (int) mMappedReader.getLineCount();
+    }
     return mLineNumber;
   }
 }
@@ -0,0 +1,379 @@
+package ner.CollectionReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * The MappedLineReader class reads the lines of a file through memory-mapped windows and decodes
+ * each line straight from the mapped bytes with an explicit charset. The file is never scanned up
+ * front, so opening a reader costs the same for any file size. The total number of lines can be
+ * counted in the background with {@link #startLineCounter()} for progress reporting.
+ * <p>
+ * A reader can be restricted to a byte range of the file. It then reads exactly the lines which
+ * start inside the range, so readers over adjacent ranges together read every line once.
+ * <p>
+ * Lines end with a line feed, a carriage return or a carriage return followed by a line feed, as
+ * for {@link java.io.BufferedReader#readLine()}. Since lines are split at these bytes, only
+ * charsets which encode line breaks as single ASCII bytes are supported, see
+ * {@link #supports(Charset)}.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedLineReader {
+
+  /**
+   * Size of one mapped window of the file. Lines longer than a window get a larger window.
+   */
+  static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Random access handle of the input file.
+   */
+  private RandomAccessFile mRandomAccessFile;
+
+  /**
+   * Channel of the input file.
+   */
+  private FileChannel mChannel;
+
+  /**
+   * Length of the input file in bytes.
+   */
+  private long mLength;
+
+  /**
+   * File offset of the first line inside the byte range.
+   */
+  private long mBegin;
+
+  /**
+   * End of the byte range. Lines starting before this offset are read to their end.
+   */
+  private long mEnd;
+
+  /**
+   * Currently mapped window of the file.
+   */
+  private MappedByteBuffer mWindow;
+
+  /**
+   * File offset of the first byte in the current window.
+   */
+  private long mWindowStart;
+
+  /**
+   * File offset of the next line to be read.
+   */
+  private long mPosition;
+
+  /**
+   * Decoder for the charset of the file.
+   */
+  private CharsetDecoder mDecoder;
+
+  /**
+   * Reusable buffer for decoded characters.
+   */
+  private CharBuffer mCharBuffer;
+
+  /**
+   * Number of lines in the byte range, or -1 while they are not counted yet.
+   */
+  private volatile long mLineCount = -1;
+
+  /**
+   * Opens a reader for the given file.
+   *
+   * @param file
+   *          the input file
+   * @param charset
+   *          charset of the input file
+   * @throws IOException
+   *           if the file can not be opened
+   */
+  public MappedLineReader(File file, Charset charset) throws IOException {
+    this(file, charset, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Opens a reader for the lines starting inside a byte range of the given file.
+   *
+   * @param file
+   *          the input file
+   * @param charset
+   *          charset of the input file
+   * @param begin
+   *          begin of the byte range, inclusive
+   * @param end
+   *          end of the byte range, exclusive
+   * @throws IOException
+   *           if the file can not be opened
+   * @throws IllegalArgumentException
+   *           if the charset is not supported
+   */
+  public MappedLineReader(File file, Charset charset, long begin, long end) throws IOException {
+    if (!supports(charset)) {
+      throw new IllegalArgumentException("Line breaks of " + charset.name()
+              + " are not single ASCII bytes");
+    }
+    mRandomAccessFile = new RandomAccessFile(file, "r");
+    mChannel = mRandomAccessFile.getChannel();
+    mLength = mChannel.size();
+    mEnd = Math.min(end, mLength);
+    mPosition = Math.min(begin, mEnd);
+
+    // a range starting inside a line begins with the next line
+    if (mPosition > 0 && mPosition < mEnd) {
+      map(mPosition - 1, WINDOW_SIZE);
+      while (mPosition < mEnd && !isLineStart(mPosition)) {
+        mPosition++;
+      }
+    }
+    mBegin = mPosition;
+    mDecoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    mCharBuffer = CharBuffer.allocate(1024);
+  }
+
+  /**
+   * Tests whether a charset can be read by this class, i.e. encodes line feeds and carriage returns
+   * as their single ASCII bytes. This rules out e.g. UTF-16 and UTF-32, whose lines can not be
+   * split at single bytes.
+   *
+   * @param charset
+   *          the charset
+   * @return true if lines of the charset can be read
+   */
+  public static boolean supports(Charset charset) {
+    if (!charset.canEncode()) {
+      return false;
+    }
+    return Arrays.equals(new byte[] { '\r', '\n' }, "\r\n".getBytes(charset));
+  }
+
+  /**
+   * @return true if there is at least one more line to read
+   */
+  public boolean hasNext() {
+    return mPosition < mEnd;
+  }
+
+  /**
+   * @return file offset of the next line to be read
+   */
+  public long getPosition() {
+    return mPosition;
+  }
+
+  /**
+   * Continues reading at a line which has been read before, e.g. when a run is resumed. The next
+   * read maps a new window unless the current one holds the line.
+   *
+   * @param position
+   *          file offset of the line, as returned by {@link #getPosition()}
+   */
+  public void seek(long position) {
+    mPosition = Math.max(mBegin, Math.min(position, mEnd));
+  }
+
+  /**
+   * @return file offset of the first line inside the byte range
+   */
+  public long getBegin() {
+    return mBegin;
+  }
+
+  /**
+   * @return end of the byte range
+   */
+  public long getEnd() {
+    return mEnd;
+  }
+
+  /**
+   * Reads the next line without its line terminator.
+   *
+   * @return the next line, or null if the end of the file is reached
+   * @throws IOException
+   *           if the file can not be mapped
+   */
+  public String readLine() throws IOException {
+    if (mPosition >= mEnd) {
+      return null;
+    }
+
+    // a window which does not hold the position, e.g. after a seek, is mapped anew
+    if (mWindow != null
+            && (mPosition < mWindowStart || mPosition >= mWindowStart + mWindow.limit())) {
+      mWindow = null;
+    }
+
+    // find the end of the line inside a window which starts in this line
+    int start = mWindow == null ? 0 : (int) (mPosition - mWindowStart);
+    int end = mWindow == null ? -1 : indexOfLineBreak(start);
+    int windowSize = WINDOW_SIZE;
+    while (end < 0) {
+      if (mWindow != null && mWindowStart + mWindow.limit() == mLength
+              && mWindowStart <= mPosition) {
+        // the last line of the file has no line break
+        end = mWindow.limit();
+        break;
+      }
+      if (mWindow != null && mWindowStart == mPosition) {
+        windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * mWindow.limit());
+      }
+      map(mPosition, windowSize);
+      start = 0;
+      end = indexOfLineBreak(start);
+    }
+
+    // skip the line feed of windows line breaks
+    int next = end + 1;
+    if (end < mWindow.limit() && mWindow.get(end) == '\r' && next < mWindow.limit()
+            && mWindow.get(next) == '\n') {
+      next++;
+    }
+    mPosition = Math.min(mWindowStart + next, mLength);
+    return decode(mWindow, start, end);
+  }
+
+  /**
+   * Starts a background thread which counts the lines of the file. Until it finishes,
+   * {@link #getLineCount()} returns -1.
+   */
+  public void startLineCounter() {
+    Thread counter = new Thread(new Runnable() {
+      public void run() {
+        try {
+          mLineCount = countLines();
+        } catch (IOException e) {
+          // progress stays approximate if the file can not be counted
+        }
+      }
+    }, "MappedLineReader line counter");
+    counter.setDaemon(true);
+    counter.start();
+  }
+
+  /**
+   * @return number of lines in the byte range, or -1 if they are not counted yet
+   */
+  public long getLineCount() {
+    return mLineCount;
+  }
+
+  /**
+   * Closes the file.
+   *
+   * @throws IOException
+   *           if the file can not be closed
+   */
+  public void close() throws IOException {
+    mWindow = null;
+    mRandomAccessFile.close();
+  }
+
+  /**
+   * Maps a window of the file.
+   *
+   * @param offset
+   *          file offset of the window
+   * @param size
+   *          maximal size of the window
+   */
+  private void map(long offset, int size) throws IOException {
+    long mappedSize = Math.min(size, mLength - offset);
+    mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, mappedSize);
+    mWindowStart = offset;
+  }
+
+  /**
+   * Tests whether a line starts at a file offset inside the file, i.e. after a line feed or after a
+   * carriage return which is not followed by a line feed. Maps the window at the previous byte
+   * unless the current window holds both bytes.
+   */
+  private boolean isLineStart(long offset) throws IOException {
+    if (offset - 1 < mWindowStart || offset - mWindowStart >= mWindow.limit()) {
+      map(offset - 1, WINDOW_SIZE);
+    }
+    byte previous = mWindow.get((int) (offset - 1 - mWindowStart));
+    return previous == '\n'
+            || previous == '\r' && mWindow.get((int) (offset - mWindowStart)) != '\n';
+  }
+
+  /**
+   * Counts the lines starting inside the byte range. A line starts at the beginning of the file and
+   * after every line break which is not at the end of the file.
+   */
+  private long countLines() throws IOException {
+    if (mBegin >= mEnd) {
+      return 0;
+    }
+    long count = mBegin == 0 ? 1 : 0;
+    long from = Math.max(mBegin - 1, 0);
+    long to = mEnd - 1;
+    for (long offset = from; offset < to; offset += WINDOW_SIZE) {
+      // one more byte tells whether a carriage return at the end is followed by a line feed
+      int size = (int) Math.min(WINDOW_SIZE, to - offset);
+      MappedByteBuffer window = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, size + 1);
+      for (int i = 0; i < size; i++) {
+        byte b = window.get(i);
+        if (b == '\n' || b == '\r' && window.get(i + 1) != '\n') {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the next line break in the current window. A carriage return at the end of a window
+   * which does not reach the end of the file is not reported, since the line feed of a windows
+   * line break may follow it in the next window.
+   *
+   * @return index of the line break, or -1 if the window has none after start
+   */
+  private int indexOfLineBreak(int start) {
+    int limit = mWindow.limit();
+    for (int i = start; i < limit; i++) {
+      byte b = mWindow.get(i);
+      if (b == '\n') {
+        return i;
+      }
+      if (b == '\r') {
+        return i + 1 < limit || mWindowStart + limit == mLength ? i : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes a range of a window into a string.
+   */
+  private String decode(ByteBuffer window, int start, int end) {
+    ByteBuffer bytes = window.duplicate();
+    bytes.limit(end);
+    bytes.position(start);
+
+    int capacity = (int) (bytes.remaining() * mDecoder.maxCharsPerByte()) + 1;
+    if (mCharBuffer.capacity() < capacity) {
+      mCharBuffer = CharBuffer.allocate(capacity);
+    }
+    mCharBuffer.clear();
+    mDecoder.reset();
+    mDecoder.decode(bytes, mCharBuffer, true);
+    mDecoder.flush(mCharBuffer);
+    mCharBuffer.flip();
+    return mCharBuffer.toString();
+  }
+}
@@ -0,0 +1,18 @@
+package ner.Resource;
+
+/**
+ * The GeneDictionaryResource interface gives annotators access to a gene dictionary which is mapped
+ * once and shared by all annotator instances using the same resource.
+ * 
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public interface GeneDictionaryResource {
+
+  /**
+   * Gets the shared dictionary. It is safe to use from several threads at the same time.
+   * 
+   * @return the shared dictionary
+   */
+  public MappedDictionary getDictionary();
+}
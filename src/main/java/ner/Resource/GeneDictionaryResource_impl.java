@@ -0,0 +1,67 @@
+package ner.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * The GeneDictionaryResource_impl class maps a gene dictionary compiled by
+ * {@link MappedDictionaryCompiler} as a UIMA shared resource. The mapped dictionaries are cached by
+ * file, so a dictionary is mapped only once per JVM even if several resource managers bind it. The
+ * resource must be a local file.
+ * 
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class GeneDictionaryResource_impl implements GeneDictionaryResource, SharedResourceObject {
+
+  /**
+   * Dictionaries mapped in this JVM, by canonical path.
+   */
+  private static final Map<String, MappedDictionary> sDictionaries = new HashMap<String, MappedDictionary>();
+
+  /**
+   * The shared dictionary.
+   */
+  private MappedDictionary mDictionary;
+
+  /**
+   * @see org.apache.uima.resource.SharedResourceObject#load(DataResource)
+   */
+  public void load(DataResource aData) throws ResourceInitializationException {
+    URI uri = aData.getUri();
+    if (uri == null || !"file".equals(uri.getScheme())) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { aData
+                      .getUrl() });
+    }
+    // relative file urls like the default dictionary url are opaque
+    File file = uri.isOpaque() ? new File(uri.getSchemeSpecificPart()) : new File(uri);
+    try {
+      String path = file.getCanonicalPath();
+      synchronized (sDictionaries) {
+        mDictionary = sDictionaries.get(path);
+        if (mDictionary == null) {
+          mDictionary = new MappedDictionary(file);
+          sDictionaries.put(path, mDictionary);
+        }
+      }
+    } catch (IOException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { file }, e);
+    }
+  }
+
+  /**
+   * @see ner.Resource.GeneDictionaryResource#getDictionary()
+   */
+  public MappedDictionary getDictionary() {
+    return mDictionary;
+  }
+}
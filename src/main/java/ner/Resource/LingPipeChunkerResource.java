@@ -0,0 +1,37 @@
+package ner.Resource;
+
+import org.apache.uima.resource.ResourceInitializationException;
+
+import com.aliasi.chunk.ConfidenceChunker;
+
+/**
+ * The LingPipeChunkerResource interface gives annotators access to a LingPipe ConfidenceChunker
+ * which is loaded once and shared by all annotator instances using the same resource.
+ * 
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public interface LingPipeChunkerResource {
+
+  /**
+   * Starts loading the model in a background thread, if it is not loaded or loading yet.
+   */
+  public void preload();
+
+  /**
+   * Gets the shared chunker, waiting until the model is loaded. It is safe to call its
+   * <code>nBestChunks</code> method from several threads at the same time.
+   * 
+   * @return the shared chunker
+   * @throws ResourceInitializationException
+   *           if the model can not be loaded
+   */
+  public ConfidenceChunker getChunker() throws ResourceInitializationException;
+
+  /**
+   * Gets a string which identifies the loaded model and changes when the model file changes.
+   * 
+   * @return the fingerprint of the model
+   */
+  public String getModelFingerprint();
+}
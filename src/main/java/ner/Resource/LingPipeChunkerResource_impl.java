@@ -0,0 +1,202 @@
+package ner.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+import com.aliasi.chunk.ConfidenceChunker;
+
+import ner.util.SpanCache;
+
+/**
+ * The LingPipeChunkerResource_impl class loads a serialized LingPipe ConfidenceChunker as a UIMA
+ * shared resource. UIMA creates one instance per resource manager, which is shared by all pipeline
+ * replicas of a CPE. The loaded chunkers are additionally cached by model URL, so a model is
+ * deserialized only once per JVM even if several resource managers bind it.
+ * <p>
+ * The compiled HMM chunkers of LingPipe keep no state between calls, so one chunker can serve all
+ * processing threads. The resource file may also be a model compiled by {@link MappedHmmCompiler},
+ * which is memory-mapped instead of deserialized.
+ * <p>
+ * Loading the resource does not read the model yet. It is read by the first call of
+ * {@link #getChunker()}, or in the background after {@link #preload()}, so several models can load
+ * at the same time while the collection reader starts.
+ * 
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class LingPipeChunkerResource_impl implements LingPipeChunkerResource, SharedResourceObject {
+
+  /**
+   * Loaders of the chunkers of this JVM, by model URL.
+   */
+  private static final Map<String, ChunkerLoader> sChunkers = new HashMap<String, ChunkerLoader>();
+
+  /**
+   * Loader of the shared chunker.
+   */
+  private ChunkerLoader mLoader;
+
+  /**
+   * Fingerprint of the model file.
+   */
+  private String mModelFingerprint;
+
+  /**
+   * @see org.apache.uima.resource.SharedResourceObject#load(DataResource)
+   */
+  public void load(final DataResource aData) throws ResourceInitializationException {
+    String url = aData.getUrl().toString();
+    final File file = toFile(aData);
+    mModelFingerprint = file == null ? url : SpanCache.fileFingerprint(file);
+    synchronized (sChunkers) {
+      mLoader = sChunkers.get(url);
+      if (mLoader == null) {
+        mLoader = new ChunkerLoader(new Callable<ConfidenceChunker>() {
+          public ConfidenceChunker call() throws ResourceInitializationException {
+            return file != null && isMappedHmm(file) ? readMappedChunker(file)
+                    : readChunker(aData);
+          }
+        });
+        sChunkers.put(url, mLoader);
+      }
+    }
+  }
+
+  /**
+   * @see ner.Resource.LingPipeChunkerResource#preload()
+   */
+  public void preload() {
+    mLoader.start();
+  }
+
+  /**
+   * @see ner.Resource.LingPipeChunkerResource#getChunker()
+   */
+  public ConfidenceChunker getChunker() throws ResourceInitializationException {
+    // loads the model in this thread unless it is already loading
+    mLoader.run();
+    try {
+      return mLoader.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ResourceInitializationException) {
+        throw (ResourceInitializationException) e.getCause();
+      }
+      throw new ResourceInitializationException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * @see ner.Resource.LingPipeChunkerResource#getModelFingerprint()
+   */
+  public String getModelFingerprint() {
+    return mModelFingerprint;
+  }
+
+  /**
+   * Gets the local file of a resource, or null if the resource is not a local file.
+   */
+  private static File toFile(DataResource aData) {
+    URI uri = aData.getUri();
+    if (uri == null || !"file".equals(uri.getScheme())) {
+      return null;
+    }
+    // relative file urls like the default model url are opaque
+    return uri.isOpaque() ? new File(uri.getSchemeSpecificPart()) : new File(uri);
+  }
+
+  /**
+   * Tests whether a file holds a compiled mapped model.
+   */
+  private static boolean isMappedHmm(File file) throws ResourceInitializationException {
+    try {
+      return MappedHmm.isMappedHmm(file);
+    } catch (IOException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { file }, e);
+    }
+  }
+
+  /**
+   * Maps a compiled chunker model.
+   */
+  private static ConfidenceChunker readMappedChunker(File file)
+          throws ResourceInitializationException {
+    try {
+      return MappedHmm.readChunker(file);
+    } catch (IOException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { file }, e);
+    } catch (ClassNotFoundException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Deserializes the chunker model.
+   */
+  private static ConfidenceChunker readChunker(DataResource aData)
+          throws ResourceInitializationException {
+    try {
+      InputStream in = aData.getInputStream();
+      try {
+        ObjectInputStream objIn = new ObjectInputStream(new BufferedInputStream(in));
+        return (ConfidenceChunker) objIn.readObject();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new ResourceInitializationException(
+              ResourceInitializationException.COULD_NOT_ACCESS_DATA, new Object[] { aData
+                      .getUrl() }, e);
+    } catch (ClassNotFoundException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Loads a chunker once, either in the thread which first needs it or in a background thread.
+   */
+  private static class ChunkerLoader extends FutureTask<ConfidenceChunker> {
+
+    /**
+     * Whether a background thread was started.
+     */
+    private boolean mStarted;
+
+    /**
+     * Creates a loader.
+     */
+    ChunkerLoader(Callable<ConfidenceChunker> callable) {
+      super(callable);
+    }
+
+    /**
+     * Starts loading in a background thread, unless loading already started.
+     */
+    synchronized void start() {
+      if (mStarted || isDone()) {
+        return;
+      }
+      mStarted = true;
+      Thread loader = new Thread(this, "LingPipe model loader");
+      loader.setDaemon(true);
+      loader.start();
+    }
+  }
+}
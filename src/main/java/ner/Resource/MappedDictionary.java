@@ -0,0 +1,136 @@
+package ner.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The MappedDictionary class reads a gene dictionary compiled by {@link MappedDictionaryCompiler}.
+ * The dictionary is a minimized trie over the characters of the names, kept in a memory-mapped file
+ * and read in place, so opening a dictionary of millions of names takes milliseconds and none of it
+ * lives on the Java heap. The mapped file is shared by all threads; the class keeps no other state.
+ * <p>
+ * The file starts with a header of magic number, version, number of names and offset of the root
+ * node. Each node is an int holding its child count and whether a name ends there, the sorted child
+ * characters padded to four bytes, and the offsets of the children. Children are written before
+ * their parents and identical subtries are written once.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedDictionary {
+
+  /**
+   * Magic number at the beginning of a dictionary file.
+   */
+  static final int MAGIC = 0x47444943;
+
+  /**
+   * Version of the file layout.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Size of the file header.
+   */
+  static final int HEADER_SIZE = 16;
+
+  /**
+   * The mapped dictionary file.
+   */
+  private MappedByteBuffer mBuffer;
+
+  /**
+   * Number of names.
+   */
+  private int mNameCount;
+
+  /**
+   * Offset of the root node.
+   */
+  private int mRoot;
+
+  /**
+   * Maps a dictionary file.
+   *
+   * @param file
+   *          the dictionary file
+   * @throws IOException
+   *           if the file can not be read or is not a dictionary
+   */
+  public MappedDictionary(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      long length = randomAccessFile.length();
+      if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+        throw new IOException("Not a gene dictionary: " + file.getPath());
+      }
+      mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      randomAccessFile.close();
+    }
+    if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+      throw new IOException("Not a gene dictionary: " + file.getPath());
+    }
+    mNameCount = mBuffer.getInt(8);
+    mRoot = mBuffer.getInt(12);
+  }
+
+  /**
+   * @return number of names
+   */
+  public int getNameCount() {
+    return mNameCount;
+  }
+
+  /**
+   * @return the root node, where every name starts
+   */
+  public int getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Follows a character from a node.
+   *
+   * @param node
+   *          the node
+   * @param c
+   *          the character
+   * @return the child node, or -1 if no name continues with the character
+   */
+  public int getChild(int node, char c) {
+    int header = mBuffer.getInt(node);
+    int count = header >>> 1;
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      char label = mBuffer.getChar(node + 4 + 2 * middle);
+      if (label < c) {
+        low = middle + 1;
+      } else if (label > c) {
+        high = middle - 1;
+      } else {
+        return mBuffer.getInt(node + 4 + labelSize(count) + 4 * middle);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return true if a name ends at the node
+   */
+  public boolean isName(int node) {
+    return (mBuffer.getInt(node) & 1) != 0;
+  }
+
+  /**
+   * Gets the size of the child characters of a node, padded to four bytes.
+   */
+  static int labelSize(int count) {
+    return (2 * count + 3) & ~3;
+  }
+}
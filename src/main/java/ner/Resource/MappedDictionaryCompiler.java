@@ -0,0 +1,268 @@
+package ner.Resource;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MappedDictionaryCompiler class compiles gene name lists into the file layout read by
+ * {@link MappedDictionary}. The name files are UTF-8 text with one name per line; runs of
+ * whitespace inside a name are read as one space, and the same name listed twice is stored once.
+ * Usage:
+ *
+ * <pre>
+ * java ner.Resource.MappedDictionaryCompiler &lt;output&gt; &lt;names&gt; [&lt;names&gt; ...]
+ * </pre>
+ *
+ * The names are sorted in memory and the trie is written bottom up in one pass over them, so only
+ * the nodes of the current name and the table of distinct nodes are kept while writing.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedDictionaryCompiler {
+
+  /**
+   * Charset of the name files.
+   */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Offset of the next node in the output file.
+   */
+  private long mOffset = MappedDictionary.HEADER_SIZE;
+
+  /**
+   * Output stream of the nodes.
+   */
+  private DataOutputStream mOut;
+
+  /**
+   * Offsets of the nodes written so far, by their content, so identical subtries are written once.
+   */
+  private Map<ByteBuffer, Integer> mNodes = new HashMap<ByteBuffer, Integer>();
+
+  /**
+   * Compiles a dictionary.
+   *
+   * @param args
+   *          the output file and the name files
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: java ner.Resource.MappedDictionaryCompiler "
+              + "<output> <names> [<names> ...]");
+      System.exit(1);
+    }
+    List<File> nameFiles = new ArrayList<File>();
+    for (int i = 1; i < args.length; i++) {
+      nameFiles.add(new File(args[i]));
+    }
+    long start = System.currentTimeMillis();
+    int nameCount = compile(new File(args[0]), nameFiles);
+    System.out.println("Compiled " + nameCount + " names in "
+            + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Compiles a dictionary.
+   *
+   * @param outputFile
+   *          the dictionary file to write
+   * @param nameFiles
+   *          text files with one name per line
+   * @return number of distinct names
+   * @throws IOException
+   *           if a file can not be read or written
+   */
+  public static int compile(File outputFile, List<File> nameFiles) throws IOException {
+    List<String> names = readNames(nameFiles);
+    Collections.sort(names);
+
+    MappedDictionaryCompiler compiler = new MappedDictionaryCompiler();
+    compiler.mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            outputFile), 1 << 16));
+    int nameCount = 0;
+    int root;
+    try {
+      compiler.mOut.write(new byte[MappedDictionary.HEADER_SIZE]);
+
+      // the open nodes along the current name, children are added in sorted order
+      List<OpenNode> path = new ArrayList<OpenNode>();
+      path.add(new OpenNode());
+      String previous = "";
+      for (String name : names) {
+        if (name.equals(previous)) {
+          continue;
+        }
+        int common = 0;
+        while (common < previous.length() && common < name.length()
+                && previous.charAt(common) == name.charAt(common)) {
+          common++;
+        }
+        compiler.close(path, common, previous);
+        for (int i = common; i < name.length(); i++) {
+          path.add(new OpenNode());
+        }
+        path.get(name.length()).mName = true;
+        previous = name;
+        nameCount++;
+      }
+      compiler.close(path, 0, previous);
+      root = compiler.write(path.get(0));
+    } finally {
+      compiler.mOut.close();
+    }
+
+    RandomAccessFile header = new RandomAccessFile(outputFile, "rw");
+    try {
+      header.writeInt(MappedDictionary.MAGIC);
+      header.writeInt(MappedDictionary.VERSION);
+      header.writeInt(nameCount);
+      header.writeInt(root);
+    } finally {
+      header.close();
+    }
+    return nameCount;
+  }
+
+  /**
+   * Reads and normalizes the names of the name files.
+   */
+  private static List<String> readNames(List<File> nameFiles) throws IOException {
+    List<String> names = new ArrayList<String>();
+    StringBuilder normalized = new StringBuilder();
+    for (File file : nameFiles) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+              UTF8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          normalized.setLength(0);
+          boolean space = false;
+          for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+              space = normalized.length() > 0;
+            } else {
+              if (space) {
+                normalized.append(' ');
+                space = false;
+              }
+              normalized.append(c);
+            }
+          }
+          if (normalized.length() > 0) {
+            names.add(normalized.toString());
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Writes the open nodes below a depth and adds them to their parents.
+   *
+   * @param path
+   *          the open nodes along the previous name
+   * @param depth
+   *          depth of the deepest node which stays open
+   * @param previous
+   *          the previous name, which labels the edges of the path
+   */
+  private void close(List<OpenNode> path, int depth, String previous) throws IOException {
+    for (int i = path.size() - 1; i > depth; i--) {
+      int offset = write(path.remove(i));
+      path.get(i - 1).add(previous.charAt(i - 1), offset);
+    }
+  }
+
+  /**
+   * Writes a node unless an identical node is already written.
+   *
+   * @return offset of the node
+   */
+  private int write(OpenNode node) throws IOException {
+    int count = node.mCount;
+    int labelSize = MappedDictionary.labelSize(count);
+    ByteBuffer bytes = ByteBuffer.allocate(4 + labelSize + 4 * count);
+    bytes.putInt((count << 1) | (node.mName ? 1 : 0));
+    for (int i = 0; i < count; i++) {
+      bytes.putChar(4 + 2 * i, node.mLabels[i]);
+      bytes.putInt(4 + labelSize + 4 * i, node.mChildren[i]);
+    }
+    bytes.clear();
+
+    Integer existing = mNodes.get(bytes);
+    if (existing != null) {
+      return existing;
+    }
+    if (mOffset + bytes.capacity() > Integer.MAX_VALUE) {
+      throw new IOException("Gene dictionary would be larger than 2 GB");
+    }
+    int offset = (int) mOffset;
+    mOut.write(bytes.array());
+    mOffset += bytes.capacity();
+    mNodes.put(bytes, offset);
+    return offset;
+  }
+
+  /**
+   * A node whose children are still being added.
+   */
+  private static class OpenNode {
+
+    /**
+     * Whether a name ends at the node.
+     */
+    boolean mName;
+
+    /**
+     * Number of children.
+     */
+    int mCount;
+
+    /**
+     * Characters of the children.
+     */
+    char[] mLabels = new char[2];
+
+    /**
+     * Offsets of the children.
+     */
+    int[] mChildren = new int[2];
+
+    /**
+     * Adds a child.
+     */
+    void add(char label, int child) {
+      if (mCount == mLabels.length) {
+        char[] labels = new char[2 * mCount];
+        System.arraycopy(mLabels, 0, labels, 0, mCount);
+        mLabels = labels;
+        int[] children = new int[2 * mCount];
+        System.arraycopy(mChildren, 0, children, 0, mCount);
+        mChildren = children;
+      }
+      mLabels[mCount] = label;
+      mChildren[mCount] = child;
+      mCount++;
+    }
+  }
+}
@@ -0,0 +1,685 @@
+package ner.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.aliasi.chunk.HmmChunker;
+import com.aliasi.hmm.AbstractHmm;
+import com.aliasi.hmm.HmmDecoder;
+import com.aliasi.symbol.MapSymbolTable;
+import com.aliasi.symbol.SymbolTable;
+import com.aliasi.tokenizer.TokenizerFactory;
+
+/**
+ * The MappedHmm class is a hidden Markov model which reads a file written by
+ * {@link MappedHmmCompiler} through a memory mapping. Opening it only maps the file, so startup
+ * costs the same for any model size, and processes on one host share the model pages through the
+ * page cache.
+ * <p>
+ * The file holds the state symbol table, the start, end and transition probabilities, and the
+ * node arrays of the character language model which estimates the emissions of each state. Any
+ * token is estimated straight from the mapped arrays with the arithmetic of LingPipe's compiled
+ * language models, so the model gives exactly the probabilities of the original and never reads
+ * more than the pages it touches. A hash table of precomputed emission log2 probabilities for the
+ * tokens of a compile corpus serves as a cache in front of the language models.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedHmm extends AbstractHmm {
+
+  /**
+   * Magic number at the beginning of a mapped HMM file.
+   */
+  static final int MAGIC = 0x4C504D48;
+
+  /**
+   * Version of the file layout.
+   */
+  static final int VERSION = 2;
+
+  /**
+   * Number of sections in the file layout.
+   */
+  static final int SECTION_COUNT = 13;
+
+  /**
+   * Section of the serialized tokenizer factory.
+   */
+  static final int SECTION_TOKENIZER = 0;
+
+  /**
+   * Section of the start, end and transition probabilities and their log2 values.
+   */
+  static final int SECTION_TRANSITIONS = 1;
+
+  /**
+   * Section of the state names.
+   */
+  static final int SECTION_STATES = 2;
+
+  /**
+   * Section of the token hash table, holding token ids plus one, 0 for empty slots.
+   */
+  static final int SECTION_SLOTS = 3;
+
+  /**
+   * Section of the offsets of the tokens in the character section.
+   */
+  static final int SECTION_TOKEN_OFFSETS = 4;
+
+  /**
+   * Section of the token characters.
+   */
+  static final int SECTION_TOKEN_CHARS = 5;
+
+  /**
+   * Section of the emission log2 probabilities, one row of states per token.
+   */
+  static final int SECTION_EMISSIONS = 6;
+
+  /**
+   * Section of the emission language model of every state: context count, offsets of its nodes,
+   * contexts and first children, log2 uniform estimate and boundary character.
+   */
+  static final int SECTION_LM_HEADERS = 7;
+
+  /**
+   * Section of the last characters of the language model nodes.
+   */
+  static final int SECTION_LM_CHARS = 8;
+
+  /**
+   * Section of the log2 probabilities of the language model nodes.
+   */
+  static final int SECTION_LM_LOG_PROBS = 9;
+
+  /**
+   * Section of the suffix node indexes of the language model nodes.
+   */
+  static final int SECTION_LM_SUFFIXES = 10;
+
+  /**
+   * Section of the log2 one minus interpolation ratios of the language model contexts.
+   */
+  static final int SECTION_LM_LOG_ONE_MINUS_LAMBDAS = 11;
+
+  /**
+   * Section of the first child node indexes of the language model contexts, with one more entry
+   * per model for the end of the last children.
+   */
+  static final int SECTION_LM_FIRST_CHILDREN = 12;
+
+  /**
+   * Size of the language model entry of one state in the header section.
+   */
+  static final int LM_HEADER_SIZE = 24;
+
+  /**
+   * Size of the file header: magic, version, state count, token count, table size and the offset
+   * and length of every section.
+   */
+  static final int HEADER_SIZE = 24 + 16 * SECTION_COUNT;
+
+  /**
+   * The mapped file.
+   */
+  private MappedByteBuffer mBuffer;
+
+  /**
+   * Number of states.
+   */
+  private int mStateCount;
+
+  /**
+   * Mask of the token hash table size.
+   */
+  private int mSlotMask;
+
+  /**
+   * Start probabilities by state.
+   */
+  private double[] mStartProbs;
+
+  /**
+   * Start log2 probabilities by state.
+   */
+  private double[] mStartLog2Probs;
+
+  /**
+   * End probabilities by state.
+   */
+  private double[] mEndProbs;
+
+  /**
+   * End log2 probabilities by state.
+   */
+  private double[] mEndLog2Probs;
+
+  /**
+   * Transition probabilities, indexed by source state times state count plus target state.
+   */
+  private double[] mTransitProbs;
+
+  /**
+   * Transition log2 probabilities, indexed like the transition probabilities.
+   */
+  private double[] mTransitLog2Probs;
+
+  /**
+   * Mapped token hash table.
+   */
+  private IntBuffer mSlots;
+
+  /**
+   * Mapped offsets of the tokens in the character section.
+   */
+  private IntBuffer mTokenOffsets;
+
+  /**
+   * Mapped token characters.
+   */
+  private CharBuffer mTokenChars;
+
+  /**
+   * Mapped emission log2 probabilities.
+   */
+  private DoubleBuffer mEmissions;
+
+  /**
+   * Emission language models by state.
+   */
+  private MappedCharLm[] mEmissionLms;
+
+  /**
+   * Creates a model over a mapped file.
+   */
+  private MappedHmm(MappedByteBuffer buffer, SymbolTable states) {
+    super(states);
+    mBuffer = buffer;
+    mStateCount = states.numSymbols();
+    mSlotMask = buffer.getInt(16) - 1;
+
+    double[] transitions = new double[4 * mStateCount + 2 * mStateCount * mStateCount];
+    section(SECTION_TRANSITIONS).asDoubleBuffer().get(transitions);
+    int n = mStateCount;
+    mStartProbs = copy(transitions, 0, n);
+    mStartLog2Probs = copy(transitions, n, n);
+    mEndProbs = copy(transitions, 2 * n, n);
+    mEndLog2Probs = copy(transitions, 3 * n, n);
+    mTransitProbs = copy(transitions, 4 * n, n * n);
+    mTransitLog2Probs = copy(transitions, 4 * n + n * n, n * n);
+
+    mSlots = section(SECTION_SLOTS).asIntBuffer();
+    mTokenOffsets = section(SECTION_TOKEN_OFFSETS).asIntBuffer();
+    mTokenChars = section(SECTION_TOKEN_CHARS).asCharBuffer();
+    mEmissions = section(SECTION_EMISSIONS).asDoubleBuffer();
+
+    ByteBuffer headers = section(SECTION_LM_HEADERS);
+    CharBuffer chars = section(SECTION_LM_CHARS).asCharBuffer();
+    FloatBuffer logProbs = section(SECTION_LM_LOG_PROBS).asFloatBuffer();
+    IntBuffer suffixes = section(SECTION_LM_SUFFIXES).asIntBuffer();
+    FloatBuffer logOneMinusLambdas = section(SECTION_LM_LOG_ONE_MINUS_LAMBDAS).asFloatBuffer();
+    IntBuffer firstChildren = section(SECTION_LM_FIRST_CHILDREN).asIntBuffer();
+    mEmissionLms = new MappedCharLm[mStateCount];
+    for (int i = 0; i < mStateCount; i++) {
+      int header = i * LM_HEADER_SIZE;
+      mEmissionLms[i] = new MappedCharLm(chars, logProbs, suffixes, logOneMinusLambdas,
+              firstChildren, headers.getInt(header), headers.getInt(header + 4),
+              headers.getInt(header + 8), headers.getInt(header + 12),
+              headers.getFloat(header + 16), (char) headers.getInt(header + 20));
+    }
+  }
+
+  /**
+   * Tests whether a file is a mapped HMM file.
+   *
+   * @param file
+   *          the file to test
+   * @return true if the file starts with the mapped HMM magic number
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isMappedHmm(File file) throws IOException {
+    if (file.length() < HEADER_SIZE) {
+      return false;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Opens the chunker of a mapped HMM file.
+   *
+   * @param file
+   *          the mapped HMM file
+   * @return a chunker decoding with the mapped model
+   * @throws IOException
+   *           if the file can not be mapped or is not a mapped HMM file
+   * @throws ClassNotFoundException
+   *           if the class of the tokenizer factory can not be found
+   */
+  public static HmmChunker readChunker(File file) throws IOException, ClassNotFoundException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    MappedByteBuffer buffer;
+    try {
+      if (randomAccessFile.length() > Integer.MAX_VALUE) {
+        throw new IOException("Mapped HMM file is too large: " + file.getPath());
+      }
+      buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+              randomAccessFile.length());
+    } finally {
+      // the mapping stays valid after the file is closed
+      randomAccessFile.close();
+    }
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a mapped HMM file of version " + VERSION + ": " + file.getPath());
+    }
+
+    // state ids are the positions of the state names
+    DataInputStream in = new DataInputStream(new ByteBufferInputStream(
+            section(buffer, SECTION_STATES)));
+    MapSymbolTable states = new MapSymbolTable();
+    int stateCount = buffer.getInt(8);
+    for (int i = 0; i < stateCount; i++) {
+      states.getOrAddSymbol(in.readUTF());
+    }
+
+    MappedHmm hmm = new MappedHmm(buffer, states);
+    TokenizerFactory tokenizerFactory = (TokenizerFactory) hmm.readObject(SECTION_TOKENIZER);
+    return new HmmChunker(tokenizerFactory, new HmmDecoder(hmm));
+  }
+
+  /**
+   * @return number of tokens with precomputed emission probabilities
+   */
+  public int getTokenCount() {
+    return mBuffer.getInt(12);
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#startProb(int)
+   */
+  public double startProb(int stateId) {
+    return mStartProbs[stateId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#startLog2Prob(int)
+   */
+  public double startLog2Prob(int stateId) {
+    return mStartLog2Probs[stateId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#startProb(String)
+   */
+  public double startProb(String state) {
+    int stateId = stateSymbolTable().symbolToID(state);
+    return stateId < 0 ? 0.0 : startProb(stateId);
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#endProb(int)
+   */
+  public double endProb(int stateId) {
+    return mEndProbs[stateId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#endLog2Prob(int)
+   */
+  public double endLog2Prob(int stateId) {
+    return mEndLog2Probs[stateId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#endProb(String)
+   */
+  public double endProb(String state) {
+    int stateId = stateSymbolTable().symbolToID(state);
+    return stateId < 0 ? 0.0 : endProb(stateId);
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#transitProb(int, int)
+   */
+  public double transitProb(int sourceId, int targetId) {
+    return mTransitProbs[sourceId * mStateCount + targetId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#transitLog2Prob(int, int)
+   */
+  public double transitLog2Prob(int sourceId, int targetId) {
+    return mTransitLog2Probs[sourceId * mStateCount + targetId];
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#transitProb(String, String)
+   */
+  public double transitProb(String source, String target) {
+    int sourceId = stateSymbolTable().symbolToID(source);
+    int targetId = stateSymbolTable().symbolToID(target);
+    return sourceId < 0 || targetId < 0 ? 0.0 : transitProb(sourceId, targetId);
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#emitProb(int, CharSequence)
+   */
+  public double emitProb(int stateId, CharSequence emission) {
+    return Math.pow(2.0, emitLog2Prob(stateId, emission));
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#emitLog2Prob(int, CharSequence)
+   */
+  public double emitLog2Prob(int stateId, CharSequence emission) {
+    int tokenId = tokenId(emission);
+    if (tokenId < 0) {
+      return mEmissionLms[stateId].log2Estimate(emission);
+    }
+    return mEmissions.get(tokenId * mStateCount + stateId);
+  }
+
+  /**
+   * @see com.aliasi.hmm.AbstractHmm#emitProb(String, CharSequence)
+   */
+  public double emitProb(String state, CharSequence emission) {
+    int stateId = stateSymbolTable().symbolToID(state);
+    return stateId < 0 ? 0.0 : emitProb(stateId, emission);
+  }
+
+  /**
+   * Hashes a token. The compiler places the tokens with the same function.
+   */
+  static int hash(CharSequence token) {
+    int h = 0;
+    for (int i = 0; i < token.length(); i++) {
+      h = 31 * h + token.charAt(i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Looks up the id of a token in the mapped hash table.
+   *
+   * @return the token id, or -1 if the token is outside the vocabulary
+   */
+  private int tokenId(CharSequence token) {
+    int slot = hash(token) & mSlotMask;
+    while (true) {
+      int tokenId = mSlots.get(slot) - 1;
+      if (tokenId < 0) {
+        return -1;
+      }
+      int begin = mTokenOffsets.get(tokenId);
+      int end = mTokenOffsets.get(tokenId + 1);
+      if (end - begin == token.length()) {
+        int i = 0;
+        while (i < end - begin && mTokenChars.get(begin + i) == token.charAt(i)) {
+          i++;
+        }
+        if (i == end - begin) {
+          return tokenId;
+        }
+      }
+      slot = (slot + 1) & mSlotMask;
+    }
+  }
+
+  /**
+   * Deserializes the object stored in a section.
+   */
+  private Object readObject(int section) throws IOException, ClassNotFoundException {
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+            new ByteBufferInputStream(section(section))));
+    try {
+      return in.readObject();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Gets a view of a section of the mapped file.
+   */
+  private ByteBuffer section(int section) {
+    return section(mBuffer, section);
+  }
+
+  /**
+   * Gets a view of a section of a mapped file.
+   */
+  private static ByteBuffer section(ByteBuffer buffer, int section) {
+    int offset = (int) buffer.getLong(24 + 16 * section);
+    int length = (int) buffer.getLong(32 + 16 * section);
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+
+  /**
+   * Copies a range of an array.
+   */
+  private static double[] copy(double[] values, int from, int length) {
+    double[] copy = new double[length];
+    System.arraycopy(values, from, copy, 0, length);
+    return copy;
+  }
+
+  /**
+   * The ByteBufferInputStream class reads the remaining bytes of a buffer.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    /**
+     * The buffer to read.
+     */
+    private ByteBuffer mBuffer;
+
+    /**
+     * Creates a stream over the remaining bytes of a buffer.
+     */
+    ByteBufferInputStream(ByteBuffer buffer) {
+      mBuffer = buffer;
+    }
+
+    /**
+     * @see java.io.InputStream#read()
+     */
+    public int read() {
+      return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+    }
+
+    /**
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!mBuffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, mBuffer.remaining());
+      mBuffer.get(b, off, n);
+      return n;
+    }
+  }
+
+  /**
+   * The MappedCharLm class estimates tokens with the mapped node arrays of one compiled LingPipe
+   * character language model with boundaries. It repeats the arithmetic of LingPipe's compiled
+   * models step by step, so the estimates are bit for bit those of the original.
+   */
+  private static class MappedCharLm {
+
+    /**
+     * Last characters of the nodes of all models.
+     */
+    private CharBuffer mChars;
+
+    /**
+     * Log2 probabilities of the nodes of all models.
+     */
+    private FloatBuffer mLogProbs;
+
+    /**
+     * Suffix node indexes of the nodes of all models.
+     */
+    private IntBuffer mSuffixes;
+
+    /**
+     * Log2 one minus interpolation ratios of the contexts of all models.
+     */
+    private FloatBuffer mLogOneMinusLambdas;
+
+    /**
+     * First child node indexes of the contexts of all models.
+     */
+    private IntBuffer mFirstChildren;
+
+    /**
+     * Number of contexts, i.e. nodes with children, of this model. They come first in node order.
+     */
+    private int mContextCount;
+
+    /**
+     * Offset of the nodes of this model.
+     */
+    private int mNodeOffset;
+
+    /**
+     * Offset of the contexts of this model.
+     */
+    private int mContextOffset;
+
+    /**
+     * Offset of the first children of this model.
+     */
+    private int mFirstChildOffset;
+
+    /**
+     * Log2 estimate of a character never seen in training.
+     */
+    private float mLogUniformEstimate;
+
+    /**
+     * Character marking the begin and end of a token.
+     */
+    private char mBoundaryChar;
+
+    /**
+     * Log2 estimate of the leading boundary character, which is not part of the token estimate.
+     */
+    private double mBoundaryLog2Estimate;
+
+    /**
+     * Creates a model over a range of the mapped node arrays.
+     */
+    MappedCharLm(CharBuffer chars, FloatBuffer logProbs, IntBuffer suffixes,
+            FloatBuffer logOneMinusLambdas, IntBuffer firstChildren, int contextCount,
+            int nodeOffset, int contextOffset, int firstChildOffset, float logUniformEstimate,
+            char boundaryChar) {
+      mChars = chars;
+      mLogProbs = logProbs;
+      mSuffixes = suffixes;
+      mLogOneMinusLambdas = logOneMinusLambdas;
+      mFirstChildren = firstChildren;
+      mContextCount = contextCount;
+      mNodeOffset = nodeOffset;
+      mContextOffset = contextOffset;
+      mFirstChildOffset = firstChildOffset;
+      mLogUniformEstimate = logUniformEstimate;
+      mBoundaryChar = boundaryChar;
+      mBoundaryLog2Estimate = processLog2Estimate("", 1);
+    }
+
+    /**
+     * Estimates a token surrounded by boundary characters, given the leading boundary.
+     */
+    double log2Estimate(CharSequence token) {
+      for (int i = 0; i < token.length(); i++) {
+        if (token.charAt(i) == mBoundaryChar) {
+          throw new IllegalArgumentException("Token contains the boundary character at " + i);
+        }
+      }
+      return processLog2Estimate(token, token.length() + 2) - mBoundaryLog2Estimate;
+    }
+
+    /**
+     * Estimates the first characters of a token surrounded by boundary characters, walking down
+     * to shorter contexts while a character is not a child of the current context.
+     */
+    private double processLog2Estimate(CharSequence token, int length) {
+      double sum = 0.0;
+      int context = 0;
+      for (int i = 0; i < length; i++) {
+        char c = i == 0 || i > token.length() ? mBoundaryChar : token.charAt(i - 1);
+        int node;
+        while ((node = childIndex(context, c)) < 0) {
+          if (context < mContextCount) {
+            sum += mLogOneMinusLambdas.get(mContextOffset + context);
+          }
+          if (context == 0) {
+            break;
+          }
+          context = mSuffixes.get(mNodeOffset + context);
+        }
+        if (node < 0) {
+          sum += mLogUniformEstimate;
+          context = 0;
+        } else {
+          sum += mLogProbs.get(mNodeOffset + node);
+          context = node < mContextCount ? node : mSuffixes.get(mNodeOffset + node);
+        }
+      }
+      return sum;
+    }
+
+    /**
+     * Finds the child of a context with a character by binary search.
+     *
+     * @return the node index of the child, or -1 if the context has no such child
+     */
+    private int childIndex(int context, char c) {
+      if (context >= mContextCount) {
+        return -1;
+      }
+      int low = mFirstChildren.get(mFirstChildOffset + context);
+      int high = mFirstChildren.get(mFirstChildOffset + context + 1) - 1;
+      while (low <= high) {
+        int mid = (low + high) / 2;
+        char midChar = mChars.get(mNodeOffset + mid);
+        if (midChar == c) {
+          return mid;
+        }
+        if (midChar < c) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,347 @@
+package ner.Resource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.aliasi.chunk.HmmChunker;
+import com.aliasi.hmm.HiddenMarkovModel;
+import com.aliasi.lm.CompiledNGramBoundaryLM;
+import com.aliasi.lm.CompiledNGramProcessLM;
+import com.aliasi.symbol.SymbolTable;
+import com.aliasi.tokenizer.Tokenizer;
+import com.aliasi.tokenizer.TokenizerFactory;
+import com.aliasi.util.AbstractExternalizable;
+
+/**
+ * The MappedHmmCompiler class converts a compiled LingPipe character language model HMM chunker
+ * into the file layout read by {@link MappedHmm}. The node arrays of the emission language models
+ * are copied as they are, so the compiled file estimates any token. The emission probabilities of
+ * every token of the optional corpus files, which should be the kind of text the model is run on,
+ * are also precomputed. Usage:
+ *
+ * <pre>
+ * java ner.Resource.MappedHmmCompiler &lt;model&gt; &lt;output&gt; [&lt;corpus&gt; ...]
+ * </pre>
+ *
+ * The compiled file can be used in place of the original model file of the
+ * <code>LingPipeGeneTagModel</code> resource.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedHmmCompiler {
+
+  /**
+   * Charset of the corpus files.
+   */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Compiles a model.
+   *
+   * @param args
+   *          the model file, the output file and the corpus files
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: java ner.Resource.MappedHmmCompiler "
+              + "<model> <output> [<corpus> ...]");
+      System.exit(1);
+    }
+    List<File> corpus = new ArrayList<File>();
+    for (int i = 2; i < args.length; i++) {
+      corpus.add(new File(args[i]));
+    }
+    long start = System.currentTimeMillis();
+    int tokenCount = compile(new File(args[0]), new File(args[1]), corpus);
+    System.out.println("Compiled " + tokenCount + " tokens in "
+            + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Compiles a model.
+   *
+   * @param modelFile
+   *          the compiled HMM chunker
+   * @param outputFile
+   *          the mapped HMM file to write
+   * @param corpus
+   *          text files whose tokens get precomputed emission probabilities, possibly none
+   * @return number of tokens with precomputed emission probabilities
+   * @throws IOException
+   *           if a file can not be read or written, or the model is not a compiled character
+   *           language model HMM
+   * @throws ClassNotFoundException
+   *           if the model contains a class which can not be found
+   */
+  public static int compile(File modelFile, File outputFile, List<File> corpus)
+          throws IOException, ClassNotFoundException {
+    Object model = AbstractExternalizable.readObject(modelFile);
+    if (!(model instanceof HmmChunker)) {
+      throw new IOException("Not an HMM chunker: " + modelFile.getPath());
+    }
+    HmmChunker chunker = (HmmChunker) model;
+    HiddenMarkovModel hmm = chunker.getDecoder().getHmm();
+    SymbolTable states = hmm.stateSymbolTable();
+    int n = states.numSymbols();
+    for (int i = 0; i < n; i++) {
+      if (states.symbolToID(states.idToSymbol(i)) != i) {
+        throw new IOException("State ids are not consecutive: " + modelFile.getPath());
+      }
+    }
+    String[] tokens = collectTokens(chunker.getTokenizerFactory(), corpus);
+
+    byte[][] sections = new byte[MappedHmm.SECTION_COUNT][];
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+    AbstractExternalizable.compileOrSerialize(chunker.getTokenizerFactory(), objectOut);
+    objectOut.close();
+    sections[MappedHmm.SECTION_TOKENIZER] = bytes.toByteArray();
+
+    bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(hmm.startProb(i));
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(hmm.startLog2Prob(i));
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(hmm.endProb(i));
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(hmm.endLog2Prob(i));
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        out.writeDouble(hmm.transitProb(i, j));
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        out.writeDouble(hmm.transitLog2Prob(i, j));
+      }
+    }
+    out.close();
+    sections[MappedHmm.SECTION_TRANSITIONS] = bytes.toByteArray();
+
+    bytes = new ByteArrayOutputStream();
+    out = new DataOutputStream(bytes);
+    for (int i = 0; i < n; i++) {
+      out.writeUTF(states.idToSymbol(i));
+    }
+    out.close();
+    sections[MappedHmm.SECTION_STATES] = bytes.toByteArray();
+
+    // open addressing table with a load factor of at most one half
+    int tableSize = 2;
+    while (tableSize < 2 * tokens.length) {
+      tableSize *= 2;
+    }
+    ByteBuffer slots = ByteBuffer.allocate(4 * tableSize);
+    for (int i = 0; i < tokens.length; i++) {
+      int slot = MappedHmm.hash(tokens[i]) & (tableSize - 1);
+      while (slots.getInt(4 * slot) != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      slots.putInt(4 * slot, i + 1);
+    }
+    sections[MappedHmm.SECTION_SLOTS] = slots.array();
+
+    bytes = new ByteArrayOutputStream();
+    out = new DataOutputStream(bytes);
+    int offset = 0;
+    out.writeInt(offset);
+    for (String token : tokens) {
+      offset += token.length();
+      out.writeInt(offset);
+    }
+    out.close();
+    sections[MappedHmm.SECTION_TOKEN_OFFSETS] = bytes.toByteArray();
+
+    bytes = new ByteArrayOutputStream();
+    out = new DataOutputStream(bytes);
+    for (String token : tokens) {
+      out.writeChars(token);
+    }
+    out.close();
+    sections[MappedHmm.SECTION_TOKEN_CHARS] = bytes.toByteArray();
+
+    bytes = new ByteArrayOutputStream();
+    out = new DataOutputStream(bytes);
+    for (String token : tokens) {
+      for (int i = 0; i < n; i++) {
+        out.writeDouble(hmm.emitLog2Prob(i, token));
+      }
+    }
+    out.close();
+    sections[MappedHmm.SECTION_EMISSIONS] = bytes.toByteArray();
+
+    writeEmissionLms(hmm, sections);
+
+    write(outputFile, n, tokens.length, tableSize, sections);
+    return tokens.length;
+  }
+
+  /**
+   * Collects the distinct tokens of the corpus files.
+   */
+  private static String[] collectTokens(TokenizerFactory tokenizerFactory, List<File> corpus)
+          throws IOException {
+    Set<String> tokens = new LinkedHashSet<String>();
+    for (File file : corpus) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+              UTF8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          char[] chars = line.toCharArray();
+          Tokenizer tokenizer = tokenizerFactory.tokenizer(chars, 0, chars.length);
+          String token;
+          while ((token = tokenizer.nextToken()) != null) {
+            tokens.add(token);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return tokens.toArray(new String[tokens.size()]);
+  }
+
+  /**
+   * Writes the header and the sections, each aligned to eight bytes.
+   */
+  private static void write(File outputFile, int stateCount, int tokenCount, int tableSize,
+          byte[][] sections) throws IOException {
+    long length = MappedHmm.HEADER_SIZE;
+    long[] offsets = new long[sections.length];
+    for (int i = 0; i < sections.length; i++) {
+      offsets[i] = length;
+      length = (length + sections[i].length + 7) & ~7L;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Mapped HMM file would be too large: " + length + " bytes");
+    }
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(outputFile, "rw");
+    try {
+      randomAccessFile.setLength(length);
+      MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+              0, length);
+      buffer.putInt(MappedHmm.MAGIC);
+      buffer.putInt(MappedHmm.VERSION);
+      buffer.putInt(stateCount);
+      buffer.putInt(tokenCount);
+      buffer.putInt(tableSize);
+      buffer.putInt(0);
+      for (int i = 0; i < sections.length; i++) {
+        buffer.putLong(offsets[i]);
+        buffer.putLong(sections[i].length);
+      }
+      for (int i = 0; i < sections.length; i++) {
+        buffer.position((int) offsets[i]);
+        buffer.put(sections[i]);
+      }
+      buffer.force();
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Copies the node arrays of the emission language models into their sections. LingPipe keeps
+   * them private, so they are read by reflection.
+   */
+  private static void writeEmissionLms(HiddenMarkovModel hmm, byte[][] sections)
+          throws IOException {
+    if (!hmm.getClass().getName().equals("com.aliasi.hmm.CompiledHmmCharLm")) {
+      throw new IOException("Not a compiled character language model HMM: "
+              + hmm.getClass().getName());
+    }
+    Object[] lms = (Object[]) field(hmm, "mEmissionLms");
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream headers = new DataOutputStream(headerBytes);
+    ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[5];
+    DataOutputStream[] outs = new DataOutputStream[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = new ByteArrayOutputStream();
+      outs[i] = new DataOutputStream(bytes[i]);
+    }
+    int nodeOffset = 0;
+    int contextOffset = 0;
+    int firstChildOffset = 0;
+    for (Object lm : lms) {
+      if (!(lm instanceof CompiledNGramBoundaryLM)) {
+        throw new IOException("Not a compiled boundary language model: "
+                + lm.getClass().getName());
+      }
+      CompiledNGramProcessLM processLm = (CompiledNGramProcessLM) field(lm, "mProcessLM");
+      char[] chars = (char[]) field(processLm, "mChars");
+      float[] logProbs = (float[]) field(processLm, "mLogProbs");
+      int[] suffixes = (int[]) field(processLm, "mSuffix");
+      float[] logOneMinusLambdas = (float[]) field(processLm, "mLogOneMinusLambdas");
+      int[] firstChildren = (int[]) field(processLm, "mFirstChild");
+
+      headers.writeInt(logOneMinusLambdas.length);
+      headers.writeInt(nodeOffset);
+      headers.writeInt(contextOffset);
+      headers.writeInt(firstChildOffset);
+      headers.writeFloat((Float) field(processLm, "mLogUniformEstimate"));
+      headers.writeInt((Character) field(lm, "mBoundaryChar"));
+      for (int i = 0; i < chars.length; i++) {
+        outs[0].writeChar(chars[i]);
+        outs[1].writeFloat(logProbs[i]);
+        outs[2].writeInt(suffixes[i]);
+      }
+      for (float logOneMinusLambda : logOneMinusLambdas) {
+        outs[3].writeFloat(logOneMinusLambda);
+      }
+      for (int firstChild : firstChildren) {
+        outs[4].writeInt(firstChild);
+      }
+      nodeOffset += chars.length;
+      contextOffset += logOneMinusLambdas.length;
+      firstChildOffset += firstChildren.length;
+    }
+    headers.close();
+    sections[MappedHmm.SECTION_LM_HEADERS] = headerBytes.toByteArray();
+    for (int i = 0; i < bytes.length; i++) {
+      outs[i].close();
+      sections[MappedHmm.SECTION_LM_CHARS + i] = bytes[i].toByteArray();
+    }
+  }
+
+  /**
+   * Reads a private field of a LingPipe model.
+   */
+  private static Object field(Object object, String name) throws IOException {
+    try {
+      Field field = object.getClass().getDeclaredField(name);
+      field.setAccessible(true);
+      return field.get(object);
+    } catch (NoSuchFieldException e) {
+      throw new IOException("Unsupported LingPipe version, no field " + name + " in "
+              + object.getClass().getName(), e);
+    } catch (IllegalAccessException e) {
+      throw new IOException("Can not read the field " + name + " of "
+              + object.getClass().getName(), e);
+    }
+  }
+}
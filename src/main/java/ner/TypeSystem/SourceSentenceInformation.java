@@ -7,6 +7,8 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.JCasRegistry;
 import org.apache.uima.jcas.cas.TOP_Type;
 
+import org.apache.uima.jcas.cas.IntegerArray;
+
 import org.apache.uima.jcas.tcas.Annotation;
 
 
@@ -78,6 +80,76 @@ public class SourceSentenceInformation extends Annotation {
     if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_identifier == null)
       jcasType.jcas.throwFeatMissing("identifier", "ner.TypeSystem.SourceSentenceInformation");
     jcasType.ll_cas.ll_setStringValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_identifier, v);}    
+   
+    
+  //*--------------*
+  //* Feature: lineIndex
+
+  /** getter for lineIndex - gets lineIndex represents the index of the input sentence's line in the input file
+   * @generated */
+  public int getLineIndex() {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_lineIndex == null)
+      jcasType.jcas.throwFeatMissing("lineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    return jcasType.ll_cas.ll_getIntValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_lineIndex);}
+    
+  /** setter for lineIndex - sets lineIndex represents the index of the input sentence's line in the input file 
+   * @generated */
+  public void setLineIndex(int v) {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_lineIndex == null)
+      jcasType.jcas.throwFeatMissing("lineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    jcasType.ll_cas.ll_setIntValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_lineIndex, v);}    
+   
+    
+  //*--------------*
+  //* Feature: firstLineIndex
+
+  /** getter for firstLineIndex - gets firstLineIndex represents the index of the first line of the input file read for the input sentence, the lines from it up to lineIndex without identifier or content did not become sentences
+   * @generated */
+  public int getFirstLineIndex() {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_firstLineIndex == null)
+      jcasType.jcas.throwFeatMissing("firstLineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    return jcasType.ll_cas.ll_getIntValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_firstLineIndex);}
+    
+  /** setter for firstLineIndex - sets firstLineIndex represents the index of the first line of the input file read for the input sentence, the lines from it up to lineIndex without identifier or content did not become sentences 
+   * @generated */
+  public void setFirstLineIndex(int v) {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_firstLineIndex == null)
+      jcasType.jcas.throwFeatMissing("firstLineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    jcasType.ll_cas.ll_setIntValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_firstLineIndex, v);}    
+   
+    
+  //*--------------*
+  //* Feature: spacePrefixCounts
+
+  /** getter for spacePrefixCounts - gets spacePrefixCounts represents the number of spaces before each offset of the input sentence, from the begin of the sentence to its end inclusive
+   * @generated */
+  public IntegerArray getSpacePrefixCounts() {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_spacePrefixCounts == null)
+      jcasType.jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    return (IntegerArray)(jcasType.ll_cas.ll_getFSForRef(jcasType.ll_cas.ll_getRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts)));}
+    
+  /** setter for spacePrefixCounts - sets spacePrefixCounts represents the number of spaces before each offset of the input sentence, from the begin of the sentence to its end inclusive 
+   * @generated */
+  public void setSpacePrefixCounts(IntegerArray v) {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_spacePrefixCounts == null)
+      jcasType.jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    jcasType.ll_cas.ll_setRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts, jcasType.ll_cas.ll_getFSRef(v));}    
+    
+  /** indexed getter for spacePrefixCounts - gets an indexed value - spacePrefixCounts represents the number of spaces before each offset of the input sentence, from the begin of the sentence to its end inclusive
+   * @generated */
+  public int getSpacePrefixCounts(int i) {
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_spacePrefixCounts == null)
+      jcasType.jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    jcasType.jcas.checkArrayBounds(jcasType.ll_cas.ll_getRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts), i);
+    return jcasType.ll_cas.ll_getIntArrayValue(jcasType.ll_cas.ll_getRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts), i);}
+
+  /** indexed setter for spacePrefixCounts - sets an indexed value - spacePrefixCounts represents the number of spaces before each offset of the input sentence, from the begin of the sentence to its end inclusive
+   * @generated */
+  public void setSpacePrefixCounts(int i, int v) { 
+    if (SourceSentenceInformation_Type.featOkTst && ((SourceSentenceInformation_Type)jcasType).casFeat_spacePrefixCounts == null)
+      jcasType.jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    jcasType.jcas.checkArrayBounds(jcasType.ll_cas.ll_getRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts), i);
+    jcasType.ll_cas.ll_setIntArrayValue(jcasType.ll_cas.ll_getRefValue(addr, ((SourceSentenceInformation_Type)jcasType).casFeatCode_spacePrefixCounts), i, v);}
   }
 
     
\ No newline at end of file
@@ -61,6 +61,79 @@ public class SourceSentenceInformation_Type extends Annotation_Type {
     ll_cas.ll_setStringValue(addr, casFeatCode_identifier, v);}
     
   
+ 
+  /** @generated */
+  final Feature casFeat_lineIndex;
+  /** @generated */
+  final int     casFeatCode_lineIndex;
+  /** @generated */ 
+  public int getLineIndex(int addr) {
+        if (featOkTst && casFeat_lineIndex == null)
+      jcas.throwFeatMissing("lineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    return ll_cas.ll_getIntValue(addr, casFeatCode_lineIndex);
+  }
+  /** @generated */    
+  public void setLineIndex(int addr, int v) {
+        if (featOkTst && casFeat_lineIndex == null)
+      jcas.throwFeatMissing("lineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    ll_cas.ll_setIntValue(addr, casFeatCode_lineIndex, v);}
+    
+  
+ 
+  /** @generated */
+  final Feature casFeat_firstLineIndex;
+  /** @generated */
+  final int     casFeatCode_firstLineIndex;
+  /** @generated */ 
+  public int getFirstLineIndex(int addr) {
+        if (featOkTst && casFeat_firstLineIndex == null)
+      jcas.throwFeatMissing("firstLineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    return ll_cas.ll_getIntValue(addr, casFeatCode_firstLineIndex);
+  }
+  /** @generated */    
+  public void setFirstLineIndex(int addr, int v) {
+        if (featOkTst && casFeat_firstLineIndex == null)
+      jcas.throwFeatMissing("firstLineIndex", "ner.TypeSystem.SourceSentenceInformation");
+    ll_cas.ll_setIntValue(addr, casFeatCode_firstLineIndex, v);}
+    
+  
+ 
+  /** @generated */
+  final Feature casFeat_spacePrefixCounts;
+  /** @generated */
+  final int     casFeatCode_spacePrefixCounts;
+  /** @generated */ 
+  public int getSpacePrefixCounts(int addr) {
+        if (featOkTst && casFeat_spacePrefixCounts == null)
+      jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    return ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts);
+  }
+  /** @generated */    
+  public void setSpacePrefixCounts(int addr, int v) {
+        if (featOkTst && casFeat_spacePrefixCounts == null)
+      jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    ll_cas.ll_setRefValue(addr, casFeatCode_spacePrefixCounts, v);}
+    
+   /** @generated */
+  public int getSpacePrefixCounts(int addr, int i) {
+        if (featOkTst && casFeat_spacePrefixCounts == null)
+      jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    if (lowLevelTypeChecks)
+      return ll_cas.ll_getIntArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i, true);
+    jcas.checkArrayBounds(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i);
+    return ll_cas.ll_getIntArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i);
+  }
+   
+  /** @generated */ 
+  public void setSpacePrefixCounts(int addr, int i, int v) {
+        if (featOkTst && casFeat_spacePrefixCounts == null)
+      jcas.throwFeatMissing("spacePrefixCounts", "ner.TypeSystem.SourceSentenceInformation");
+    if (lowLevelTypeChecks)
+      ll_cas.ll_setIntArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i, v, true);
+    jcas.checkArrayBounds(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i);
+    ll_cas.ll_setIntArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_spacePrefixCounts), i, v);
+  }
+ 
 
 
 
@@ -74,6 +147,18 @@ public class SourceSentenceInformation_Type extends Annotation_Type {
     casFeat_identifier = jcas.getRequiredFeatureDE(casType, "identifier", "uima.cas.String", featOkTst);
     casFeatCode_identifier  = (null == casFeat_identifier) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_identifier).getCode();
 
+ 
+    casFeat_lineIndex = jcas.getRequiredFeatureDE(casType, "lineIndex", "uima.cas.Integer", featOkTst);
+    casFeatCode_lineIndex  = (null == casFeat_lineIndex) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_lineIndex).getCode();
+
+ 
+    casFeat_firstLineIndex = jcas.getRequiredFeatureDE(casType, "firstLineIndex", "uima.cas.Integer", featOkTst);
+    casFeatCode_firstLineIndex  = (null == casFeat_firstLineIndex) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_firstLineIndex).getCode();
+
+ 
+    casFeat_spacePrefixCounts = jcas.getRequiredFeatureDE(casType, "spacePrefixCounts", "uima.cas.IntegerArray", featOkTst);
+    casFeatCode_spacePrefixCounts  = (null == casFeat_spacePrefixCounts) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_spacePrefixCounts).getCode();
+
   }
 }
 
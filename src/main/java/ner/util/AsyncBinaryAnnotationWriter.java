@@ -0,0 +1,171 @@
+package ner.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The AsyncBinaryAnnotationWriter class writes gene mentions with a {@link BinaryAnnotationWriter}
+ * from a dedicated writer thread, see {@link AsyncWriter}, so the threads producing the mentions
+ * neither compress blocks nor wait for the disk. Mentions are handed over in batches, typically the
+ * mentions of one document. The blocks are written when they are full and when a flush is due.
+ * <p>
+ * A {@link AsyncWriter.SyncListener} is called with the length of the file, from which
+ * {@link BinaryAnnotationWriter#append(File, long, int, File)} continues the file. Each flush ends
+ * the current block, so flushes and syncs should be rare compared to the blocks.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class AsyncBinaryAnnotationWriter extends AsyncWriter<AsyncBinaryAnnotationWriter.Batch> {
+
+  /**
+   * Mentions handed over by a producer.
+   */
+  public static class Batch {
+
+    /**
+     * Identifiers of the sentences of the mentions.
+     */
+    private List<String> mIdentifiers = new ArrayList<String>();
+
+    /**
+     * Begins of the mentions.
+     */
+    private List<Integer> mBegins = new ArrayList<Integer>();
+
+    /**
+     * Inclusive ends of the mentions.
+     */
+    private List<Integer> mEnds = new ArrayList<Integer>();
+
+    /**
+     * Texts of the mentions.
+     */
+    private List<String> mTexts = new ArrayList<String>();
+
+    /**
+     * Sources of the mentions.
+     */
+    private List<String> mSources = new ArrayList<String>();
+
+    /**
+     * Confidences of the mentions.
+     */
+    private List<Float> mConfidences = new ArrayList<Float>();
+
+    /**
+     * Adds a mention, with the arguments of
+     * {@link BinaryAnnotationWriter#add(String, int, int, String, String, float)}.
+     */
+    public void add(String identifier, int begin, int end, String text, String source,
+            float confidence) {
+      mIdentifiers.add(identifier);
+      mBegins.add(begin);
+      mEnds.add(end);
+      mTexts.add(text);
+      mSources.add(source);
+      mConfidences.add(confidence);
+    }
+
+    /**
+     * @return number of mentions in the batch
+     */
+    public int size() {
+      return mIdentifiers.size();
+    }
+
+    /**
+     * Writes the mentions.
+     */
+    void writeTo(BinaryAnnotationWriter writer) throws IOException {
+      for (int i = 0; i < mIdentifiers.size(); i++) {
+        writer.add(mIdentifiers.get(i), mBegins.get(i), mEnds.get(i), mTexts.get(i),
+                mSources.get(i), mConfidences.get(i));
+      }
+    }
+  }
+
+  /**
+   * The writer of the file, used by the writer thread only.
+   */
+  private BinaryAnnotationWriter mWriter;
+
+  /**
+   * Creates a writer and starts its thread.
+   *
+   * @param writer
+   *          the writer of the file, closed by {@link #close()}
+   * @param queueSize
+   *          number of batches which can wait to be written
+   * @param flushRecords
+   *          number of mentions after which the current block is written to the file, 0 if never
+   * @param flushMillis
+   *          milliseconds after which the current block is written to the file, 0 if never
+   * @param syncOnFlush
+   *          whether the file is synced to disk when the block is written
+   * @param name
+   *          name of the writer thread
+   */
+  public AsyncBinaryAnnotationWriter(BinaryAnnotationWriter writer, int queueSize,
+          int flushRecords, long flushMillis, boolean syncOnFlush, String name) {
+    super(queueSize, flushRecords, flushMillis, syncOnFlush);
+    mWriter = writer;
+    start(name);
+  }
+
+  /**
+   * Hands over a batch of mentions.
+   *
+   * @param batch
+   *          the mentions, not changed afterwards
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void write(Batch batch) throws IOException {
+    write(batch, batch.size());
+  }
+
+  /**
+   * Writes the remaining mentions, stops the writer thread and closes the file and its index.
+   *
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void close() throws IOException {
+    super.close();
+  }
+
+  /**
+   * Adds the mentions of a batch to the current block.
+   */
+  protected void writeBatch(Batch batch) throws IOException {
+    batch.writeTo(mWriter);
+  }
+
+  /**
+   * Ends the current block and writes it to the file.
+   */
+  protected long flush(boolean sync) throws IOException {
+    return mWriter.flush(sync);
+  }
+
+  /**
+   * Closes the file and its index.
+   */
+  protected void finish() throws IOException {
+    mWriter.close();
+  }
+
+  /**
+   * Closes the file after an error.
+   */
+  protected void abort() {
+    try {
+      mWriter.close();
+    } catch (Exception e) {
+      // the error which stopped the writer is reported
+    }
+  }
+}
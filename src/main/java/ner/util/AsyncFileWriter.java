@@ -0,0 +1,143 @@
+package ner.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The AsyncFileWriter class writes text to a file from a dedicated writer thread, see
+ * {@link AsyncWriter}. The writer thread encodes the batches of text into a large buffer and
+ * writes the buffer to the file channel when it is full or a flush is due.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class AsyncFileWriter extends AsyncWriter<String> {
+
+  /**
+   * Size of the buffer of encoded text.
+   */
+  private static final int BUFFER_SIZE = 1 << 18;
+
+  /**
+   * The file.
+   */
+  private FileChannel mChannel;
+
+  /**
+   * Encoder of the text.
+   */
+  private CharsetEncoder mEncoder;
+
+  /**
+   * Encoded text not yet written to the file.
+   */
+  private ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  /**
+   * Creates a writer and starts its thread.
+   *
+   * @param channel
+   *          the file, positioned where the text is written
+   * @param charset
+   *          charset of the file
+   * @param queueSize
+   *          number of batches which can wait to be written
+   * @param flushRecords
+   *          number of records after which the text is written to the file, 0 if never
+   * @param flushMillis
+   *          milliseconds after which the text is written to the file, 0 if never
+   * @param syncOnFlush
+   *          whether the file is synced to disk when the text is written
+   * @param name
+   *          name of the writer thread
+   */
+  public AsyncFileWriter(FileChannel channel, Charset charset, int queueSize, int flushRecords,
+          long flushMillis, boolean syncOnFlush, String name) {
+    super(queueSize, flushRecords, flushMillis, syncOnFlush);
+    mChannel = channel;
+    mEncoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    start(name);
+  }
+
+  /**
+   * Hands over a batch of text.
+   *
+   * @param text
+   *          the text
+   * @param recordCount
+   *          number of records in the text
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void write(String text, int recordCount) throws IOException {
+    super.write(text, recordCount);
+  }
+
+  /**
+   * Writes and syncs the remaining text and stops the writer thread. The channel is left open.
+   *
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void close() throws IOException {
+    super.close();
+  }
+
+  /**
+   * Encodes text into the buffer, writing the buffer whenever it is full.
+   */
+  protected void writeBatch(String text) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(text);
+    while (true) {
+      CoderResult result = mEncoder.encode(chars, mBuffer, false);
+      if (result.isOverflow()) {
+        writeBuffer();
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the buffer to the file and optionally syncs the file.
+   */
+  protected long flush(boolean sync) throws IOException {
+    writeBuffer();
+    if (sync) {
+      mChannel.force(false);
+    }
+    return mChannel.position();
+  }
+
+  /**
+   * Encodes what the encoder still holds and writes and syncs the rest of the text.
+   */
+  protected void finish() throws IOException {
+    CharBuffer empty = CharBuffer.allocate(0);
+    while (mEncoder.encode(empty, mBuffer, true).isOverflow()) {
+      writeBuffer();
+    }
+    while (mEncoder.flush(mBuffer).isOverflow()) {
+      writeBuffer();
+    }
+    flush(true);
+  }
+
+  /**
+   * Writes the buffer to the file.
+   */
+  private void writeBuffer() throws IOException {
+    mBuffer.flip();
+    while (mBuffer.hasRemaining()) {
+      mChannel.write(mBuffer);
+    }
+    mBuffer.clear();
+  }
+}
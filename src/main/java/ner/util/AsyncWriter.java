@@ -0,0 +1,376 @@
+package ner.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The AsyncWriter class writes output to a file from a dedicated writer thread, so the threads
+ * producing the output never wait for the disk. Output is handed over in batches, typically the
+ * records of one document, through a bounded queue; a producer only waits when the writer thread
+ * has fallen behind by the whole queue. The writer thread sleeps until a flush is due or the queue
+ * is half full and then takes all batches waiting in the queue at once, so many batches share one
+ * write and producers do not wake the writer for every batch. Subclasses buffer the batches in the
+ * format of their file and write them on a flush.
+ * <p>
+ * How much output a crash can lose is configured by when flushes are due: after a number of
+ * records, after a time, or only when the buffer of the subclass is full and at the end. A flush
+ * can also sync the file to disk. A {@link SyncListener} put into the queue is called once
+ * everything written before it is synced, with the length of the file at that point, which is what
+ * a checkpoint needs.
+ *
+ * @param <B>
+ *          type of the batches
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public abstract class AsyncWriter<B> {
+
+  /**
+   * Called by the writer thread once the output written before is synced to disk.
+   */
+  public interface SyncListener {
+
+    /**
+     * @param position
+     *          length of the file
+     * @throws IOException
+     *           if the listener fails, which stops the writer
+     */
+    void synced(long position) throws IOException;
+  }
+
+  /**
+   * Queue entry which stops the writer thread.
+   */
+  private static final Object END = new Object();
+
+  /**
+   * Queue entry of a batch handed over by a producer.
+   */
+  private static class Entry<B> {
+
+    /**
+     * The batch.
+     */
+    final B mBatch;
+
+    /**
+     * Number of records in the batch.
+     */
+    final int mRecordCount;
+
+    Entry(B batch, int recordCount) {
+      mBatch = batch;
+      mRecordCount = recordCount;
+    }
+  }
+
+  /**
+   * Batches and listeners waiting to be written.
+   */
+  private BlockingQueue<Object> mQueue;
+
+  /**
+   * Number of batches which can wait to be written.
+   */
+  private int mQueueSize;
+
+  /**
+   * Number of records handed over since the last flush, including those still in the queue.
+   */
+  private AtomicInteger mPendingRecords = new AtomicInteger();
+
+  /**
+   * Number of records after which a flush is due, 0 if never.
+   */
+  private int mFlushRecords;
+
+  /**
+   * Nanoseconds after which a flush is due, 0 if never.
+   */
+  private long mFlushNanos;
+
+  /**
+   * Whether a flush also syncs the file to disk.
+   */
+  private boolean mSyncOnFlush;
+
+  /**
+   * Number of records taken from the queue since the last flush.
+   */
+  private int mUnflushedRecords;
+
+  /**
+   * Time of the first record since the last flush.
+   */
+  private long mUnflushedSince;
+
+  /**
+   * The writer thread.
+   */
+  private Thread mThread;
+
+  /**
+   * Error which stopped the writer thread, null if none.
+   */
+  private volatile IOException mError;
+
+  /**
+   * Number of times a producer found the queue full.
+   */
+  private volatile long mQueueFullCount;
+
+  /**
+   * Creates a writer. Subclasses start its thread with {@link #start(String)} once they are
+   * initialized.
+   *
+   * @param queueSize
+   *          number of batches which can wait to be written
+   * @param flushRecords
+   *          number of records after which the output is written to the file, 0 if never
+   * @param flushMillis
+   *          milliseconds after which the output is written to the file, 0 if never
+   * @param syncOnFlush
+   *          whether the file is synced to disk when the output is written
+   */
+  protected AsyncWriter(int queueSize, int flushRecords, long flushMillis, boolean syncOnFlush) {
+    mQueueSize = Math.max(1, queueSize);
+    mQueue = new ArrayBlockingQueue<Object>(mQueueSize);
+    mFlushRecords = flushRecords;
+    mFlushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+    mSyncOnFlush = syncOnFlush;
+  }
+
+  /**
+   * Starts the writer thread.
+   *
+   * @param name
+   *          name of the writer thread
+   */
+  protected void start(String name) {
+    mThread = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, name);
+    mThread.setDaemon(true);
+    mThread.start();
+  }
+
+  /**
+   * Hands over a batch.
+   *
+   * @param batch
+   *          the batch, not changed afterwards
+   * @param recordCount
+   *          number of records in the batch
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  protected void write(B batch, int recordCount) throws IOException {
+    put(new Entry<B>(batch, recordCount));
+
+    // wake the writer thread when the first record since a flush starts the flush interval, when a
+    // flush is due by number, or when the queue is filling up
+    int pending = mPendingRecords.addAndGet(recordCount);
+    if ((mFlushNanos > 0 && pending <= recordCount)
+            || (mFlushRecords > 0 && pending >= mFlushRecords) || 2 * mQueue.size() >= mQueueSize) {
+      LockSupport.unpark(mThread);
+    }
+  }
+
+  /**
+   * Asks to be called once the output handed over so far is synced to disk.
+   *
+   * @param listener
+   *          the listener, called by the writer thread with the length of the file
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void sync(SyncListener listener) throws IOException {
+    put(listener);
+    LockSupport.unpark(mThread);
+  }
+
+  /**
+   * Writes the remaining output, finishes the file and stops the writer thread.
+   *
+   * @throws IOException
+   *           if the writer thread has failed
+   */
+  public void close() throws IOException {
+    if (mThread.isAlive() && mError == null) {
+      put(END);
+      LockSupport.unpark(mThread);
+      boolean interrupted = false;
+      while (mThread.isAlive()) {
+        try {
+          mThread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    checkError();
+  }
+
+  /**
+   * @return number of times a producer found the queue full and had to wait
+   */
+  public long getQueueFullCount() {
+    return mQueueFullCount;
+  }
+
+  /**
+   * Buffers a batch, writing the buffer to the file whenever it is full. Called by the writer
+   * thread.
+   */
+  protected abstract void writeBatch(B batch) throws IOException;
+
+  /**
+   * Writes the buffered output to the file and optionally syncs the file. Called by the writer
+   * thread.
+   *
+   * @return length of the file
+   */
+  protected abstract long flush(boolean sync) throws IOException;
+
+  /**
+   * Writes the remaining output and finishes the file. Called by the writer thread at the end.
+   */
+  protected abstract void finish() throws IOException;
+
+  /**
+   * Releases the file after an error stopped the writer thread before the end. Called by the
+   * writer thread; does nothing by default.
+   */
+  protected void abort() {
+  }
+
+  /**
+   * Puts an entry into the queue, waiting while it is full.
+   */
+  private void put(Object entry) throws IOException {
+    checkError();
+    if (!mQueue.offer(entry)) {
+      mQueueFullCount++;
+      LockSupport.unpark(mThread);
+      try {
+        while (!mQueue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+          checkError();
+          if (!mThread.isAlive()) {
+            throw new IOException("Output writer stopped");
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the output writer");
+      }
+    }
+  }
+
+  /**
+   * Rethrows the error of the writer thread.
+   */
+  private void checkError() throws IOException {
+    if (mError != null) {
+      throw new IOException("Output writer failed", mError);
+    }
+  }
+
+  /**
+   * Body of the writer thread: writes the queued batches until the end entry.
+   */
+  @SuppressWarnings("unchecked")
+  private void drain() {
+    List<Object> entries = new ArrayList<Object>();
+    boolean finishing = false;
+    try {
+      while (true) {
+        entries.clear();
+        mQueue.drainTo(entries);
+        for (Object entry : entries) {
+          if (entry == END) {
+            finishing = true;
+            finish();
+            return;
+          } else if (entry instanceof SyncListener) {
+            ((SyncListener) entry).synced(flushRecords(true));
+          } else {
+            Entry<B> batch = (Entry<B>) entry;
+            writeBatch(batch.mBatch);
+            countRecords(batch.mRecordCount);
+          }
+        }
+        if (isFlushDue()) {
+          flushRecords(mSyncOnFlush);
+        }
+
+        // sleep until a flush is due or a producer wakes the thread
+        if (mQueue.isEmpty()) {
+          if (mFlushNanos > 0 && mUnflushedRecords > 0) {
+            LockSupport.parkNanos(this, mUnflushedSince + mFlushNanos - System.nanoTime());
+          } else {
+            LockSupport.park(this);
+          }
+        }
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    } catch (IOException e) {
+      mError = e;
+    } catch (RuntimeException e) {
+      mError = new IOException(e.toString(), e);
+    } catch (InterruptedException e) {
+      mError = new IOException("Output writer interrupted");
+    }
+    // waiting producers see the error the next time they try the queue
+    mQueue.clear();
+    if (!finishing) {
+      abort();
+    }
+  }
+
+  /**
+   * Counts the records of a batch taken from the queue.
+   */
+  private void countRecords(int recordCount) {
+    if (mUnflushedRecords == 0) {
+      mUnflushedSince = System.nanoTime();
+    }
+    mUnflushedRecords += recordCount;
+  }
+
+  /**
+   * Tests whether enough records or time have passed since the last flush.
+   */
+  private boolean isFlushDue() {
+    if (mUnflushedRecords == 0) {
+      return false;
+    }
+    return (mFlushRecords > 0 && mUnflushedRecords >= mFlushRecords)
+            || (mFlushNanos > 0 && System.nanoTime() - mUnflushedSince >= mFlushNanos);
+  }
+
+  /**
+   * Flushes the output and starts counting the records of the next flush.
+   *
+   * @return length of the file
+   */
+  private long flushRecords(boolean sync) throws IOException {
+    long length = flush(sync);
+    mPendingRecords.addAndGet(-mUnflushedRecords);
+    mUnflushedRecords = 0;
+    return length;
+  }
+}
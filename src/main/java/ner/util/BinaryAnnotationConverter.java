@@ -0,0 +1,152 @@
+package ner.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+/**
+ * The BinaryAnnotationConverter class converts output files of the annotation printer between the
+ * text format, <code>identifier|begin end|text</code> lines, and the binary format of
+ * {@link BinaryAnnotationWriter}. Usage:
+ *
+ * <pre>
+ * java ner.util.BinaryAnnotationConverter toBinary &lt;text file&gt; &lt;binary file&gt;
+ * java ner.util.BinaryAnnotationConverter toText &lt;binary file&gt; &lt;text file&gt;
+ * </pre>
+ *
+ * Text files know no source or confidence, so their mentions get an empty source and a confidence
+ * of 0, and converting a file to binary and back gives the same lines.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class BinaryAnnotationConverter {
+
+  /**
+   * Size of the buffer of each text file.
+   */
+  private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Converts a file.
+   *
+   * @param args
+   *          the direction, toBinary or toText, the input file and the output file
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || !("toBinary".equals(args[0]) || "toText".equals(args[0]))) {
+      System.out.println("Usage: java ner.util.BinaryAnnotationConverter toBinary|toText "
+              + "<input> <output>");
+      System.exit(1);
+    }
+    long start = System.currentTimeMillis();
+    File input = new File(args[1]);
+    File output = new File(args[2]);
+    long count = "toBinary".equals(args[0]) ? toBinary(input, output) : toText(input, output);
+    System.out.println("Converted " + count + " mentions in "
+            + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Converts a text file to a binary file and its index.
+   *
+   * @param input
+   *          the text file
+   * @param output
+   *          the binary file
+   * @return number of mentions
+   * @throws IOException
+   *           if a file can not be read or written, or a line is not a mention
+   */
+  public static long toBinary(File input, File output) throws IOException {
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input),
+            BinaryAnnotationWriter.UTF8), FILE_BUFFER_SIZE);
+    BinaryAnnotationWriter writer = new BinaryAnnotationWriter(output,
+            BinaryAnnotationWriter.DEFAULT_BLOCK_SIZE, null);
+    long lineNumber = 0;
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        lineNumber++;
+        int bar = line.indexOf('|');
+        int space = line.indexOf(' ', bar + 1);
+        int secondBar = space < 0 ? -1 : line.indexOf('|', space + 1);
+        if (bar < 0 || secondBar < 0) {
+          throw new IOException("Not a mention at line " + lineNumber + " of " + input + ": "
+                  + line);
+        }
+        String begin = line.substring(bar + 1, space);
+        String end = line.substring(space + 1, secondBar);
+        if (!isCanonical(begin) || !isCanonical(end)) {
+          throw new IOException("Not a mention at line " + lineNumber + " of " + input + ": "
+                  + line);
+        }
+        writer.add(line.substring(0, bar), Integer.parseInt(begin), Integer.parseInt(end),
+                line.substring(secondBar + 1), null, 0);
+      }
+    } finally {
+      br.close();
+      writer.close();
+    }
+    return lineNumber;
+  }
+
+  /**
+   * Converts a binary file to a text file.
+   *
+   * @param input
+   *          the binary file
+   * @param output
+   *          the text file
+   * @return number of mentions
+   * @throws IOException
+   *           if a file can not be read or written
+   */
+  public static long toText(File input, File output) throws IOException {
+    BinaryAnnotationReader reader = new BinaryAnnotationReader(input);
+    BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output),
+            BinaryAnnotationWriter.UTF8), FILE_BUFFER_SIZE);
+    long count = 0;
+    try {
+      StringBuilder line = new StringBuilder();
+      while (reader.next()) {
+        line.setLength(0);
+        line.append(reader.getIdentifier()).append('|').append(reader.getBegin()).append(' ')
+                .append(reader.getEnd()).append('|').append(reader.getText()).append('\n');
+        bw.write(line.toString());
+        count++;
+      }
+    } finally {
+      reader.close();
+      bw.close();
+    }
+    return count;
+  }
+
+  /**
+   * Checks that an offset is written the way the printer writes it, so it converts back to the
+   * same text.
+   */
+  private static boolean isCanonical(String offset) {
+    if (offset.length() == 0 || offset.length() > 11) {
+      return false;
+    }
+    int start = offset.charAt(0) == '-' ? 1 : 0;
+    if (start == offset.length() || (offset.charAt(start) == '0' && offset.length() > start + 1)
+            || offset.equals("-0")) {
+      return false;
+    }
+    for (int i = start; i < offset.length(); i++) {
+      if (offset.charAt(i) < '0' || offset.charAt(i) > '9') {
+        return false;
+      }
+    }
+    long value = Long.parseLong(offset);
+    return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+  }
+}
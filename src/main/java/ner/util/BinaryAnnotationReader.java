@@ -0,0 +1,534 @@
+package ner.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The BinaryAnnotationReader class reads the gene mentions of a file written by a
+ * {@link BinaryAnnotationWriter}, one by one in the order they were written:
+ *
+ * <pre>
+ * while (reader.next()) {
+ *   ... reader.getIdentifier(), reader.getBegin(), ...
+ * }
+ * </pre>
+ *
+ * With the index of the file, {@link #seek(String)} moves the reader to the mentions of a sentence
+ * without reading the blocks before it.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class BinaryAnnotationReader {
+
+  /**
+   * The binary annotation file.
+   */
+  private File mFile;
+
+  /**
+   * Channel of the file.
+   */
+  private FileChannel mChannel;
+
+  /**
+   * Input stream of the file, at the next block.
+   */
+  private DataInputStream mIn;
+
+  /**
+   * Offset of the next block in the file.
+   */
+  private long mNextBlockOffset;
+
+  /**
+   * Offset of the current block in the file.
+   */
+  private long mBlockOffset;
+
+  /**
+   * The index file, opened on the first seek.
+   */
+  private RandomAccessFile mIndex;
+
+  /**
+   * Number of entries of the index.
+   */
+  private int mIndexSize;
+
+  /**
+   * Position of the table of entry positions in the index file.
+   */
+  private long mIndexTable;
+
+  /**
+   * UTF-8 bytes of the identifier of the last index entry read.
+   */
+  private byte[] mIndexBytes;
+
+  /**
+   * Decompressor of the blocks.
+   */
+  private Inflater mInflater = new Inflater();
+
+  /**
+   * Buffer of the compressed block.
+   */
+  private byte[] mCompressed = new byte[1 << 12];
+
+  /**
+   * The current block.
+   */
+  private byte[] mBlock = new byte[1 << 12];
+
+  /**
+   * Length of the current block.
+   */
+  private int mBlockLength;
+
+  /**
+   * Position in the current block.
+   */
+  private int mBlockPosition;
+
+  /**
+   * Strings of the current block, in order of their first occurrence.
+   */
+  private String[] mStrings = new String[256];
+
+  /**
+   * Number of strings of the current block read so far.
+   */
+  private int mStringCount;
+
+  /**
+   * Whether the reader is inside a sentence of the current block.
+   */
+  private boolean mInSentence;
+
+  /**
+   * Identifier of the current mention.
+   */
+  private String mIdentifier;
+
+  /**
+   * Begin of the current mention.
+   */
+  private int mBegin;
+
+  /**
+   * End of the current mention.
+   */
+  private int mEnd;
+
+  /**
+   * Text of the current mention.
+   */
+  private String mText;
+
+  /**
+   * Source of the current mention.
+   */
+  private String mSource;
+
+  /**
+   * Confidence of the current mention.
+   */
+  private float mConfidence;
+
+  /**
+   * Opens a file.
+   *
+   * @param file
+   *          the binary annotation file
+   * @throws IOException
+   *           if the file can not be read or is not a binary annotation file
+   */
+  public BinaryAnnotationReader(File file) throws IOException {
+    mFile = file;
+    mChannel = new FileInputStream(file).getChannel();
+    mIn = openStream();
+    try {
+      if (mIn.readInt() != BinaryAnnotationWriter.MAGIC) {
+        throw new IOException("Not a binary annotation file: " + file);
+      }
+      mNextBlockOffset = 4;
+    } catch (IOException e) {
+      mChannel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Moves to the next mention.
+   *
+   * @return whether there is a next mention
+   * @throws IOException
+   *           if a block can not be read
+   */
+  public boolean next() throws IOException {
+    while (true) {
+      if (mBlockPosition >= mBlockLength) {
+        if (!readBlock()) {
+          return false;
+        }
+        continue;
+      }
+      if (!mInSentence) {
+        mIdentifier = readString(readVarint(), 0);
+        mBegin = 0;
+        mInSentence = true;
+      }
+      int text = readVarint();
+      if (text == 0) {
+        mInSentence = false;
+        continue;
+      }
+      mText = readString(text, 1);
+      mBegin += unzigzag(readVarint());
+      mEnd = BinaryAnnotationWriter.predictEnd(mBegin, mText) + unzigzag(readVarint());
+      mConfidence = Float.intBitsToFloat(readInt());
+      mSource = readString(readVarint(), 0);
+      return true;
+    }
+  }
+
+  /**
+   * Moves to a sentence with the index of the file, so the next call of {@link #next()} reads its
+   * first mention. The mentions after it are read in the order they were written, and their
+   * identifiers tell where the sentence ends.
+   *
+   * @param identifier
+   *          identifier of the sentence
+   * @return whether the file has the sentence
+   * @throws IOException
+   *           if the index or a block can not be read
+   */
+  public boolean seek(String identifier) throws IOException {
+    for (long offset : findBlocks(identifier)) {
+      mChannel.position(offset);
+      mIn = openStream();
+      mNextBlockOffset = offset;
+      mBlockLength = 0;
+      mBlockPosition = 0;
+      mInSentence = false;
+      if (!readBlock()) {
+        continue;
+      }
+      while (mBlockPosition < mBlockLength) {
+        String sentence = readString(readVarint(), 0);
+        if (sentence.equals(identifier)) {
+          mIdentifier = sentence;
+          mBegin = 0;
+          mInSentence = true;
+          return true;
+        }
+        skipSentence();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the offsets of the blocks with the sentences of an identifier in the index.
+   *
+   * @param identifier
+   *          identifier of the sentences
+   * @return offsets of the blocks, in increasing order
+   * @throws IOException
+   *           if the index can not be read
+   */
+  public List<Long> findBlocks(String identifier) throws IOException {
+    if (mIndex == null) {
+      openIndex();
+    }
+    // binary search for the first entry with a kept position not less than the identifier
+    int low = 0;
+    int high = (mIndexSize + BinaryAnnotationWriter.INDEX_INTERVAL - 1)
+            / BinaryAnnotationWriter.INDEX_INTERVAL;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      seekIndexEntry(middle);
+      if (readIndexIdentifier(mIndex, new byte[0]).compareTo(identifier) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    // the entries of the identifier may begin before that entry
+    List<Long> offsets = new ArrayList<Long>();
+    int entry = Math.max(0, low - 1);
+    if (entry * BinaryAnnotationWriter.INDEX_INTERVAL >= mIndexSize) {
+      return offsets;
+    }
+    seekIndexEntry(entry);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels
+            .newInputStream(mIndex.getChannel()), 1 << 12));
+    byte[] previous = new byte[0];
+    for (int i = entry * BinaryAnnotationWriter.INDEX_INTERVAL; i < mIndexSize; i++) {
+      String entryIdentifier = readIndexIdentifier(in, previous);
+      previous = mIndexBytes;
+      long offset = readVarint(in);
+      int order = entryIdentifier.compareTo(identifier);
+      if (order > 0) {
+        break;
+      }
+      if (order == 0) {
+        offsets.add(offset);
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * @return offset of the block of the current mention in the file
+   */
+  public long getBlockOffset() {
+    return mBlockOffset;
+  }
+
+  /**
+   * @return identifier of the current mention
+   */
+  public String getIdentifier() {
+    return mIdentifier;
+  }
+
+  /**
+   * @return begin of the current mention, with the spaces left out
+   */
+  public int getBegin() {
+    return mBegin;
+  }
+
+  /**
+   * @return inclusive end of the current mention, with the spaces left out
+   */
+  public int getEnd() {
+    return mEnd;
+  }
+
+  /**
+   * @return text of the current mention
+   */
+  public String getText() {
+    return mText;
+  }
+
+  /**
+   * @return source of the current mention, empty if unknown
+   */
+  public String getSource() {
+    return mSource;
+  }
+
+  /**
+   * @return confidence of the current mention
+   */
+  public float getConfidence() {
+    return mConfidence;
+  }
+
+  /**
+   * Closes the file and its index.
+   *
+   * @throws IOException
+   *           if the file can not be closed
+   */
+  public void close() throws IOException {
+    mInflater.end();
+    try {
+      if (mIndex != null) {
+        mIndex.close();
+      }
+    } finally {
+      mChannel.close();
+    }
+  }
+
+  /**
+   * Opens a buffered stream at the position of the channel.
+   */
+  private DataInputStream openStream() {
+    return new DataInputStream(new BufferedInputStream(Channels.newInputStream(mChannel), 1 << 16));
+  }
+
+  /**
+   * Reads and decompresses the next block and its table of strings.
+   *
+   * @return whether there is a next block
+   */
+  private boolean readBlock() throws IOException {
+    int length;
+    try {
+      length = mIn.readInt();
+    } catch (EOFException e) {
+      return false;
+    }
+    int compressedLength = mIn.readInt();
+    mIn.readInt();
+    if (mCompressed.length < compressedLength) {
+      mCompressed = new byte[compressedLength];
+    }
+    if (mBlock.length < length) {
+      mBlock = new byte[length];
+    }
+    mIn.readFully(mCompressed, 0, compressedLength);
+    mInflater.reset();
+    mInflater.setInput(mCompressed, 0, compressedLength);
+    try {
+      if (mInflater.inflate(mBlock, 0, length) != length || !mInflater.finished()) {
+        throw new IOException("Corrupt block in " + mFile);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block in " + mFile + ": " + e.getMessage());
+    }
+    mBlockOffset = mNextBlockOffset;
+    mNextBlockOffset += 12 + compressedLength;
+    mBlockLength = length;
+    mBlockPosition = 0;
+    mInSentence = false;
+    mStringCount = 0;
+    return true;
+  }
+
+  /**
+   * Reads a string of the current block, its bytes the first time and its number afterwards.
+   *
+   * @param value
+   *          the value read for the string
+   * @param reserved
+   *          number of values before the first one of a string, the first of them for new strings
+   */
+  private String readString(int value, int reserved) {
+    if (value != reserved) {
+      return mStrings[value - reserved - 1];
+    }
+    int length = readVarint();
+    String string = new String(mBlock, mBlockPosition, length, BinaryAnnotationWriter.UTF8);
+    mBlockPosition += length;
+    if (mStringCount == mStrings.length) {
+      mStrings = Arrays.copyOf(mStrings, 2 * mStrings.length);
+    }
+    mStrings[mStringCount++] = string;
+    return string;
+  }
+
+  /**
+   * Skips the mentions of the current sentence, keeping the strings they bring in.
+   */
+  private void skipSentence() {
+    int text;
+    while ((text = readVarint()) != 0) {
+      readString(text, 1);
+      readVarint();
+      readVarint();
+      mBlockPosition += 4;
+      readString(readVarint(), 0);
+    }
+  }
+
+  /**
+   * Opens the index of the file.
+   */
+  private void openIndex() throws IOException {
+    File indexFile = new File(mFile.getPath() + BinaryAnnotationWriter.INDEX_SUFFIX);
+    mIndex = new RandomAccessFile(indexFile, "r");
+    if (mIndex.length() < 8 || mIndex.readInt() != BinaryAnnotationWriter.INDEX_MAGIC) {
+      mIndex.close();
+      mIndex = null;
+      throw new IOException("Not a binary annotation index: " + indexFile);
+    }
+    mIndex.seek(mIndex.length() - 4);
+    mIndexSize = mIndex.readInt();
+    int keptCount = (mIndexSize + BinaryAnnotationWriter.INDEX_INTERVAL - 1)
+            / BinaryAnnotationWriter.INDEX_INTERVAL;
+    mIndexTable = mIndex.length() - 4 - 8L * keptCount;
+  }
+
+  /**
+   * Moves the index file to an entry whose position is kept, given by its number among them.
+   */
+  private void seekIndexEntry(int kept) throws IOException {
+    mIndex.seek(mIndexTable + 8L * kept);
+    mIndex.seek(mIndex.readLong());
+  }
+
+  /**
+   * Reads the identifier of an index entry, leaving the input at the offset of its block. The
+   * UTF-8 bytes of the identifier are left in {@link #mIndexBytes}.
+   *
+   * @param previous
+   *          UTF-8 bytes of the identifier of the entry before
+   */
+  private String readIndexIdentifier(DataInput in, byte[] previous) throws IOException {
+    int shared = (int) readVarint(in);
+    int length = shared + (int) readVarint(in);
+    if (shared > previous.length) {
+      throw new IOException("Corrupt index of " + mFile);
+    }
+    mIndexBytes = Arrays.copyOf(previous, length);
+    in.readFully(mIndexBytes, shared, length - shared);
+    return new String(mIndexBytes, BinaryAnnotationWriter.UTF8);
+  }
+
+  /**
+   * Reads an unsigned varint from the index.
+   */
+  private static long readVarint(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Reads an unsigned varint from the current block.
+   */
+  private int readVarint() {
+    int value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = mBlock[mBlockPosition++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Reads an int, high byte first, from the current block.
+   */
+  private int readInt() {
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      value = (value << 8) | (mBlock[mBlockPosition++] & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Maps an unsigned int written as zigzag back to a signed one.
+   */
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
@@ -0,0 +1,572 @@
+package ner.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * The BinaryAnnotationWriter class writes gene mentions in a compact binary format, the binary
+ * counterpart of the <code>identifier|begin end|text</code> lines of the annotation printer which
+ * also keeps the confidence and the source of each mention. The file starts with the int
+ * {@link #MAGIC} and is followed by blocks of about the block size, each of them
+ * <ul>
+ * <li>the int length of the block before and after compression and the int number of mentions,</li>
+ * <li>and the sentences of the block compressed with {@link Deflater}.</li>
+ * </ul>
+ * A sentence is its identifier followed by its mentions and a 0. A mention is its text, its begin
+ * as the difference to the begin of the previous mention in the sentence and its inclusive end as
+ * the difference to the end its text predicts, both as zigzag varints, its confidence as a float
+ * and its source. Offsets leave out the spaces like the text format. The first time a string
+ * occurs in a block it is written as a 0, or a 1 for a text, followed by its UTF-8 length and
+ * bytes, and afterwards as the number of strings of the block before it plus one, or plus two for
+ * a text. The mentions of consecutive calls with the same identifier form one sentence, and blocks
+ * only end between sentences.
+ * <p>
+ * The sidecar index, the file name followed by {@link #INDEX_SUFFIX}, lists the offset of the block
+ * of each sentence by identifier. It starts with the int {@link #INDEX_MAGIC}, followed by the
+ * entries sorted by identifier and offset. An entry is the number of leading UTF-8 bytes its
+ * identifier shares with the one of the entry before, the number of the remaining bytes, the
+ * remaining bytes and the offset, all but the bytes as varints. Every {@link #INDEX_INTERVAL}th
+ * entry shares no bytes, and the positions of these entries in the index follow the entries as
+ * longs, followed by the int number of entries. The entries are sorted with an
+ * {@link ExternalSorter} when the file is closed.
+ * <p>
+ * {@link #flush(boolean)} ends the current block and writes it to the file, {@link #sync()} also
+ * syncs the file to disk. A file whose writer did not close it, e.g. after a crash, can be
+ * continued from a synced length with {@link #append(File, long, int, File)}, which reads the
+ * blocks before that length to rebuild the entries of the index.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class BinaryAnnotationWriter {
+
+  /**
+   * First int of a binary annotation file.
+   */
+  public static final int MAGIC = 0x474D4231;
+
+  /**
+   * First int of an index file.
+   */
+  public static final int INDEX_MAGIC = 0x474D4931;
+
+  /**
+   * Suffix of the index file name.
+   */
+  public static final String INDEX_SUFFIX = ".idx";
+
+  /**
+   * Number of index entries from one entry whose position is kept to the next.
+   */
+  public static final int INDEX_INTERVAL = 64;
+
+  /**
+   * Default number of bytes of a block before compression.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+  /**
+   * Number of index entries sorted in memory.
+   */
+  private static final int INDEX_BUFFER_SIZE = 200000;
+
+  /**
+   * Charset of the strings.
+   */
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Number of hexadecimal digits of the offset of an index entry.
+   */
+  private static final int OFFSET_DIGITS = 16;
+
+  /**
+   * Orders index entries, <code>identifier\toffset</code> with the offset in
+   * {@link #OFFSET_DIGITS} hexadecimal digits, by identifier and offset.
+   */
+  private static final Comparator<String> INDEX_ORDER = new Comparator<String>() {
+    public int compare(String a, String b) {
+      int lengthA = a.length() - OFFSET_DIGITS - 1;
+      int lengthB = b.length() - OFFSET_DIGITS - 1;
+      int length = Math.min(lengthA, lengthB);
+      for (int i = 0; i < length; i++) {
+        if (a.charAt(i) != b.charAt(i)) {
+          return a.charAt(i) - b.charAt(i);
+        }
+      }
+      if (lengthA != lengthB) {
+        return lengthA - lengthB;
+      }
+      // offsets of the same number of digits compare like their text
+      for (int i = length + 1; i < a.length(); i++) {
+        if (a.charAt(i) != b.charAt(i)) {
+          return a.charAt(i) - b.charAt(i);
+        }
+      }
+      return 0;
+    }
+  };
+
+  /**
+   * The binary annotation file.
+   */
+  private File mFile;
+
+  /**
+   * Stream of the file, synced by {@link #sync()}.
+   */
+  private FileOutputStream mFileOut;
+
+  /**
+   * Output stream of the file.
+   */
+  private DataOutputStream mOut;
+
+  /**
+   * Offset of the next block in the file.
+   */
+  private long mPosition;
+
+  /**
+   * Number of bytes of a block before compression.
+   */
+  private int mBlockSize;
+
+  /**
+   * The current block.
+   */
+  private byte[] mBlock = new byte[1 << 12];
+
+  /**
+   * Number of bytes of the current block.
+   */
+  private int mBlockLength;
+
+  /**
+   * Number of each string written in the current block, in order of their first occurrence.
+   */
+  private Map<String, Integer> mStringNumbers = new HashMap<String, Integer>();
+
+  /**
+   * Number of mentions in the current block.
+   */
+  private int mMentionCount;
+
+  /**
+   * Identifier of the current sentence, null if the current block has no open sentence.
+   */
+  private String mIdentifier;
+
+  /**
+   * Begin of the previous mention in the current sentence.
+   */
+  private int mPreviousBegin;
+
+  /**
+   * Compressor of the blocks.
+   */
+  private Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+
+  /**
+   * Buffer of the compressed blocks.
+   */
+  private byte[] mCompressed = new byte[1 << 12];
+
+  /**
+   * Entries of the index, sorted when the file is closed.
+   */
+  private ExternalSorter mIndex;
+
+  /**
+   * Creates a file.
+   *
+   * @param file
+   *          the binary annotation file
+   * @param blockSize
+   *          number of bytes of a block before compression
+   * @param sortDirectory
+   *          directory of the temporary files for sorting the index, null for the default
+   *          temporary directory
+   * @throws IOException
+   *           if the file can not be created
+   */
+  public BinaryAnnotationWriter(File file, int blockSize, File sortDirectory) throws IOException {
+    this(file, blockSize, sortDirectory, false);
+    mOut.writeInt(MAGIC);
+    mPosition = 4;
+  }
+
+  /**
+   * Opens a file for writing.
+   *
+   * @param append
+   *          whether the blocks are appended to the file
+   */
+  private BinaryAnnotationWriter(File file, int blockSize, File sortDirectory, boolean append)
+          throws IOException {
+    mFile = file;
+    mBlockSize = Math.max(1, blockSize);
+    mIndex = new ExternalSorter(INDEX_ORDER, INDEX_BUFFER_SIZE, sortDirectory);
+    mFileOut = new FileOutputStream(file, append);
+    mOut = new DataOutputStream(new BufferedOutputStream(mFileOut, 1 << 16));
+  }
+
+  /**
+   * Continues a file which has been synced, dropping what was written after the given length.
+   *
+   * @param file
+   *          the binary annotation file
+   * @param length
+   *          length of the file as returned by {@link #sync()}, 0 to create the file anew
+   * @param blockSize
+   *          number of bytes of a block before compression
+   * @param sortDirectory
+   *          directory of the temporary files for sorting the index, null for the default
+   *          temporary directory
+   * @return the writer, positioned at the given length
+   * @throws IOException
+   *           if the file is shorter than the length or its blocks can not be read
+   */
+  public static BinaryAnnotationWriter append(File file, long length, int blockSize,
+          File sortDirectory) throws IOException {
+    if (length == 0) {
+      return new BinaryAnnotationWriter(file, blockSize, sortDirectory);
+    }
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    try {
+      if (truncated.length() < length) {
+        throw new IOException("Binary annotation file " + file + " is shorter than " + length);
+      }
+      truncated.setLength(length);
+    } finally {
+      truncated.close();
+    }
+
+    BinaryAnnotationWriter writer = new BinaryAnnotationWriter(file, blockSize, sortDirectory,
+            true);
+    writer.mPosition = length;
+    try {
+      // each sentence of a block gives an entry, duplicates are dropped when the index is written
+      BinaryAnnotationReader reader = new BinaryAnnotationReader(file);
+      try {
+        String previousEntry = null;
+        while (reader.next()) {
+          String entry = reader.getIdentifier() + '\t' + toHex(reader.getBlockOffset());
+          if (!entry.equals(previousEntry)) {
+            writer.mIndex.add(entry);
+            previousEntry = entry;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      writer.mOut.close();
+      writer.mIndex.close();
+      writer.mDeflater.end();
+      throw e;
+    }
+    return writer;
+  }
+
+  /**
+   * Adds a mention.
+   *
+   * @param identifier
+   *          identifier of the sentence
+   * @param begin
+   *          begin of the mention, with the spaces left out
+   * @param end
+   *          inclusive end of the mention, with the spaces left out
+   * @param text
+   *          text of the mention
+   * @param source
+   *          source of the mention, null if unknown
+   * @param confidence
+   *          confidence of the mention
+   * @throws IOException
+   *           if a block can not be written
+   */
+  public void add(String identifier, int begin, int end, String text, String source,
+          float confidence) throws IOException {
+    if (mIdentifier == null || !mIdentifier.equals(identifier)) {
+      endSentence();
+      if (mBlockLength >= mBlockSize) {
+        writeBlock();
+      }
+      writeString(identifier, 0);
+      mIndex.add(identifier + '\t' + toHex(mPosition));
+      mIdentifier = identifier;
+      mPreviousBegin = 0;
+    }
+    writeString(text, 1);
+    writeVarint(zigzag(begin - mPreviousBegin));
+    writeVarint(zigzag(end - predictEnd(begin, text)));
+    writeInt(Float.floatToIntBits(confidence));
+    writeString(source == null ? "" : source, 0);
+    mPreviousBegin = begin;
+    mMentionCount++;
+  }
+
+  /**
+   * Ends the current block and writes it to the file. The mentions of the next call start a new
+   * sentence, also if it has the identifier of the last one.
+   *
+   * @param sync
+   *          whether the file is also synced to disk
+   * @return length of the file
+   * @throws IOException
+   *           if the file can not be written or synced
+   */
+  public long flush(boolean sync) throws IOException {
+    endSentence();
+    if (mBlockLength > 0) {
+      writeBlock();
+    }
+    mOut.flush();
+    if (sync) {
+      mFileOut.getFD().sync();
+    }
+    return mPosition;
+  }
+
+  /**
+   * Ends the current block and syncs the file to disk, see {@link #flush(boolean)}.
+   *
+   * @return length of the file
+   * @throws IOException
+   *           if the file can not be written or synced
+   */
+  public long sync() throws IOException {
+    return flush(true);
+  }
+
+  /**
+   * Writes the last block and the index and closes the file.
+   *
+   * @throws IOException
+   *           if the file or the index can not be written
+   */
+  public void close() throws IOException {
+    try {
+      endSentence();
+      if (mBlockLength > 0) {
+        writeBlock();
+      }
+      mOut.close();
+      writeIndex();
+    } finally {
+      mOut.close();
+      mIndex.close();
+      mDeflater.end();
+    }
+  }
+
+  /**
+   * Ends the current sentence.
+   */
+  private void endSentence() {
+    if (mIdentifier != null) {
+      writeVarint(0);
+      mIdentifier = null;
+    }
+  }
+
+  /**
+   * Gets the inclusive end of a mention the text of the mention predicts, the end of a mention
+   * inside one sentence.
+   *
+   * @param begin
+   *          begin of the mention, with the spaces left out
+   * @param text
+   *          text of the mention
+   * @return the predicted end
+   */
+  static int predictEnd(int begin, String text) {
+    int length = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) != ' ') {
+        length++;
+      }
+    }
+    return begin + length - 1;
+  }
+
+  /**
+   * Appends a string to the block, its bytes the first time and its number afterwards.
+   *
+   * @param reserved
+   *          number of values before the first one of a string, the first of them for new strings
+   */
+  private void writeString(String string, int reserved) {
+    Integer number = mStringNumbers.get(string);
+    if (number != null) {
+      writeVarint(number + reserved + 1);
+      return;
+    }
+    mStringNumbers.put(string, mStringNumbers.size());
+    byte[] bytes = string.getBytes(UTF8);
+    writeVarint(reserved);
+    writeVarint(bytes.length);
+    writeBytes(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Compresses and writes the current block.
+   */
+  private void writeBlock() throws IOException {
+    mDeflater.reset();
+    mDeflater.setInput(mBlock, 0, mBlockLength);
+    mDeflater.finish();
+    int compressedLength = 0;
+    while (!mDeflater.finished()) {
+      if (compressedLength == mCompressed.length) {
+        mCompressed = Arrays.copyOf(mCompressed, 2 * mCompressed.length);
+      }
+      compressedLength += mDeflater.deflate(mCompressed, compressedLength, mCompressed.length
+              - compressedLength);
+    }
+    mOut.writeInt(mBlockLength);
+    mOut.writeInt(compressedLength);
+    mOut.writeInt(mMentionCount);
+    mOut.write(mCompressed, 0, compressedLength);
+    mPosition += 12 + compressedLength;
+
+    mBlockLength = 0;
+    mStringNumbers.clear();
+    mMentionCount = 0;
+  }
+
+  /**
+   * Sorts the entries of the index and writes them to the index file.
+   */
+  private void writeIndex() throws IOException {
+    File indexFile = new File(mFile.getPath() + INDEX_SUFFIX);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            indexFile), 1 << 16));
+    List<Long> positions = new ArrayList<Long>();
+    int entryCount = 0;
+    try {
+      out.writeInt(INDEX_MAGIC);
+      long position = 4;
+      byte[] previous = new byte[0];
+      String previousEntry = null;
+      String entry;
+      while ((entry = mIndex.readLine()) != null) {
+        // sentences of one identifier in one block need one entry
+        if (entry.equals(previousEntry)) {
+          continue;
+        }
+        previousEntry = entry;
+        int tab = entry.length() - OFFSET_DIGITS - 1;
+        byte[] identifier = entry.substring(0, tab).getBytes(UTF8);
+        int shared = 0;
+        if (entryCount % INDEX_INTERVAL == 0) {
+          positions.add(position);
+        } else {
+          int length = Math.min(previous.length, identifier.length);
+          while (shared < length && previous[shared] == identifier[shared]) {
+            shared++;
+          }
+        }
+        position += writeIndexVarint(out, shared);
+        position += writeIndexVarint(out, identifier.length - shared);
+        out.write(identifier, shared, identifier.length - shared);
+        position += identifier.length - shared;
+        position += writeIndexVarint(out, Long.parseLong(entry.substring(tab + 1), 16));
+        previous = identifier;
+        entryCount++;
+      }
+      for (long kept : positions) {
+        out.writeLong(kept);
+      }
+      out.writeInt(entryCount);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes an unsigned varint to the index.
+   *
+   * @return number of bytes written
+   */
+  private static int writeIndexVarint(DataOutputStream out, long value) throws IOException {
+    int length = 1;
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+      length++;
+    }
+    out.writeByte((int) value);
+    return length;
+  }
+
+  /**
+   * Writes an offset in {@link #OFFSET_DIGITS} hexadecimal digits.
+   */
+  private static String toHex(long offset) {
+    String digits = Long.toHexString(offset);
+    return "0000000000000000".substring(digits.length()) + digits;
+  }
+
+  /**
+   * Maps a signed int to an unsigned one, small magnitudes to small values.
+   */
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Appends an unsigned varint to the block.
+   */
+  private void writeVarint(int value) {
+    ensureCapacity(5);
+    while ((value & ~0x7F) != 0) {
+      mBlock[mBlockLength++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    mBlock[mBlockLength++] = (byte) value;
+  }
+
+  /**
+   * Appends the bytes of an int, high byte first, to the block.
+   */
+  private void writeInt(int value) {
+    ensureCapacity(4);
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      mBlock[mBlockLength++] = (byte) (value >>> shift);
+    }
+  }
+
+  /**
+   * Appends bytes to the block.
+   */
+  private void writeBytes(byte[] bytes, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(bytes, offset, mBlock, mBlockLength, length);
+    mBlockLength += length;
+  }
+
+  /**
+   * Grows the block to hold a number of more bytes.
+   */
+  private void ensureCapacity(int length) {
+    if (mBlockLength + length > mBlock.length) {
+      mBlock = Arrays.copyOf(mBlock, Math.max(mBlockLength + length,
+              2 * mBlock.length));
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package ner.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The CheckpointFile class persists the state of a collection processing component, so that a run
+ * which died can be resumed. A checkpoint is written to a temporary file first and then renamed
+ * over the previous one, so a crash while writing leaves the previous checkpoint intact.
+ * <p>
+ * The collection reader and the CAS consumers keep separate checkpoint files. They are kept
+ * consistent through the line index of the input file: a consumer persists the number of input
+ * lines it has completely processed, and the reader only persists positions which the consumers
+ * have already passed. After a restart, the consumers skip the sentences they have already
+ * processed.
+ * <p>
+ * State which does not fit into properties, e.g. bit sets, is persisted in data files next to the
+ * checkpoint file with {@link #storeData(String, byte[])}. They are replaced the same way. A
+ * component which writes both stores the data first and includes the line in it, so after a crash
+ * between the two the data is the newer state.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class CheckpointFile {
+
+  /**
+   * Key of the number of completely processed input lines.
+   */
+  public static final String KEY_LINE = "line";
+
+  /**
+   * The checkpoint file.
+   */
+  private File mFile;
+
+  /**
+   * Temporary file the next checkpoint is written to.
+   */
+  private File mTempFile;
+
+  /**
+   * Creates a checkpoint file.
+   *
+   * @param file
+   *          path of the checkpoint file
+   */
+  public CheckpointFile(File file) {
+    mFile = file;
+    mTempFile = new File(file.getPath() + ".tmp");
+  }
+
+  /**
+   * Loads the last checkpoint.
+   *
+   * @return the persisted state, or null if no checkpoint has been written yet
+   * @throws IOException
+   *           if the checkpoint file can not be read
+   */
+  public Properties load() throws IOException {
+    if (!mFile.exists()) {
+      return null;
+    }
+    Properties state = new Properties();
+    InputStream in = new FileInputStream(mFile);
+    try {
+      state.load(in);
+    } finally {
+      in.close();
+    }
+    return state;
+  }
+
+  /**
+   * Persists a checkpoint durably, replacing the previous one.
+   *
+   * @param state
+   *          the state to persist
+   * @throws IOException
+   *           if the checkpoint file can not be written
+   */
+  public void store(Properties state) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    state.store(bytes, null);
+    replace(mFile, mTempFile, bytes.toByteArray());
+  }
+
+  /**
+   * Loads the last data stored with a suffix.
+   *
+   * @param suffix
+   *          suffix of the data file, appended to the checkpoint file name
+   * @return the data, or null if no data has been stored yet
+   * @throws IOException
+   *           if the data file can not be read
+   */
+  public byte[] loadData(String suffix) throws IOException {
+    File file = getDataFile(suffix);
+    if (!file.exists()) {
+      return null;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Persists data durably next to the checkpoint file, replacing the data stored before with the
+   * same suffix.
+   *
+   * @param suffix
+   *          suffix of the data file, appended to the checkpoint file name
+   * @param data
+   *          the data to persist
+   * @throws IOException
+   *           if the data file can not be written
+   */
+  public void storeData(String suffix, byte[] data) throws IOException {
+    File file = getDataFile(suffix);
+    replace(file, new File(file.getPath() + ".tmp"), data);
+  }
+
+  /**
+   * Gets the file of the data stored with a suffix.
+   *
+   * @param suffix
+   *          suffix of the data file, appended to the checkpoint file name
+   * @return the data file
+   */
+  public File getDataFile(String suffix) {
+    return new File(mFile.getPath() + suffix);
+  }
+
+  /**
+   * Writes a file through a temporary file which is synced and renamed over it.
+   */
+  private static void replace(File file, File tempFile, byte[] data) throws IOException {
+    FileOutputStream out = new FileOutputStream(tempFile);
+    try {
+      out.write(data);
+      out.flush();
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+
+    // renaming does not replace an existing file on every platform
+    if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+      throw new IOException("Can not replace checkpoint file " + file.getPath());
+    }
+  }
+
+  /**
+   * Reads a number from a persisted state.
+   *
+   * @param state
+   *          the persisted state
+   * @param key
+   *          key of the number
+   * @return the number, or 0 if the state does not contain the key
+   */
+  public static long getLong(Properties state, String key) {
+    String value = state.getProperty(key);
+    return value == null ? 0 : Long.parseLong(value.trim());
+  }
+}
@@ -0,0 +1,77 @@
+package ner.util;
+
+import java.util.Iterator;
+
+import com.aliasi.chunk.Chunk;
+import com.aliasi.chunk.ConfidenceChunker;
+
+/**
+ * The ChunkerGeneRecognizer class recognizes gene mentions with the n best chunks of a LingPipe
+ * ConfidenceChunker. Chunks below a confidence threshold are skipped; as the chunker returns chunks
+ * in decreasing order of confidence, decoding stops at the first of them.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class ChunkerGeneRecognizer implements GeneRecognizer {
+
+  /**
+   * The chunker, which may be shared with other recognizers.
+   */
+  private ConfidenceChunker mChunker;
+
+  /**
+   * Maximal number of chunks per sentence.
+   */
+  private int mBestChunkNumber;
+
+  /**
+   * Confidence below which chunks are skipped.
+   */
+  private float mConfidenceThreshold;
+
+  /**
+   * Reusable buffer for the characters of a sentence.
+   */
+  private char[] mChars = new char[256];
+
+  /**
+   * Creates a recognizer.
+   *
+   * @param chunker
+   *          the chunker
+   * @param bestChunkNumber
+   *          maximal number of chunks per sentence
+   * @param confidenceThreshold
+   *          confidence below which chunks are skipped
+   */
+  public ChunkerGeneRecognizer(ConfidenceChunker chunker, int bestChunkNumber,
+          float confidenceThreshold) {
+    mChunker = chunker;
+    mBestChunkNumber = bestChunkNumber;
+    mConfidenceThreshold = confidenceThreshold;
+  }
+
+  /**
+   * @see ner.util.GeneRecognizer#recognize(String, int, int, SpanSink)
+   */
+  public void recognize(String text, int begin, int end, SpanSink sink) {
+    int length = end - begin;
+    if (mChars.length < length) {
+      mChars = new char[Math.max(length, 2 * mChars.length)];
+    }
+    text.getChars(begin, end, mChars, 0);
+
+    Iterator<Chunk> it = mChunker.nBestChunks(mChars, 0, length, mBestChunkNumber);
+    while (it.hasNext()) {
+      Chunk chunk = it.next();
+      float confidence = (float) Math.pow(2.0, chunk.score());
+
+      // chunks come in decreasing order of confidence
+      if (confidence < mConfidenceThreshold) {
+        break;
+      }
+      sink.add(chunk.start(), chunk.end(), confidence);
+    }
+  }
+}
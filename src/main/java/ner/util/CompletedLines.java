@@ -0,0 +1,77 @@
+package ner.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The CompletedLines class tracks the input lines a CAS consumer has completely processed while
+ * CASes arrive out of order, as they do with several processing threads. Each CAS completes a
+ * range of lines, from the first line read for its first sentence up to the line of its last
+ * sentence, and the ranges of all CASes tile the input. The completed line is the end of the
+ * longest completed prefix of the input, the low-water mark a checkpoint can persist; ranges
+ * beyond it are kept until the ranges before them are completed.
+ * <p>
+ * A checkpoint which persists state accumulated from all processed CASes, such as counts or
+ * output, is only consistent with the completed line while no range beyond it is completed, see
+ * {@link #isContiguous()}.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class CompletedLines {
+
+  /**
+   * Number of lines of the completed prefix of the input.
+   */
+  private int mLine;
+
+  /**
+   * Ends of the completed ranges beyond the prefix, by their first lines.
+   */
+  private TreeMap<Integer, Integer> mPending = new TreeMap<Integer, Integer>();
+
+  /**
+   * Creates a tracker whose first lines are already completed, e.g. before a resumed run.
+   *
+   * @param line
+   *          number of completed lines
+   */
+  public CompletedLines(int line) {
+    mLine = line;
+  }
+
+  /**
+   * Marks a range of lines as completed.
+   *
+   * @param begin
+   *          index of the first line of the range
+   * @param end
+   *          index after the last line of the range
+   */
+  public synchronized void complete(int begin, int end) {
+    if (begin > mLine) {
+      Integer pendingEnd = mPending.get(begin);
+      mPending.put(begin, pendingEnd == null ? end : Math.max(end, pendingEnd));
+      return;
+    }
+    mLine = Math.max(mLine, end);
+    while (!mPending.isEmpty() && mPending.firstKey() <= mLine) {
+      Map.Entry<Integer, Integer> range = mPending.pollFirstEntry();
+      mLine = Math.max(mLine, range.getValue());
+    }
+  }
+
+  /**
+   * @return number of lines of the completed prefix of the input
+   */
+  public synchronized int getLine() {
+    return mLine;
+  }
+
+  /**
+   * @return true if no lines beyond the completed prefix are completed
+   */
+  public synchronized boolean isContiguous() {
+    return mPending.isEmpty();
+  }
+}
@@ -0,0 +1,98 @@
+package ner.util;
+
+import ner.Resource.MappedDictionary;
+
+/**
+ * The DictionaryGeneRecognizer class recognizes the names of a gene dictionary. Names only match
+ * whole tokens: a match may not begin or end between two letters or digits. At each position the
+ * longest name is taken and the search continues after it, so matches do not overlap. A run of
+ * whitespace in the text matches the single space which separates the words of a name.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class DictionaryGeneRecognizer implements GeneRecognizer {
+
+  /**
+   * The dictionary, which may be shared with other recognizers.
+   */
+  private MappedDictionary mDictionary;
+
+  /**
+   * Confidence of the matches.
+   */
+  private float mConfidence;
+
+  /**
+   * Creates a recognizer.
+   *
+   * @param dictionary
+   *          the dictionary
+   * @param confidence
+   *          confidence of the matches
+   */
+  public DictionaryGeneRecognizer(MappedDictionary dictionary, float confidence) {
+    mDictionary = dictionary;
+    mConfidence = confidence;
+  }
+
+  /**
+   * @see ner.util.GeneRecognizer#recognize(String, int, int, SpanSink)
+   */
+  public void recognize(String text, int begin, int end, SpanSink sink) {
+    int i = begin;
+    while (i < end) {
+      if (Character.isWhitespace(text.charAt(i)) || !isBoundary(text, i, begin, end)) {
+        i++;
+        continue;
+      }
+      int match = longestMatch(text, i, begin, end);
+      if (match > i) {
+        sink.add(i - begin, match - begin, mConfidence);
+        i = match;
+      } else {
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Finds the longest name starting at a position.
+   *
+   * @return end of the name, or the position if no name starts there
+   */
+  private int longestMatch(String text, int start, int begin, int end) {
+    MappedDictionary dictionary = mDictionary;
+    int node = dictionary.getRoot();
+    int match = start;
+    int i = start;
+    while (i < end) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        // names do not end with a space, so only the words after it can match
+        node = dictionary.getChild(node, ' ');
+        do {
+          i++;
+        } while (i < end && Character.isWhitespace(text.charAt(i)));
+      } else {
+        node = dictionary.getChild(node, c);
+        i++;
+        if (node >= 0 && dictionary.isName(node) && isBoundary(text, i, begin, end)) {
+          match = i;
+        }
+      }
+      if (node < 0) {
+        break;
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Tests whether a position is between two tokens, that is not between two letters or digits.
+   */
+  private static boolean isBoundary(String text, int index, int begin, int end) {
+    return index == begin || index == end || !Character.isLetterOrDigit(text.charAt(index - 1))
+            || !Character.isLetterOrDigit(text.charAt(index));
+  }
+}
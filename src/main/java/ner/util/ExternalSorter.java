@@ -0,0 +1,409 @@
+package ner.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The ExternalSorter class sorts more lines of text than fit into memory. Lines are collected in a
+ * buffer of a fixed number of lines; a full buffer is sorted and written to a temporary file as a
+ * sorted run. When all lines are added, the runs are merged, at most {@link #MAX_FAN_IN} at a time
+ * so few files are open, and the sorted lines are read back one by one like from a reader. Lines
+ * which fit into one buffer are never written to disk. Usage:
+ *
+ * <pre>
+ * java ner.util.ExternalSorter &lt;input&gt; &lt;output&gt;
+ *         [&lt;buffer lines&gt; [&lt;encoding&gt;]]
+ * </pre>
+ *
+ * sorts an output file of the annotation printer in {@link #RECORD_ORDER}, the order the
+ * evaluator merges true answers and system outputs in. The files are read and written in the
+ * given encoding, UTF-8 if not given like the printer's default.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class ExternalSorter {
+
+  /**
+   * Orders answer records, <code>identifier|begin end|text</code>, by identifier and then by the
+   * whole record, so the records of one sentence are neighbors and sentences are in the order of
+   * their identifiers.
+   */
+  public static final Comparator<String> RECORD_ORDER = new Comparator<String>() {
+    public int compare(String a, String b) {
+      int order = compareIdentifiers(a, b);
+      return order != 0 ? order : a.compareTo(b);
+    }
+  };
+
+  /**
+   * Largest number of runs merged at once.
+   */
+  public static final int MAX_FAN_IN = 64;
+
+  /**
+   * Charset of the runs.
+   */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Size of the buffer of each file.
+   */
+  private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Order of the lines.
+   */
+  private Comparator<String> mOrder;
+
+  /**
+   * Number of lines sorted in memory.
+   */
+  private int mBufferSize;
+
+  /**
+   * Directory of the runs, null for the default temporary directory.
+   */
+  private File mDirectory;
+
+  /**
+   * Lines not yet written to a run.
+   */
+  private List<String> mBuffer = new ArrayList<String>();
+
+  /**
+   * Files of the sorted runs.
+   */
+  private List<File> mRuns = new ArrayList<File>();
+
+  /**
+   * Runs being merged, by their next line, null before the lines are sorted.
+   */
+  private PriorityQueue<Run> mMerge;
+
+  /**
+   * Position of the next line in the buffer, if all lines fit into it.
+   */
+  private int mBufferIndex;
+
+  /**
+   * Whether the lines are sorted and being read.
+   */
+  private boolean mSorted;
+
+  /**
+   * A sorted run being read.
+   */
+  private static class Run {
+
+    /**
+     * Reader of the run.
+     */
+    final BufferedReader mReader;
+
+    /**
+     * The next line of the run, null at its end.
+     */
+    String mLine;
+
+    Run(File file) throws IOException {
+      mReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8),
+              FILE_BUFFER_SIZE);
+      mLine = mReader.readLine();
+    }
+  }
+
+  /**
+   * Creates a sorter.
+   *
+   * @param order
+   *          order of the lines
+   * @param bufferSize
+   *          number of lines sorted in memory
+   * @param directory
+   *          directory of the temporary files, null for the default temporary directory
+   */
+  public ExternalSorter(Comparator<String> order, int bufferSize, File directory) {
+    mOrder = order;
+    mBufferSize = Math.max(1, bufferSize);
+    mDirectory = directory;
+  }
+
+  /**
+   * Sorts an output file of the annotation printer.
+   *
+   * @param args
+   *          the input file, the output file, optionally the number of lines sorted in memory and
+   *          optionally the character encoding of the files
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: java ner.util.ExternalSorter <input> <output> [<buffer lines> "
+              + "[<encoding>]]");
+      System.exit(1);
+    }
+    int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+    Charset charset = args.length > 3 ? Charset.forName(args[3]) : UTF8;
+    long start = System.currentTimeMillis();
+    ExternalSorter sorter = new ExternalSorter(RECORD_ORDER, bufferSize, null);
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]),
+            charset), FILE_BUFFER_SIZE);
+    BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]),
+            charset), FILE_BUFFER_SIZE);
+    int lineCount = 0;
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        sorter.add(line);
+        lineCount++;
+      }
+      while ((line = sorter.readLine()) != null) {
+        bw.write(line);
+        bw.newLine();
+      }
+    } finally {
+      sorter.close();
+      br.close();
+      bw.close();
+    }
+    System.out.println("Sorted " + lineCount + " lines in " + (System.currentTimeMillis() - start)
+            + " ms");
+  }
+
+  /**
+   * Compares the identifiers of two answer records, the text before the first <code>|</code>.
+   *
+   * @return a negative number, zero or a positive number if the identifier of the first record is
+   *         less than, equal to or greater than the identifier of the second
+   */
+  public static int compareIdentifiers(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    for (int i = 0; i < length; i++) {
+      char ca = a.charAt(i);
+      char cb = b.charAt(i);
+      if (ca == '|' || cb == '|') {
+        return ca == cb ? 0 : (ca == '|' ? -1 : 1);
+      }
+      if (ca != cb) {
+        return ca - cb;
+      }
+    }
+    // one record is a prefix of the other, the identifier ends with the shorter one or at a '|'
+    boolean endA = a.length() == length || a.charAt(length) == '|';
+    boolean endB = b.length() == length || b.charAt(length) == '|';
+    return endA == endB ? 0 : (endA ? -1 : 1);
+  }
+
+  /**
+   * Adds a line.
+   *
+   * @param line
+   *          the line
+   * @throws IOException
+   *           if a run can not be written
+   */
+  public void add(String line) throws IOException {
+    if (mSorted) {
+      throw new IllegalStateException("Lines are already sorted");
+    }
+    // a full buffer is only written when more lines follow, so one buffer of lines stays in memory
+    if (mBuffer.size() >= mBufferSize) {
+      mRuns.add(writeRun());
+    }
+    mBuffer.add(line);
+  }
+
+  /**
+   * Reads the next line in sorted order. The first call sorts the lines, and no lines can be added
+   * afterwards.
+   *
+   * @return the next line, or null if all lines have been read
+   * @throws IOException
+   *           if a run can not be read or written
+   */
+  public String readLine() throws IOException {
+    if (!mSorted) {
+      sort();
+    }
+    if (mMerge == null) {
+      return mBufferIndex < mBuffer.size() ? mBuffer.get(mBufferIndex++) : null;
+    }
+    Run run = mMerge.poll();
+    if (run == null) {
+      return null;
+    }
+    String line = run.mLine;
+    run.mLine = run.mReader.readLine();
+    if (run.mLine != null) {
+      mMerge.add(run);
+    } else {
+      run.mReader.close();
+    }
+    return line;
+  }
+
+  /**
+   * Closes the runs and deletes their files.
+   */
+  public void close() {
+    if (mMerge != null) {
+      for (Run run : mMerge) {
+        try {
+          run.mReader.close();
+        } catch (IOException e) {
+          // the file is deleted anyway
+        }
+      }
+      mMerge.clear();
+    }
+    for (File run : mRuns) {
+      run.delete();
+    }
+    mRuns.clear();
+    mBuffer.clear();
+  }
+
+  /**
+   * Sorts the lines and starts the merge of the runs.
+   */
+  private void sort() throws IOException {
+    mSorted = true;
+    if (mRuns.isEmpty()) {
+      Collections.sort(mBuffer, mOrder);
+      return;
+    }
+    if (!mBuffer.isEmpty()) {
+      mRuns.add(writeRun());
+    }
+    mBuffer = new ArrayList<String>();
+
+    // merge groups of runs into longer runs until all runs can be merged at once
+    while (mRuns.size() > MAX_FAN_IN) {
+      List<File> merged = new ArrayList<File>();
+      boolean complete = false;
+      try {
+        for (int i = 0; i < mRuns.size(); i += MAX_FAN_IN) {
+          List<File> group = mRuns.subList(i, Math.min(i + MAX_FAN_IN, mRuns.size()));
+          merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+        }
+        complete = true;
+      } finally {
+        // after a failed pass, close() deletes the runs merged so far with the others
+        if (complete) {
+          mRuns = merged;
+        } else {
+          mRuns.addAll(merged);
+        }
+      }
+    }
+    mMerge = openRuns(mRuns);
+  }
+
+  /**
+   * Opens runs for merging.
+   */
+  private PriorityQueue<Run> openRuns(List<File> files) throws IOException {
+    PriorityQueue<Run> merge = new PriorityQueue<Run>(Math.max(1, files.size()),
+            new Comparator<Run>() {
+              public int compare(Run a, Run b) {
+                return mOrder.compare(a.mLine, b.mLine);
+              }
+            });
+    for (File file : files) {
+      Run run = new Run(file);
+      if (run.mLine != null) {
+        merge.add(run);
+      } else {
+        run.mReader.close();
+      }
+    }
+    return merge;
+  }
+
+  /**
+   * Merges runs into one and deletes them. The merged run is deleted if the merge fails.
+   */
+  private File mergeRuns(List<File> files) throws IOException {
+    File file = createRunFile();
+    boolean complete = false;
+    try {
+      PriorityQueue<Run> merge = openRuns(files);
+      BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+              UTF8), FILE_BUFFER_SIZE);
+      try {
+        Run run;
+        while ((run = merge.poll()) != null) {
+          bw.write(run.mLine);
+          bw.newLine();
+          run.mLine = run.mReader.readLine();
+          if (run.mLine != null) {
+            merge.add(run);
+          } else {
+            run.mReader.close();
+          }
+        }
+      } finally {
+        for (Run run : merge) {
+          run.mReader.close();
+        }
+        bw.close();
+      }
+      complete = true;
+    } finally {
+      if (!complete) {
+        file.delete();
+      }
+    }
+    for (File merged : files) {
+      merged.delete();
+    }
+    return file;
+  }
+
+  /**
+   * Sorts the buffer and writes it to a new run, which is deleted if writing fails.
+   */
+  private File writeRun() throws IOException {
+    Collections.sort(mBuffer, mOrder);
+    File file = createRunFile();
+    boolean complete = false;
+    try {
+      BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+              UTF8), FILE_BUFFER_SIZE);
+      try {
+        for (String line : mBuffer) {
+          bw.write(line);
+          bw.newLine();
+        }
+      } finally {
+        bw.close();
+      }
+      complete = true;
+    } finally {
+      if (!complete) {
+        file.delete();
+      }
+    }
+    mBuffer.clear();
+    return file;
+  }
+
+  /**
+   * Creates a temporary file for a run, which the sorter deletes itself.
+   */
+  private File createRunFile() throws IOException {
+    return File.createTempFile("sort", ".run", mDirectory);
+  }
+}
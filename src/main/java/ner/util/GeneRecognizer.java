@@ -0,0 +1,26 @@
+package ner.util;
+
+/**
+ * The GeneRecognizer interface is implemented by the gene mention recognizers the annotators wrap.
+ * A recognizer writes the spans it finds into a {@link SpanSink}, which the annotator then turns
+ * into annotations. Recognizers keep reusable buffers and are not thread-safe.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public interface GeneRecognizer {
+
+  /**
+   * Recognizes the gene mentions of one sentence.
+   *
+   * @param text
+   *          text of the document
+   * @param begin
+   *          begin of the sentence in the document
+   * @param end
+   *          end of the sentence in the document
+   * @param sink
+   *          receives the spans, relative to the beginning of the sentence
+   */
+  public void recognize(String text, int begin, int end, SpanSink sink);
+}
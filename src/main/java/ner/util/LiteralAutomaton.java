@@ -0,0 +1,243 @@
+package ner.util;
+
+import java.util.Arrays;
+
+/**
+ * The LiteralAutomaton class is an Aho-Corasick automaton over a set of literal strings. It reads a
+ * text once, one character at a time, and after each character reports every literal which ends
+ * there. The transitions are kept in one open addressing table keyed by state and character, so
+ * large alphabets and hundreds of thousands of literals need no per-state arrays.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+class LiteralAutomaton {
+
+  /**
+   * Keys of the transition table: source state and character, 0 for empty slots.
+   */
+  private long[] mKeys;
+
+  /**
+   * Target states of the transition table.
+   */
+  private int[] mTargets;
+
+  /**
+   * Failure state of each state: the state of its longest proper suffix.
+   */
+  private int[] mFail;
+
+  /**
+   * Nearest state on the failure chain of each state which ends a literal, 0 if there is none.
+   */
+  private int[] mOutput;
+
+  /**
+   * First literal ending in each state, -1 if there is none.
+   */
+  private int[] mFirstLiteral;
+
+  /**
+   * Next literal ending in the same state as each literal, -1 if there is none.
+   */
+  private int[] mNextLiteral;
+
+  /**
+   * Length of each literal.
+   */
+  private int[] mLengths;
+
+  /**
+   * Number of states, including the initial state 0.
+   */
+  private int mStateCount;
+
+  /**
+   * Builds the automaton.
+   *
+   * @param literals
+   *          the literals, which must not be empty; a literal is reported by its index
+   */
+  LiteralAutomaton(String[] literals) {
+    int capacity = 1;
+    for (String literal : literals) {
+      capacity += literal.length();
+    }
+    int tableSize = 2;
+    while (tableSize < 2 * capacity) {
+      tableSize *= 2;
+    }
+    mKeys = new long[tableSize];
+    mTargets = new int[tableSize];
+    mFirstLiteral = new int[capacity];
+    Arrays.fill(mFirstLiteral, -1);
+    mNextLiteral = new int[literals.length];
+    mLengths = new int[literals.length];
+
+    // children of each state, kept until the failure states are computed
+    int[] firstChild = new int[capacity];
+    int[] nextSibling = new int[capacity];
+    char[] label = new char[capacity];
+    Arrays.fill(firstChild, -1);
+    mStateCount = 1;
+    for (int i = 0; i < literals.length; i++) {
+      String literal = literals[i];
+      int state = 0;
+      for (int j = 0; j < literal.length(); j++) {
+        char c = literal.charAt(j);
+        int target = next(state, c);
+        if (target < 0) {
+          target = mStateCount++;
+          put(state, c, target);
+          label[target] = c;
+          nextSibling[target] = firstChild[state];
+          firstChild[state] = target;
+        }
+        state = target;
+      }
+      mLengths[i] = literal.length();
+      mNextLiteral[i] = mFirstLiteral[state];
+      mFirstLiteral[state] = i;
+    }
+
+    // failure states in breadth first order, so shorter suffixes are done first
+    mFail = new int[mStateCount];
+    mOutput = new int[mStateCount];
+    int[] queue = new int[mStateCount];
+    int head = 0;
+    int tail = 0;
+    for (int child = firstChild[0]; child >= 0; child = nextSibling[child]) {
+      queue[tail++] = child;
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      for (int child = firstChild[state]; child >= 0; child = nextSibling[child]) {
+        queue[tail++] = child;
+        int fail = mFail[state];
+        int target = next(fail, label[child]);
+        while (target < 0 && fail != 0) {
+          fail = mFail[fail];
+          target = next(fail, label[child]);
+        }
+        mFail[child] = target < 0 ? 0 : target;
+        mOutput[child] = mFirstLiteral[mFail[child]] >= 0 ? mFail[child] : mOutput[mFail[child]];
+      }
+    }
+  }
+
+  /**
+   * Follows a character.
+   *
+   * @param state
+   *          the current state, 0 at the beginning of a text
+   * @param c
+   *          the next character of the text
+   * @return the state after the character
+   */
+  int step(int state, char c) {
+    while (true) {
+      int target = next(state, c);
+      if (target >= 0) {
+        return target;
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = mFail[state];
+    }
+  }
+
+  /**
+   * Gets the first state whose literals end at the current position.
+   *
+   * @return the state, or 0 if no literal ends here
+   */
+  int firstOutput(int state) {
+    return mFirstLiteral[state] >= 0 ? state : mOutput[state];
+  }
+
+  /**
+   * Gets the next state whose literals end at the same position as those of a state.
+   *
+   * @return the state, or 0 if there is none
+   */
+  int nextOutput(int state) {
+    return mOutput[state];
+  }
+
+  /**
+   * @return the first literal ending in a state, -1 if there is none
+   */
+  int firstLiteral(int state) {
+    return mFirstLiteral[state];
+  }
+
+  /**
+   * @return the next literal ending in the same state as a literal, -1 if there is none
+   */
+  int nextLiteral(int literal) {
+    return mNextLiteral[literal];
+  }
+
+  /**
+   * @return length of a literal
+   */
+  int length(int literal) {
+    return mLengths[literal];
+  }
+
+  /**
+   * @return number of states
+   */
+  int getStateCount() {
+    return mStateCount;
+  }
+
+  /**
+   * Looks up a transition.
+   *
+   * @return the target state, or -1 if there is no transition
+   */
+  private int next(int state, char c) {
+    long key = key(state, c);
+    int mask = mKeys.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+      if (mKeys[slot] == key) {
+        return mTargets[slot];
+      }
+      if (mKeys[slot] == 0) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Adds a transition.
+   */
+  private void put(int state, char c, int target) {
+    long key = key(state, c);
+    int mask = mKeys.length - 1;
+    int slot = hash(key) & mask;
+    while (mKeys[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    mKeys[slot] = key;
+    mTargets[slot] = target;
+  }
+
+  /**
+   * Gets the key of a transition, never 0.
+   */
+  private static long key(int state, char c) {
+    return ((long) (state + 1) << 16) | c;
+  }
+
+  /**
+   * Spreads the bits of a key.
+   */
+  private static int hash(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return (int) (key >>> 32);
+  }
+}
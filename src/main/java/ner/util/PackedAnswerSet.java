@@ -0,0 +1,439 @@
+package ner.util;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PackedAnswerSet class holds a set of answer records, <code>identifier|begin end|text</code>,
+ * in a few primitive arrays instead of one String per record. Each identifier is stored once in a
+ * pool and numbered; a record is stored as a long packing the number of its identifier with its
+ * offsets, kept in an open addressing table, and its text in a shared pool of bytes. A record is
+ * looked up by its identifier and offsets and its text is only compared when they match, so looking
+ * up a record creates no objects. Records whose offsets do not fit into the long, whose identifier
+ * or text has characters beyond ISO-8859-1, or which are not well formed, are kept as strings.
+ * <p>
+ * Each record has an index, so callers can remember which records they found in a bit set and list
+ * the records they did not find. Looking up a record does not change the set, so once it is filled
+ * any number of threads can look up records at the same time.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class PackedAnswerSet {
+
+  /**
+   * Largest offset stored in a packed record.
+   */
+  private static final int MAX_OFFSET = 0xFFFF;
+
+  /**
+   * Characters of the identifiers, one byte each.
+   */
+  private byte[] mIdChars = new byte[1024];
+
+  /**
+   * Start of each identifier in the characters, followed by the end of the last one.
+   */
+  private int[] mIdStarts = new int[65];
+
+  /**
+   * Number of identifiers.
+   */
+  private int mIdCount;
+
+  /**
+   * Table of identifier numbers plus one by hash, 0 for empty slots.
+   */
+  private int[] mIdTable = new int[128];
+
+  /**
+   * Identifier number and offsets of each record.
+   */
+  private long[] mKeys = new long[64];
+
+  /**
+   * Characters of the texts of the records, one byte each.
+   */
+  private byte[] mTextChars = new byte[1024];
+
+  /**
+   * Start of the text of each record in the characters, followed by the end of the last one.
+   */
+  private int[] mTextStarts = new int[65];
+
+  /**
+   * Number of packed records.
+   */
+  private int mSize;
+
+  /**
+   * Table of record indexes plus one by key, 0 for empty slots.
+   */
+  private int[] mTable = new int[128];
+
+  /**
+   * Records which cannot be packed, in the order they were added.
+   */
+  private List<String> mUnpacked = new ArrayList<String>();
+
+  /**
+   * Position of each record which cannot be packed in the list.
+   */
+  private Map<String, Integer> mUnpackedPositions = new HashMap<String, Integer>();
+
+  /**
+   * Adds a record.
+   *
+   * @param record
+   *          the record
+   * @return false if the set already contained the record
+   */
+  public boolean add(String record) {
+    int idEnd = record.indexOf('|');
+    long offsets = idEnd < 0 ? -1 : parseOffsets(record, idEnd + 1);
+    if (offsets < 0 || !isLatin1(record)) {
+      if (mUnpackedPositions.containsKey(record)) {
+        return false;
+      }
+      mUnpackedPositions.put(record, mUnpacked.size());
+      mUnpacked.add(record);
+      return true;
+    }
+    int textStart = (int) (offsets >>> 32);
+    long key = ((long) internIdentifier(record, idEnd) << 32) | (offsets & 0xFFFFFFFFL);
+    if (find(key, record, textStart) >= 0) {
+      return false;
+    }
+    insert(key, record, textStart);
+    return true;
+  }
+
+  /**
+   * Looks up a record.
+   *
+   * @param record
+   *          the record
+   * @return index of the record, from 0 to the size of the set, or -1 if the set does not contain
+   *         the record; indexes only stay the same once all records are added
+   */
+  public int indexOf(CharSequence record) {
+    int idEnd = indexOf(record, '|', 0);
+    long offsets = idEnd < 0 ? -1 : parseOffsets(record, idEnd + 1);
+    if (offsets >= 0) {
+      int id = findIdentifier(record, idEnd);
+      if (id >= 0) {
+        long key = ((long) id << 32) | (offsets & 0xFFFFFFFFL);
+        int index = find(key, record, (int) (offsets >>> 32));
+        if (index >= 0) {
+          return index;
+        }
+      }
+    }
+    return indexOfUnpacked(record);
+  }
+
+  /**
+   * @return number of records
+   */
+  public int size() {
+    return mSize + mUnpacked.size();
+  }
+
+  /**
+   * Lists the records which have not been found.
+   *
+   * @param found
+   *          indexes of the records which have been found
+   * @param records
+   *          where the other records are added, packed ones in the order they were added
+   */
+  public void getMissing(BitSet found, Collection<String> records) {
+    for (int index = found.nextClearBit(0); index < mSize; index = found.nextClearBit(index + 1)) {
+      int id = (int) (mKeys[index] >>> 32);
+      StringBuilder record = new StringBuilder();
+      appendChars(record, mIdChars, mIdStarts[id], mIdStarts[id + 1]);
+      record.append('|').append((mKeys[index] >>> 16) & MAX_OFFSET).append(' ')
+              .append(mKeys[index] & MAX_OFFSET).append('|');
+      appendChars(record, mTextChars, mTextStarts[index], mTextStarts[index + 1]);
+      records.add(record.toString());
+    }
+    for (int i = 0; i < mUnpacked.size(); i++) {
+      if (!found.get(mSize + i)) {
+        records.add(mUnpacked.get(i));
+      }
+    }
+  }
+
+  /**
+   * Looks up a record which cannot be packed. Their indexes follow the packed records.
+   */
+  private int indexOfUnpacked(CharSequence record) {
+    if (mUnpacked.isEmpty()) {
+      return -1;
+    }
+    Integer position = mUnpackedPositions.get(record.toString());
+    return position == null ? -1 : mSize + position;
+  }
+
+  /**
+   * Parses the offsets of a record.
+   *
+   * @param start
+   *          start of the offsets in the record
+   * @return the start of the text in the upper and the packed offsets in the lower half, -1 if the
+   *         offsets are not well formed or do not fit, or are written with leading zeros which
+   *         would be lost
+   */
+  private static long parseOffsets(CharSequence record, int start) {
+    int length = record.length();
+    int begin = 0;
+    int i = start;
+    for (; i < length && record.charAt(i) != ' '; i++) {
+      char c = record.charAt(i);
+      if (c < '0' || c > '9' || (begin = 10 * begin + c - '0') > MAX_OFFSET) {
+        return -1;
+      }
+    }
+    if (i == start || i == length || (i - start > 1 && record.charAt(start) == '0')) {
+      return -1;
+    }
+    int end = 0;
+    int endStart = ++i;
+    for (; i < length && record.charAt(i) != '|'; i++) {
+      char c = record.charAt(i);
+      if (c < '0' || c > '9' || (end = 10 * end + c - '0') > MAX_OFFSET) {
+        return -1;
+      }
+    }
+    if (i == endStart || i == length || (i - endStart > 1 && record.charAt(endStart) == '0')) {
+      return -1;
+    }
+    return ((long) (i + 1) << 32) | ((long) begin << 16) | end;
+  }
+
+  /**
+   * Tests whether all characters of a record fit into one byte.
+   */
+  private static boolean isLatin1(String record) {
+    for (int i = 0; i < record.length(); i++) {
+      if (record.charAt(i) > 0xFF) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends pooled characters to a record.
+   */
+  private static void appendChars(StringBuilder record, byte[] chars, int start, int end) {
+    for (int i = start; i < end; i++) {
+      record.append((char) (chars[i] & 0xFF));
+    }
+  }
+
+  /**
+   * Copies characters of a record into a pool.
+   */
+  private static void copyChars(String record, int start, int end, byte[] chars, int offset) {
+    for (int i = start; i < end; i++) {
+      chars[offset++] = (byte) record.charAt(i);
+    }
+  }
+
+  /**
+   * Finds a character in a record.
+   */
+  private static int indexOf(CharSequence record, char c, int start) {
+    for (int i = start; i < record.length(); i++) {
+      if (record.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Hashes the identifier of a record.
+   */
+  private static int hashIdentifier(CharSequence record, int idEnd) {
+    int hash = 0;
+    for (int i = 0; i < idEnd; i++) {
+      hash = 31 * hash + record.charAt(i);
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Spreads the bits of the hash of an identifier.
+   */
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Looks up the identifier of a record.
+   *
+   * @return number of the identifier, -1 if it is not in the pool
+   */
+  private int findIdentifier(CharSequence record, int idEnd) {
+    int mask = mIdTable.length - 1;
+    for (int slot = hashIdentifier(record, idEnd) & mask;; slot = (slot + 1) & mask) {
+      int entry = mIdTable[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      int start = mIdStarts[entry - 1];
+      if (mIdStarts[entry] - start == idEnd && regionMatches(record, 0, mIdChars, start, idEnd)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /**
+   * Adds the identifier of a record to the pool unless it is there.
+   *
+   * @return number of the identifier
+   */
+  private int internIdentifier(String record, int idEnd) {
+    int id = findIdentifier(record, idEnd);
+    if (id >= 0) {
+      return id;
+    }
+    id = mIdCount++;
+    if (mIdCount + 1 > mIdStarts.length) {
+      mIdStarts = Arrays.copyOf(mIdStarts, 2 * mIdStarts.length);
+    }
+    int start = mIdStarts[id];
+    mIdChars = ensureCapacity(mIdChars, start + idEnd);
+    copyChars(record, 0, idEnd, mIdChars, start);
+    mIdStarts[id + 1] = start + idEnd;
+
+    // keep the table at most half full
+    if (2 * mIdCount > mIdTable.length) {
+      mIdTable = new int[2 * mIdTable.length];
+      for (int i = 0; i < mIdCount; i++) {
+        putIdentifier(i);
+      }
+    } else {
+      putIdentifier(id);
+    }
+    return id;
+  }
+
+  /**
+   * Puts an identifier into the table.
+   */
+  private void putIdentifier(int id) {
+    int start = mIdStarts[id];
+    int hash = 0;
+    for (int i = start; i < mIdStarts[id + 1]; i++) {
+      hash = 31 * hash + (mIdChars[i] & 0xFF);
+    }
+    int mask = mIdTable.length - 1;
+    int slot = mix(hash) & mask;
+    while (mIdTable[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    mIdTable[slot] = id + 1;
+  }
+
+  /**
+   * Looks up a record by its key and text.
+   *
+   * @return index of the record, -1 if it is not in the set
+   */
+  private int find(long key, CharSequence record, int textStart) {
+    int textLength = record.length() - textStart;
+    int mask = mTable.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+      int entry = mTable[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      int index = entry - 1;
+      if (mKeys[index] == key) {
+        int start = mTextStarts[index];
+        if (mTextStarts[index + 1] - start == textLength
+                && regionMatches(record, textStart, mTextChars, start, textLength)) {
+          return index;
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds a record which is not in the set.
+   */
+  private void insert(long key, String record, int textStart) {
+    if (mSize == mKeys.length) {
+      mKeys = Arrays.copyOf(mKeys, 2 * mSize);
+      mTextStarts = Arrays.copyOf(mTextStarts, 2 * mSize + 1);
+    }
+    int index = mSize++;
+    mKeys[index] = key;
+    int start = mTextStarts[index];
+    int textLength = record.length() - textStart;
+    mTextChars = ensureCapacity(mTextChars, start + textLength);
+    copyChars(record, textStart, record.length(), mTextChars, start);
+    mTextStarts[index + 1] = start + textLength;
+
+    // keep the table at most half full
+    if (2 * mSize > mTable.length) {
+      mTable = new int[2 * mTable.length];
+      for (int i = 0; i < mSize; i++) {
+        put(i);
+      }
+    } else {
+      put(index);
+    }
+  }
+
+  /**
+   * Puts a record into the table.
+   */
+  private void put(int index) {
+    int mask = mTable.length - 1;
+    int slot = hash(mKeys[index]) & mask;
+    while (mTable[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    mTable[slot] = index + 1;
+  }
+
+  /**
+   * Spreads the bits of a key.
+   */
+  private static int hash(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+  }
+
+  /**
+   * Compares characters of a record with pooled characters.
+   */
+  private static boolean regionMatches(CharSequence record, int offset, byte[] chars, int start,
+          int length) {
+    for (int i = 0; i < length; i++) {
+      if (record.charAt(offset + i) != (chars[start + i] & 0xFF)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Grows a pool of characters to hold at least a number of characters.
+   */
+  private static byte[] ensureCapacity(byte[] chars, int capacity) {
+    if (capacity <= chars.length) {
+      return chars;
+    }
+    return Arrays.copyOf(chars, Math.max(capacity, chars.length + (chars.length >> 1)));
+  }
+}
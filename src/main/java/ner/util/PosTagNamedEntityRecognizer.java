@@ -1,55 +1,81 @@
 package ner.util;
-import java.util.ArrayList;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 
 import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
-import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.objectbank.TokenizerFactory;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
+import edu.stanford.nlp.pipeline.PTBTokenizerAnnotator;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
+import edu.stanford.nlp.process.WordToSentenceProcessor;
 
-public class PosTagNamedEntityRecognizer {
+public class PosTagNamedEntityRecognizer implements GeneRecognizer {
 
-  private StanfordCoreNLP pipeline;
+  // the tagger of the default model, loaded once per JVM and shared by all recognizers
+  private static POSTaggerAnnotator sharedTagger;
+
+  // the tokenizer options, sentence splitter and tagger of a tokenize, ssplit, pos pipeline,
+  // which are run directly on the tokens without building an Annotation
+  private TokenizerFactory<CoreLabel> tokenizerFactory;
+
+  private WordToSentenceProcessor<CoreLabel> sentenceSplitter;
+
+  private POSTaggerAnnotator tagger;
 
   public PosTagNamedEntityRecognizer() throws ResourceInitializationException {
-    Properties props = new Properties();
-    props.put("annotators", "tokenize, ssplit, pos");
-    pipeline = new StanfordCoreNLP(props);
+    tokenizerFactory = PTBTokenizer.factory(new CoreLabelTokenFactory(),
+            PTBTokenizerAnnotator.DEFAULT_OPTIONS);
+    sentenceSplitter = new WordToSentenceProcessor<CoreLabel>();
+    tagger = getSharedTagger();
+  }
+
+  private static synchronized POSTaggerAnnotator getSharedTagger() {
+    if (sharedTagger == null) {
+      sharedTagger = new POSTaggerAnnotator(DefaultPaths.DEFAULT_POS_MODEL, false);
+    }
+    return sharedTagger;
   }
 
   public Map<Integer, Integer> getGeneSpans(String text) {
+    SpanSink spans = new SpanSink();
+    recognize(text, 0, text.length(), spans);
     Map<Integer, Integer> begin2end = new HashMap<Integer, Integer>();
-    Annotation document = new Annotation(text);
-    pipeline.annotate(document);
-    List<CoreMap> sentences = document.get(SentencesAnnotation.class);
-    for (CoreMap sentence : sentences) {
-      List<CoreLabel> candidate = new ArrayList<CoreLabel>();
-      for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
-        String pos = token.get(PartOfSpeechAnnotation.class);
-        if (pos.startsWith("NN")) {
-          candidate.add(token);
-        } else if (candidate.size() > 0) {
-          int begin = candidate.get(0).beginPosition();
-          int end = candidate.get(candidate.size() - 1).endPosition();
-          begin2end.put(begin, end);
-          candidate.clear();
+    for (int i = 0; i < spans.size(); i++) {
+      begin2end.put(spans.getBegin(i), spans.getEnd(i));
+    }
+    return begin2end;
+  }
+
+  // writes the runs of nouns into the sink, without boxing their offsets
+  public void recognize(String text, int begin, int end, SpanSink sink) {
+    List<CoreLabel> tokens = tokenizerFactory.getTokenizer(
+            new StringReader(text.substring(begin, end))).tokenize();
+    for (List<CoreLabel> sentence : sentenceSplitter.process(tokens)) {
+      tagger.processText(sentence);
+
+      // collect the runs of nouns in one pass
+      int runBegin = -1;
+      int runEnd = -1;
+      for (CoreLabel token : sentence) {
+        if (token.tag().startsWith("NN")) {
+          if (runBegin < 0) {
+            runBegin = token.beginPosition();
+          }
+          runEnd = token.endPosition();
+        } else if (runBegin >= 0) {
+          sink.add(runBegin, runEnd, 1.0f);
+          runBegin = -1;
         }
       }
-      if (candidate.size() > 0) {
-        int begin = candidate.get(0).beginPosition();
-        int end = candidate.get(candidate.size() - 1).endPosition();
-        begin2end.put(begin, end);
-        candidate.clear();
+      if (runBegin >= 0) {
+        sink.add(runBegin, runEnd, 1.0f);
       }
     }
-    return begin2end;
   }
 }
@@ -0,0 +1,220 @@
+package ner.util;
+
+import java.util.LinkedList;
+
+import org.apache.uima.resource.ResourceInitializationException;
+
+/**
+ * The PosTagNamedEntityRecognizerPool class shares the Stanford recognizers of a JVM between all
+ * annotator instances. A recognizer is only created when every existing one is in use and the pool
+ * has not reached its maximal size; otherwise callers wait for a recognizer to be released. The
+ * pool counts how often and how long callers waited, which tells whether it is too small for the
+ * number of processing threads.
+ * <p>
+ * The first recognizer can be created in a background thread with {@link #preload()}, so the
+ * Stanford models load while the other models and the collection reader are initialized.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class PosTagNamedEntityRecognizerPool {
+
+  /**
+   * The pool of this JVM, null until it is first used.
+   */
+  private static PosTagNamedEntityRecognizerPool sPool;
+
+  /**
+   * Recognizers which are not in use.
+   */
+  private LinkedList<PosTagNamedEntityRecognizer> mIdle = new LinkedList<PosTagNamedEntityRecognizer>();
+
+  /**
+   * Number of recognizers created or being created.
+   */
+  private int mSize;
+
+  /**
+   * Whether a recognizer is being created in the background.
+   */
+  private boolean mPreloading;
+
+  /**
+   * Maximal number of recognizers.
+   */
+  private int mMaxSize;
+
+  /**
+   * Number of acquired recognizers.
+   */
+  private long mAcquisitions;
+
+  /**
+   * Number of acquisitions which had to wait for a recognizer.
+   */
+  private long mWaits;
+
+  /**
+   * Total nanoseconds spent waiting for recognizers.
+   */
+  private long mWaitNanos;
+
+  /**
+   * Creates a pool.
+   */
+  private PosTagNamedEntityRecognizerPool(int maxSize) {
+    mMaxSize = maxSize;
+  }
+
+  /**
+   * Gets the pool of this JVM. The pool grows to the largest size any caller asked for. No
+   * recognizer is created until one is acquired or preloaded.
+   *
+   * @param maxSize
+   *          maximal number of recognizers, 0 for the number of processors
+   * @return the pool
+   */
+  public static PosTagNamedEntityRecognizerPool getInstance(int maxSize) {
+    if (maxSize <= 0) {
+      maxSize = Runtime.getRuntime().availableProcessors();
+    }
+    PosTagNamedEntityRecognizerPool pool;
+    synchronized (PosTagNamedEntityRecognizerPool.class) {
+      if (sPool == null) {
+        sPool = new PosTagNamedEntityRecognizerPool(maxSize);
+      }
+      pool = sPool;
+    }
+    synchronized (pool) {
+      pool.mMaxSize = Math.max(pool.mMaxSize, maxSize);
+    }
+    return pool;
+  }
+
+  /**
+   * Starts creating the first recognizer in a background thread, unless the pool already has one.
+   * If it fails, the error is reported by the next {@link #acquire()}, which tries again.
+   */
+  public synchronized void preload() {
+    if (mSize > 0) {
+      return;
+    }
+    mSize++;
+    mPreloading = true;
+    Thread loader = new Thread(new Runnable() {
+      public void run() {
+        PosTagNamedEntityRecognizer recognizer = null;
+        try {
+          recognizer = new PosTagNamedEntityRecognizer();
+        } catch (ResourceInitializationException e) {
+          // acquire creates the recognizer again and reports the error
+        } catch (RuntimeException e) {
+          // acquire creates the recognizer again and reports the error
+        } finally {
+          synchronized (PosTagNamedEntityRecognizerPool.this) {
+            mPreloading = false;
+            if (recognizer != null) {
+              mIdle.addLast(recognizer);
+            } else {
+              mSize--;
+            }
+            PosTagNamedEntityRecognizerPool.this.notifyAll();
+          }
+        }
+      }
+    }, "Stanford model loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  /**
+   * Takes a recognizer from the pool, creating one if all are in use and the pool is not full, or
+   * else waiting until one is released. While the first recognizer is preloaded, callers wait for
+   * it instead of loading the models a second time.
+   *
+   * @return a recognizer, which must be given back with {@link #release(PosTagNamedEntityRecognizer)}
+   * @throws ResourceInitializationException
+   *           if a new recognizer can not be created
+   */
+  public PosTagNamedEntityRecognizer acquire() throws ResourceInitializationException {
+    synchronized (this) {
+      mAcquisitions++;
+      if (mIdle.isEmpty() && (mSize >= mMaxSize || mPreloading)) {
+        long start = System.nanoTime();
+        mWaits++;
+        boolean interrupted = false;
+        while (mIdle.isEmpty() && (mSize >= mMaxSize || mPreloading)) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        mWaitNanos += System.nanoTime() - start;
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (!mIdle.isEmpty()) {
+        return mIdle.removeFirst();
+      }
+      mSize++;
+    }
+
+    // create the recognizer outside of the lock, it takes seconds
+    try {
+      return new PosTagNamedEntityRecognizer();
+    } catch (ResourceInitializationException e) {
+      synchronized (this) {
+        mSize--;
+        notifyAll();
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        mSize--;
+        notifyAll();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Gives a recognizer back to the pool.
+   *
+   * @param recognizer
+   *          a recognizer taken with {@link #acquire()}
+   */
+  public synchronized void release(PosTagNamedEntityRecognizer recognizer) {
+    mIdle.addLast(recognizer);
+    notify();
+  }
+
+  /**
+   * @return number of recognizers created
+   */
+  public synchronized int getSize() {
+    return mSize;
+  }
+
+  /**
+   * @return number of acquired recognizers
+   */
+  public synchronized long getAcquisitions() {
+    return mAcquisitions;
+  }
+
+  /**
+   * @return number of acquisitions which had to wait for a recognizer
+   */
+  public synchronized long getWaits() {
+    return mWaits;
+  }
+
+  /**
+   * @return total milliseconds spent waiting for recognizers
+   */
+  public synchronized long getWaitMillis() {
+    return mWaitNanos / 1000000;
+  }
+}
@@ -0,0 +1,345 @@
+package ner.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The RegexGeneRecognizer class recognizes gene mentions with hand coded regular expressions, so all
+ * spans get the confidence 1.0. The matcher region hides the rest of the document, so anchors and
+ * word boundaries behave as if the sentence was the whole document.
+ * <p>
+ * Patterns which are plain literals, optionally between word boundaries like
+ * <code>\bcalmodulin\b</code>, are compiled into one {@link LiteralAutomaton}, which reads each
+ * sentence once however many literals there are. The word boundaries are checked for each literal
+ * found. All other patterns are run with their own reused matcher. The spans are the same as if
+ * every pattern was run with a matcher, in the same order: by pattern, then by position.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class RegexGeneRecognizer implements GeneRecognizer {
+
+  /**
+   * Characters which make a pattern more than a literal.
+   */
+  private static final String META_CHARACTERS = "^$.|?*+()[]{}";
+
+  /**
+   * Whether the word boundaries of this JVM's regular expressions are the ones checked by
+   * {@link #isBoundary(CharSequence, int, int, int)}; if not, literals are run with matchers.
+   */
+  private static final boolean sLiteralMatching = checkBoundaries();
+
+  /**
+   * Reusable matchers of the patterns which are not literals.
+   */
+  private Matcher[] mMatchers;
+
+  /**
+   * Index of the pattern of each matcher.
+   */
+  private int[] mMatcherPatterns;
+
+  /**
+   * Automaton of the literal patterns, null if there are none.
+   */
+  private LiteralAutomaton mAutomaton;
+
+  /**
+   * Index of the pattern of each literal.
+   */
+  private int[] mLiteralPatterns;
+
+  /**
+   * Whether each literal must begin at a word boundary.
+   */
+  private boolean[] mLeftBoundaries;
+
+  /**
+   * Whether each literal must end at a word boundary.
+   */
+  private boolean[] mRightBoundaries;
+
+  /**
+   * End of the last match of each literal in the sentence given by {@link #mLastSentences}.
+   */
+  private int[] mLastEnds;
+
+  /**
+   * Sentence of the last match of each literal.
+   */
+  private int[] mLastSentences;
+
+  /**
+   * Number of the current sentence.
+   */
+  private int mSentence;
+
+  /**
+   * Literal matches of the current sentence, each the literal in the upper and the begin in the
+   * lower half.
+   */
+  private long[] mMatches = new long[32];
+
+  /**
+   * Number of literal matches of the current sentence.
+   */
+  private int mMatchCount;
+
+  /**
+   * Creates a recognizer.
+   *
+   * @param patterns
+   *          the compiled regular expressions
+   */
+  public RegexGeneRecognizer(Pattern[] patterns) {
+    List<String> literals = new ArrayList<String>();
+    List<Integer> literalPatterns = new ArrayList<Integer>();
+    List<Integer> matcherPatterns = new ArrayList<Integer>();
+    boolean[] leftBoundaries = new boolean[patterns.length];
+    boolean[] rightBoundaries = new boolean[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      String literal = sLiteralMatching ? toLiteral(patterns[i], leftBoundaries, rightBoundaries,
+              literals.size()) : null;
+      if (literal == null) {
+        matcherPatterns.add(i);
+      } else {
+        literals.add(literal);
+        literalPatterns.add(i);
+      }
+    }
+
+    mMatchers = new Matcher[matcherPatterns.size()];
+    mMatcherPatterns = new int[matcherPatterns.size()];
+    for (int i = 0; i < mMatchers.length; i++) {
+      mMatcherPatterns[i] = matcherPatterns.get(i);
+      mMatchers[i] = patterns[mMatcherPatterns[i]].matcher("");
+    }
+
+    int literalCount = literals.size();
+    mLiteralPatterns = new int[literalCount];
+    for (int i = 0; i < literalCount; i++) {
+      mLiteralPatterns[i] = literalPatterns.get(i);
+    }
+    mLeftBoundaries = Arrays.copyOf(leftBoundaries, literalCount);
+    mRightBoundaries = Arrays.copyOf(rightBoundaries, literalCount);
+    mLastEnds = new int[literalCount];
+    mLastSentences = new int[literalCount];
+    if (literalCount > 0) {
+      mAutomaton = new LiteralAutomaton(literals.toArray(new String[literalCount]));
+    }
+  }
+
+  /**
+   * @see ner.util.GeneRecognizer#recognize(String, int, int, SpanSink)
+   */
+  public void recognize(String text, int begin, int end, SpanSink sink) {
+    mMatchCount = 0;
+    if (mAutomaton != null) {
+      findLiterals(text, begin, end);
+      Arrays.sort(mMatches, 0, mMatchCount);
+    }
+
+    // merge the literal matches and the matchers in the order of the patterns
+    int next = 0;
+    for (int i = 0; i < mMatchers.length; i++) {
+      while (next < mMatchCount
+              && mLiteralPatterns[(int) (mMatches[next] >>> 32)] < mMatcherPatterns[i]) {
+        addLiteralMatch(next++, begin, sink);
+      }
+      Matcher matcher = mMatchers[i];
+      matcher.reset(text);
+      matcher.region(begin, end);
+      while (matcher.find()) {
+        sink.add(matcher.start() - begin, matcher.end() - begin, 1.0f);
+      }
+    }
+    while (next < mMatchCount) {
+      addLiteralMatch(next++, begin, sink);
+    }
+  }
+
+  /**
+   * @return number of patterns matched as literals
+   */
+  public int getLiteralCount() {
+    return mLiteralPatterns.length;
+  }
+
+  /**
+   * Finds the literal matches of a sentence. Like a matcher, each literal only matches after the
+   * end of its previous match.
+   */
+  private void findLiterals(String text, int begin, int end) {
+    if (++mSentence == 0) {
+      Arrays.fill(mLastSentences, 0);
+      mSentence = 1;
+    }
+    LiteralAutomaton automaton = mAutomaton;
+    int state = 0;
+    for (int i = begin; i < end; i++) {
+      state = automaton.step(state, text.charAt(i));
+      for (int output = automaton.firstOutput(state); output != 0; output = automaton
+              .nextOutput(output)) {
+        for (int literal = automaton.firstLiteral(output); literal >= 0; literal = automaton
+                .nextLiteral(literal)) {
+          int start = i + 1 - automaton.length(literal);
+          if (mLastSentences[literal] == mSentence && start < mLastEnds[literal]) {
+            continue;
+          }
+          if (mLeftBoundaries[literal] && !isBoundary(text, start, begin, end)) {
+            continue;
+          }
+          if (mRightBoundaries[literal] && !isBoundary(text, i + 1, begin, end)) {
+            continue;
+          }
+          mLastSentences[literal] = mSentence;
+          mLastEnds[literal] = i + 1;
+          if (mMatchCount == mMatches.length) {
+            mMatches = Arrays.copyOf(mMatches, 2 * mMatchCount);
+          }
+          mMatches[mMatchCount++] = ((long) literal << 32) | start;
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds a literal match to the sink.
+   */
+  private void addLiteralMatch(int index, int begin, SpanSink sink) {
+    int literal = (int) (mMatches[index] >>> 32);
+    int start = (int) mMatches[index];
+    sink.add(start - begin, start - begin + mAutomaton.length(literal), 1.0f);
+  }
+
+  /**
+   * Gets the literal of a pattern which is a literal, optionally between word boundaries.
+   *
+   * @return the literal, or null if the pattern is not a literal
+   */
+  private static String toLiteral(Pattern pattern, boolean[] leftBoundaries,
+          boolean[] rightBoundaries, int index) {
+    if (pattern.flags() != 0) {
+      return null;
+    }
+    String regex = pattern.pattern();
+    StringBuilder literal = new StringBuilder();
+    boolean left = false;
+    boolean right = false;
+    int n = regex.length();
+    int i = 0;
+    while (i < n) {
+      char c = regex.charAt(i);
+      if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)
+              || META_CHARACTERS.indexOf(c) >= 0) {
+        return null;
+      }
+      if (c != '\\') {
+        literal.append(c);
+        i++;
+        continue;
+      }
+      if (i + 1 == n) {
+        return null;
+      }
+      char escaped = regex.charAt(i + 1);
+      if (escaped == 'b' && i == 0) {
+        left = true;
+      } else if (escaped == 'b' && i + 2 == n) {
+        right = true;
+      } else if (!Character.isLetterOrDigit(escaped) && !Character.isHighSurrogate(escaped)
+              && !Character.isLowSurrogate(escaped)) {
+        // a backslash before any other character stands for that character
+        literal.append(escaped);
+      } else {
+        return null;
+      }
+      i += 2;
+    }
+    if (literal.length() == 0) {
+      return null;
+    }
+    leftBoundaries[index] = left;
+    rightBoundaries[index] = right;
+    return literal.toString();
+  }
+
+  /**
+   * Tests for a word boundary the way <code>\b</code> does inside a matcher region with opaque
+   * bounds.
+   */
+  private static boolean isBoundary(CharSequence text, int index, int begin, int end) {
+    boolean left = false;
+    if (index > begin) {
+      int c = Character.codePointBefore(text, index);
+      left = isWord(c)
+              || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(text,
+                      index - 1, begin));
+    }
+    boolean right = false;
+    if (index < end) {
+      int c = Character.codePointAt(text, index);
+      right = isWord(c)
+              || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(text,
+                      index, begin));
+    }
+    return left != right;
+  }
+
+  /**
+   * Tests whether a character counts as a word character for word boundaries.
+   */
+  private static boolean isWord(int c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * Tests whether a non-spacing mark follows a letter or digit, so it belongs to a word.
+   */
+  private static boolean hasBaseCharacter(CharSequence text, int index, int begin) {
+    for (int i = index; i >= begin; i--) {
+      int c = Character.codePointAt(text, i);
+      if (Character.isLetterOrDigit(c)) {
+        return true;
+      }
+      if (Character.getType(c) != Character.NON_SPACING_MARK) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compares {@link #isBoundary(CharSequence, int, int, int)} with the word boundaries of this JVM,
+   * whose definition of word characters changed between Java versions.
+   */
+  private static boolean checkBoundaries() {
+    String[] samples = { "calmodulin top2", "\u00e9t\u00e9-1", "a\u0301b \u0301c", "_x-1_",
+        "\ud835\udc00a b", "p53/p21." };
+    Matcher matcher = Pattern.compile("\\b").matcher("");
+    for (String sample : samples) {
+      matcher.reset(sample);
+      int index = 0;
+      while (matcher.find()) {
+        for (; index < matcher.start(); index++) {
+          if (isBoundary(sample, index, 0, sample.length())) {
+            return false;
+          }
+        }
+        if (!isBoundary(sample, index++, 0, sample.length())) {
+          return false;
+        }
+      }
+      for (; index <= sample.length(); index++) {
+        if (isBoundary(sample, index, 0, sample.length())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
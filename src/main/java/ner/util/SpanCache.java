@@ -0,0 +1,457 @@
+package ner.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SpanCache class is a persistent cache of the spans an annotator found in a sentence. Entries
+ * are keyed by a 64 bit hash of the sentence text and a fingerprint of the model and parameters of
+ * the annotator, so a changed model never hits entries of the old one. A hit replaces the decoding
+ * of the sentence.
+ * <p>
+ * The cache is a memory-mapped file of fixed size, organized as a set-associative table of fixed
+ * size slots. A full set evicts its least recently used slot. Sentences longer than 65535
+ * characters or with more than {@link #MAX_SPANS} spans are not cached. Annotators of one JVM share
+ * one instance per file. Each file has a single writer: it is locked against other processes, and
+ * a process which finds it locked, e.g. another shard of a run over several JVMs, uses the first
+ * unlocked of the files with the suffixes <code>.1</code> to <code>.63</code> instead. So every
+ * JVM writes its own cache file and finds it again in the next run with the same number of JVMs.
+ * <p>
+ * The same table can also be kept on the heap for the duration of a run with {@link #memory(long)},
+ * so duplicate sentences of a corpus are annotated only once.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class SpanCache {
+
+  /**
+   * Maximal number of spans of a cached sentence.
+   */
+  public static final int MAX_SPANS = 30;
+
+  /**
+   * Magic number at the beginning of a cache file.
+   */
+  private static final int MAGIC = 0x53504E43;
+
+  /**
+   * Version of the file layout.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Size of the file header: magic, version, set count, ways, slot size and the clock.
+   */
+  private static final int HEADER_SIZE = 64;
+
+  /**
+   * Offset of the clock in the header.
+   */
+  private static final int CLOCK_OFFSET = 24;
+
+  /**
+   * Number of slots per set.
+   */
+  private static final int WAYS = 8;
+
+  /**
+   * Size of a slot: key, last use, span count, sentence length and the spans, each with a 16 bit
+   * begin and end and a float confidence.
+   */
+  private static final int SLOT_SIZE = 16 + 8 * MAX_SPANS;
+
+  /**
+   * Number of cache files, including the requested one, which the processes sharing a cache file
+   * name can use.
+   */
+  private static final int MAX_FILES = 64;
+
+  /**
+   * Caches opened in this JVM, by canonical path of the requested file.
+   */
+  private static final Map<String, SpanCache> sCaches = new HashMap<String, SpanCache>();
+
+  /**
+   * The heap cache of this JVM, null until it is first used.
+   */
+  private static SpanCache sMemory;
+
+  /**
+   * The mapped cache file, or the heap buffer of a heap cache.
+   */
+  private ByteBuffer mBuffer;
+
+  /**
+   * The cache file, or null for a heap cache.
+   */
+  private File mFile;
+
+  /**
+   * Lock held on the cache file.
+   */
+  private FileLock mLock;
+
+  /**
+   * Number of sets.
+   */
+  private int mSetCount;
+
+  /**
+   * Logical time of the last use of any slot.
+   */
+  private int mClock;
+
+  /**
+   * Number of lookups which found their sentence.
+   */
+  private long mHits;
+
+  /**
+   * Number of lookups which did not find their sentence.
+   */
+  private long mMisses;
+
+  /**
+   * Opens the first cache file not locked by another process, creating it if necessary. A cache
+   * file of a different size is cleared.
+   */
+  private SpanCache(File file, long size) throws IOException {
+    long length = setCount(size);
+
+    RandomAccessFile randomAccessFile = null;
+    FileChannel channel = null;
+    for (int i = 0; i < MAX_FILES && mLock == null; i++) {
+      mFile = i == 0 ? file : new File(file.getPath() + '.' + i);
+      randomAccessFile = new RandomAccessFile(mFile, "rw");
+      channel = randomAccessFile.getChannel();
+      try {
+        mLock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        // locked through another channel of this JVM
+      }
+      if (mLock == null) {
+        randomAccessFile.close();
+      }
+    }
+    if (mLock == null) {
+      throw new IOException("Cache file and its " + (MAX_FILES - 1)
+              + " alternatives are used by other processes: " + file.getPath());
+    }
+    boolean valid = randomAccessFile.length() == length;
+    mBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    valid = valid && mBuffer.getInt(0) == MAGIC && mBuffer.getInt(4) == VERSION
+            && mBuffer.getInt(8) == mSetCount && mBuffer.getInt(12) == WAYS
+            && mBuffer.getInt(16) == SLOT_SIZE;
+    if (!valid) {
+      for (int i = HEADER_SIZE; i < length; i += SLOT_SIZE) {
+        mBuffer.putLong(i, 0);
+      }
+      writeHeader();
+    }
+    mClock = mBuffer.getInt(CLOCK_OFFSET);
+  }
+
+  /**
+   * Creates a heap cache.
+   */
+  private SpanCache(long size) {
+    mBuffer = ByteBuffer.allocate((int) setCount(size));
+    writeHeader();
+  }
+
+  /**
+   * Computes the number of sets of a cache of the given size.
+   *
+   * @return the exact size of the cache
+   */
+  private long setCount(long size) {
+    long maxSize = Integer.MAX_VALUE;
+    mSetCount = (int) Math.max(1, (Math.min(size, maxSize) - HEADER_SIZE) / (WAYS * SLOT_SIZE));
+    return HEADER_SIZE + (long) mSetCount * WAYS * SLOT_SIZE;
+  }
+
+  /**
+   * Writes the header of an empty cache.
+   */
+  private void writeHeader() {
+    mBuffer.putInt(0, MAGIC);
+    mBuffer.putInt(4, VERSION);
+    mBuffer.putInt(8, mSetCount);
+    mBuffer.putInt(12, WAYS);
+    mBuffer.putInt(16, SLOT_SIZE);
+    mBuffer.putInt(CLOCK_OFFSET, 0);
+  }
+
+  /**
+   * Opens a cache file, sharing it with the annotators of this JVM which already opened it.
+   *
+   * @param file
+   *          the cache file, created if it does not exist
+   * @param size
+   *          size of the cache file in bytes
+   * @return the cache
+   * @throws IOException
+   *           if the cache file can not be opened, or it and all its alternatives are used by
+   *           other processes
+   */
+  public static SpanCache open(File file, long size) throws IOException {
+    String path = file.getCanonicalPath();
+    synchronized (sCaches) {
+      SpanCache cache = sCaches.get(path);
+      if (cache == null) {
+        cache = new SpanCache(file, size);
+        sCaches.put(path, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Gets the heap cache of this JVM, which lives until the JVM exits. It is created with the size
+   * requested by its first user.
+   *
+   * @param size
+   *          size of the cache in bytes
+   * @return the cache
+   */
+  public static synchronized SpanCache memory(long size) {
+    if (sMemory == null) {
+      sMemory = new SpanCache(size);
+    }
+    return sMemory;
+  }
+
+  /**
+   * Computes the fingerprint of a model and its parameters.
+   *
+   * @param parts
+   *          strings which identify the model and the parameters
+   * @return the fingerprint
+   */
+  public static long fingerprint(String... parts) {
+    long hash = 0xCBF29CE484222325L;
+    for (String part : parts) {
+      for (int i = 0; i < part.length(); i++) {
+        hash = (hash ^ part.charAt(i)) * 0x100000001B3L;
+      }
+      hash = (hash ^ 0xFFFF) * 0x100000001B3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Computes the fingerprint part of a model file from its path, length and modification time.
+   *
+   * @param file
+   *          the model file
+   * @return a string which changes when the model file changes
+   */
+  public static String fileFingerprint(File file) {
+    return file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+  }
+
+  /**
+   * Computes the fingerprint part of a model resource from its location, length and modification
+   * time. Resources in files get the fingerprint of {@link #fileFingerprint(File)}.
+   *
+   * @param url
+   *          location of the model, e.g. inside a jar
+   * @return a string which changes when the model changes
+   * @throws IOException
+   *           if the length and modification time of the model can not be read
+   */
+  public static String urlFingerprint(URL url) throws IOException {
+    if ("file".equals(url.getProtocol())) {
+      try {
+        return fileFingerprint(new File(url.toURI()));
+      } catch (URISyntaxException e) {
+        // fall back to the connection
+      }
+    }
+    URLConnection connection = url.openConnection();
+    return url.toString() + ':' + connection.getContentLength() + ':'
+            + connection.getLastModified();
+  }
+
+  /**
+   * Computes the key of a sentence.
+   *
+   * @param fingerprint
+   *          fingerprint of the model and parameters
+   * @param text
+   *          characters of the document
+   * @param begin
+   *          begin of the sentence
+   * @param end
+   *          end of the sentence
+   * @return the key of the sentence
+   */
+  public static long key(long fingerprint, CharSequence text, int begin, int end) {
+    long hash = fingerprint;
+    for (int i = begin; i < end; i++) {
+      hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+    }
+
+    // spread the bits, 0 marks empty slots
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Looks up the spans of a sentence.
+   *
+   * @param key
+   *          key of the sentence
+   * @param length
+   *          length of the sentence
+   * @param sink
+   *          receives the spans relative to the sentence
+   * @return true if the sentence is cached
+   */
+  public synchronized boolean get(long key, int length, SpanSink sink) {
+    int slot = find(key, length);
+    if (slot < 0) {
+      mMisses++;
+      return false;
+    }
+    mHits++;
+    mBuffer.putInt(slot + 8, tick());
+    int count = mBuffer.getShort(slot + 12);
+    for (int i = 0; i < count; i++) {
+      int span = slot + 16 + 8 * i;
+      sink.add(mBuffer.getChar(span), mBuffer.getChar(span + 2), mBuffer.getFloat(span + 4));
+    }
+    return true;
+  }
+
+  /**
+   * Stores the spans of a sentence.
+   *
+   * @param key
+   *          key of the sentence
+   * @param length
+   *          length of the sentence
+   * @param sink
+   *          the spans relative to the sentence
+   */
+  public synchronized void put(long key, int length, SpanSink sink) {
+    int count = sink.size();
+    if (length > Character.MAX_VALUE || count > MAX_SPANS) {
+      return;
+    }
+    int slot = find(key, length);
+    if (slot < 0) {
+      slot = victim(key);
+    }
+
+    // the key is written last, so a torn write leaves an empty slot
+    mBuffer.putLong(slot, 0);
+    mBuffer.putInt(slot + 8, tick());
+    mBuffer.putShort(slot + 12, (short) count);
+    mBuffer.putChar(slot + 14, (char) length);
+    for (int i = 0; i < count; i++) {
+      int span = slot + 16 + 8 * i;
+      mBuffer.putChar(span, (char) sink.getBegin(i));
+      mBuffer.putChar(span + 2, (char) sink.getEnd(i));
+      mBuffer.putFloat(span + 4, sink.getConfidence(i));
+    }
+    mBuffer.putLong(slot, key);
+  }
+
+  /**
+   * @return the cache file this process writes, or null for a heap cache
+   */
+  public File getFile() {
+    return mFile;
+  }
+
+  /**
+   * @return number of lookups which found their sentence
+   */
+  public synchronized long getHits() {
+    return mHits;
+  }
+
+  /**
+   * @return number of lookups which did not find their sentence
+   */
+  public synchronized long getMisses() {
+    return mMisses;
+  }
+
+  /**
+   * Writes a cache file to disk.
+   */
+  public synchronized void flush() {
+    if (mBuffer instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) mBuffer).force();
+    }
+  }
+
+  /**
+   * Finds the slot of a sentence.
+   *
+   * @return offset of the slot, or -1 if the sentence is not cached
+   */
+  private int find(long key, int length) {
+    int set = set(key);
+    for (int i = 0; i < WAYS; i++) {
+      int slot = set + i * SLOT_SIZE;
+      if (mBuffer.getLong(slot) == key && mBuffer.getChar(slot + 14) == (char) length) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Chooses the slot a new sentence replaces: an empty slot, or else the least recently used one.
+   */
+  private int victim(long key) {
+    int set = set(key);
+    int victim = set;
+    for (int i = 0; i < WAYS; i++) {
+      int slot = set + i * SLOT_SIZE;
+      if (mBuffer.getLong(slot) == 0) {
+        return slot;
+      }
+      // compare by distance to the clock, which may wrap around
+      if (mClock - mBuffer.getInt(slot + 8) > mClock - mBuffer.getInt(victim + 8)) {
+        victim = slot;
+      }
+    }
+    return victim;
+  }
+
+  /**
+   * Gets the offset of the set of a key.
+   */
+  private int set(long key) {
+    return HEADER_SIZE + (int) ((key >>> 1) % mSetCount) * WAYS * SLOT_SIZE;
+  }
+
+  /**
+   * Advances the clock.
+   */
+  private int tick() {
+    mClock++;
+    mBuffer.putInt(CLOCK_OFFSET, mClock);
+    return mClock;
+  }
+}
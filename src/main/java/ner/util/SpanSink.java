@@ -0,0 +1,91 @@
+package ner.util;
+
+import java.util.Arrays;
+
+/**
+ * The SpanSink class collects the spans a {@link GeneRecognizer} found in a sentence in reusable
+ * primitive arrays, so recognizing a sentence allocates no objects per span once the arrays have
+ * grown to the largest sentence. Offsets are relative to the beginning of the sentence.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class SpanSink {
+
+  /**
+   * Begins of the spans.
+   */
+  private int[] mBegins = new int[32];
+
+  /**
+   * Ends of the spans.
+   */
+  private int[] mEnds = new int[32];
+
+  /**
+   * Confidences of the spans.
+   */
+  private float[] mConfidences = new float[32];
+
+  /**
+   * Number of spans.
+   */
+  private int mSize;
+
+  /**
+   * Removes all spans.
+   */
+  public void clear() {
+    mSize = 0;
+  }
+
+  /**
+   * Adds a span.
+   *
+   * @param begin
+   *          begin of the span, relative to the sentence
+   * @param end
+   *          end of the span, relative to the sentence
+   * @param confidence
+   *          confidence of the span
+   */
+  public void add(int begin, int end, float confidence) {
+    if (mSize == mBegins.length) {
+      mBegins = Arrays.copyOf(mBegins, 2 * mSize);
+      mEnds = Arrays.copyOf(mEnds, 2 * mSize);
+      mConfidences = Arrays.copyOf(mConfidences, 2 * mSize);
+    }
+    mBegins[mSize] = begin;
+    mEnds[mSize] = end;
+    mConfidences[mSize] = confidence;
+    mSize++;
+  }
+
+  /**
+   * @return number of spans
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @return begin of a span, relative to the sentence
+   */
+  public int getBegin(int index) {
+    return mBegins[index];
+  }
+
+  /**
+   * @return end of a span, relative to the sentence
+   */
+  public int getEnd(int index) {
+    return mEnds[index];
+  }
+
+  /**
+   * @return confidence of a span
+   */
+  public float getConfidence(int index) {
+    return mConfidences[index];
+  }
+}
@@ -0,0 +1,234 @@
+package ner.util;
+
+import java.util.Arrays;
+
+/**
+ * The SpanVotes class collects the spans several sources found in one sentence and the confidence
+ * each source gave them, so the votes can be weighted and fused into one confidence per span. A
+ * span found twice by the same source counts once, with the higher confidence. Spans are looked up
+ * in an open addressing table keyed by begin and end, and all arrays are reused from sentence to
+ * sentence.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class SpanVotes {
+
+  /**
+   * Number of sources.
+   */
+  private int mSourceCount;
+
+  /**
+   * Begins of the spans.
+   */
+  private int[] mBegins = new int[32];
+
+  /**
+   * Ends of the spans.
+   */
+  private int[] mEnds = new int[32];
+
+  /**
+   * Bits of the sources which found each span.
+   */
+  private int[] mSources = new int[32];
+
+  /**
+   * Confidence of each span by each source, 0 for sources which did not find it.
+   */
+  private float[] mConfidences;
+
+  /**
+   * Number of spans.
+   */
+  private int mSize;
+
+  /**
+   * Table of span indexes plus one by span key, 0 for empty slots.
+   */
+  private int[] mTable = new int[64];
+
+  /**
+   * Creates an empty set of votes.
+   *
+   * @param sourceCount
+   *          number of sources, at most 31
+   */
+  public SpanVotes(int sourceCount) {
+    if (sourceCount < 1 || sourceCount > 31) {
+      throw new IllegalArgumentException("Number of sources out of range: " + sourceCount);
+    }
+    mSourceCount = sourceCount;
+    mConfidences = new float[32 * sourceCount];
+  }
+
+  /**
+   * Removes all spans.
+   */
+  public void clear() {
+    if (mSize > 0) {
+      Arrays.fill(mTable, 0);
+      Arrays.fill(mConfidences, 0, mSize * mSourceCount, 0.0f);
+      mSize = 0;
+    }
+  }
+
+  /**
+   * Adds the vote of a source for a span.
+   *
+   * @param begin
+   *          begin of the span
+   * @param end
+   *          end of the span
+   * @param source
+   *          index of the source
+   * @param confidence
+   *          confidence of the span given by the source
+   */
+  public void add(int begin, int end, int source, float confidence) {
+    int index = find(begin, end);
+    if (index < 0) {
+      index = insert(begin, end);
+    }
+    int slot = index * mSourceCount + source;
+    if ((mSources[index] & (1 << source)) == 0 || confidence > mConfidences[slot]) {
+      mConfidences[slot] = confidence;
+    }
+    mSources[index] |= 1 << source;
+  }
+
+  /**
+   * Adds the votes of a source for all spans of a sink.
+   *
+   * @param spans
+   *          the spans found by the source
+   * @param source
+   *          index of the source
+   */
+  public void addAll(SpanSink spans, int source) {
+    for (int i = 0; i < spans.size(); i++) {
+      add(spans.getBegin(i), spans.getEnd(i), source, spans.getConfidence(i));
+    }
+  }
+
+  /**
+   * @return number of spans
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @return begin of a span
+   */
+  public int getBegin(int index) {
+    return mBegins[index];
+  }
+
+  /**
+   * @return end of a span
+   */
+  public int getEnd(int index) {
+    return mEnds[index];
+  }
+
+  /**
+   * @return bits of the sources which found a span
+   */
+  public int getSources(int index) {
+    return mSources[index];
+  }
+
+  /**
+   * @return confidence given to a span by a source, 0 if the source did not find it
+   */
+  public float getConfidence(int index, int source) {
+    return mConfidences[index * mSourceCount + source];
+  }
+
+  /**
+   * Gets the weighted sum of the confidences of a span.
+   *
+   * @param index
+   *          index of the span
+   * @param weights
+   *          weight of each source
+   * @return the sum of the confidence times the weight of the sources which found the span
+   */
+  public float getScore(int index, float[] weights) {
+    float score = 0.0f;
+    int offset = index * mSourceCount;
+    for (int source = 0; source < mSourceCount; source++) {
+      score += weights[source] * mConfidences[offset + source];
+    }
+    return score;
+  }
+
+  /**
+   * Looks up a span.
+   *
+   * @return index of the span, -1 if it has no votes
+   */
+  private int find(int begin, int end) {
+    int mask = mTable.length - 1;
+    for (int slot = hash(begin, end) & mask;; slot = (slot + 1) & mask) {
+      int entry = mTable[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (mBegins[entry - 1] == begin && mEnds[entry - 1] == end) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /**
+   * Adds a span without votes.
+   *
+   * @return index of the span
+   */
+  private int insert(int begin, int end) {
+    if (mSize == mBegins.length) {
+      mBegins = Arrays.copyOf(mBegins, 2 * mSize);
+      mEnds = Arrays.copyOf(mEnds, 2 * mSize);
+      mSources = Arrays.copyOf(mSources, 2 * mSize);
+      mConfidences = Arrays.copyOf(mConfidences, 2 * mSize * mSourceCount);
+    }
+    int index = mSize++;
+    mBegins[index] = begin;
+    mEnds[index] = end;
+    mSources[index] = 0;
+
+    // keep the table at most half full
+    if (2 * mSize > mTable.length) {
+      mTable = new int[2 * mTable.length];
+      for (int i = 0; i < mSize; i++) {
+        put(i);
+      }
+    } else {
+      put(index);
+    }
+    return index;
+  }
+
+  /**
+   * Puts a span into the table.
+   */
+  private void put(int index) {
+    int mask = mTable.length - 1;
+    int slot = hash(mBegins[index], mEnds[index]) & mask;
+    while (mTable[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    mTable[slot] = index + 1;
+  }
+
+  /**
+   * Spreads the bits of a span.
+   */
+  private static int hash(int begin, int end) {
+    long key = (((long) begin << 32) | (end & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    return (int) (key >>> 32);
+  }
+}
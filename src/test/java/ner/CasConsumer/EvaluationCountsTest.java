@@ -0,0 +1,98 @@
+package ner.CasConsumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link EvaluationCounts} written to a checkpoint are read back with the same total,
+ * source and confidence counts and the same found answers, and that reading adds to the counts.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class EvaluationCountsTest {
+
+  /**
+   * Random source of the counts, seeded so failures repeat.
+   */
+  private Random mRandom = new Random(5);
+
+  @Test
+  public void countsSurviveACheckpoint() throws Exception {
+    for (int round = 0; round < 50; round++) {
+      EvaluationCounts counts = counts(mRandom.nextInt(500));
+      EvaluationCounts read = new EvaluationCounts(false);
+      read.read(new DataInputStream(new ByteArrayInputStream(write(counts))));
+      assertSame(counts, read);
+    }
+  }
+
+  @Test
+  public void readingAddsToTheCounts() throws Exception {
+    EvaluationCounts first = counts(300);
+    EvaluationCounts second = counts(300);
+    EvaluationCounts expected = new EvaluationCounts(false);
+    expected.addAll(first);
+    expected.addAll(second);
+
+    EvaluationCounts read = new EvaluationCounts(false);
+    read.read(new DataInputStream(new ByteArrayInputStream(write(first))));
+    read.read(new DataInputStream(new ByteArrayInputStream(write(second))));
+    assertSame(expected, read);
+  }
+
+  /**
+   * Writes counts to bytes.
+   */
+  private static byte[] write(EvaluationCounts counts) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    counts.write(out);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Checks that two counts are the same, apart from the records of the false positives.
+   */
+  private static void assertSame(EvaluationCounts expected, EvaluationCounts actual) {
+    assertEquals(expected.mTruePositiveCount, actual.mTruePositiveCount);
+    assertEquals(expected.mFalsePositiveCount, actual.mFalsePositiveCount);
+    assertEquals(expected.mFound, actual.mFound);
+    assertEquals(expected.mSources.keySet(), actual.mSources.keySet());
+    for (Map.Entry<String, EvaluationCounts.SourceCounts> entry : expected.mSources.entrySet()) {
+      EvaluationCounts.SourceCounts source = actual.mSources.get(entry.getKey());
+      assertArrayEquals(entry.getValue().mTruePositives, source.mTruePositives);
+      assertArrayEquals(entry.getValue().mFalsePositives, source.mFalsePositives);
+      assertEquals(entry.getValue().mFound, source.mFound);
+      assertEquals(entry.getValue().getFoundCount(), source.getFoundCount());
+    }
+  }
+
+  /**
+   * Creates random counts of a few sources, with answers found at indexes beyond one word.
+   */
+  private EvaluationCounts counts(int count) {
+    EvaluationCounts counts = new EvaluationCounts(true);
+    String[] sources = { "dictionary", "chunker", null, "\u00e9\u4e2d" };
+    for (int i = 0; i < count; i++) {
+      String source = sources[mRandom.nextInt(sources.length)];
+      float confidence = mRandom.nextFloat();
+      if (mRandom.nextBoolean()) {
+        counts.addTruePositive(source, confidence, mRandom.nextInt(1000));
+      } else {
+        counts.addFalsePositive(source, confidence, "S" + i + "|0 1|x");
+      }
+    }
+    return counts;
+  }
+}
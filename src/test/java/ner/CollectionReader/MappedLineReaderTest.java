@@ -0,0 +1,160 @@
+package ner.CollectionReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests seeking a {@link MappedLineReader} to lines far from its current window, splitting lines
+ * at the line breaks of {@link BufferedReader#readLine()} in every byte range and rejecting
+ * charsets whose line breaks are not single bytes.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedLineReaderTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  /**
+   * Writes a sparse file with lines at the given offsets, each a string ending in a line break.
+   */
+  private File writeSparseFile(long length, long[] offsets, String[] lines) throws Exception {
+    File file = mFolder.newFile("sparse.in");
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      out.setLength(length);
+      for (int i = 0; i < offsets.length; i++) {
+        out.seek(offsets[i]);
+        out.write(lines[i].getBytes(UTF8));
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void seeksFarBeyondTheWindowOfAShard() throws Exception {
+    // the shard begins after the line break at 99, the resumed line is 3 GB further
+    long far = 100L + (3L << 30);
+    File file = writeSparseFile(far + 100, new long[] { 99, far - 1 }, new String[] { "\n",
+        "\nresumed\nlast\n" });
+    MappedLineReader reader = new MappedLineReader(file, UTF8, 50, far + 100);
+    try {
+      assertEquals(100, reader.getBegin());
+      reader.seek(far);
+      assertEquals("resumed", reader.readLine());
+      assertEquals("last", reader.readLine());
+      assertEquals(far + 13, reader.getPosition());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void seeksBackBeforeTheWindow() throws Exception {
+    long far = 3L << 30;
+    File file = writeSparseFile(far + 20, new long[] { 0, far - 1 }, new String[] {
+        "first\nsecond\n", "\nfar\n" });
+    MappedLineReader reader = new MappedLineReader(file, UTF8);
+    try {
+      reader.seek(far);
+      assertEquals("far", reader.readLine());
+      reader.seek(6);
+      assertEquals("second", reader.readLine());
+      reader.seek(far);
+      assertEquals("far", reader.readLine());
+      reader.seek(far + 20);
+      assertFalse(reader.hasNext());
+      assertNull(reader.readLine());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void splitsLinesLikeABufferedReader() throws Exception {
+    String text = "a\rb\r\nc\n\rd\r\r\n\ne\u00e9\r";
+    List<String> expected = new ArrayList<String>();
+    BufferedReader lines = new BufferedReader(new StringReader(text));
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      expected.add(line);
+    }
+    File file = writeSparseFile(text.getBytes(UTF8).length, new long[] { 0 },
+            new String[] { text });
+
+    // two adjacent ranges read every line once, split at any byte
+    for (long split = 0; split <= file.length(); split++) {
+      List<String> read = new ArrayList<String>();
+      long count = 0;
+      for (long[] range : new long[][] { { 0, split }, { split, file.length() } }) {
+        MappedLineReader reader = new MappedLineReader(file, UTF8, range[0], range[1]);
+        try {
+          while (reader.hasNext()) {
+            read.add(reader.readLine());
+          }
+          count += countLines(reader);
+        } finally {
+          reader.close();
+        }
+      }
+      assertEquals("split at " + split, expected, read);
+      assertEquals("split at " + split, expected.size(), count);
+    }
+  }
+
+  @Test
+  public void countsAWindowsLineBreakAcrossWindows() throws Exception {
+    long length = MappedLineReader.WINDOW_SIZE + 10;
+    File file = writeSparseFile(length, new long[] { MappedLineReader.WINDOW_SIZE - 1 },
+            new String[] { "\r\n" });
+    MappedLineReader reader = new MappedLineReader(file, UTF8);
+    try {
+      assertEquals(2, countLines(reader));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void supportsCharsetsWithSingleByteLineBreaks() {
+    assertTrue(MappedLineReader.supports(UTF8));
+    assertTrue(MappedLineReader.supports(Charset.forName("ISO-8859-1")));
+    assertFalse(MappedLineReader.supports(Charset.forName("UTF-16")));
+    assertFalse(MappedLineReader.supports(Charset.forName("UTF-16LE")));
+    assertFalse(MappedLineReader.supports(Charset.forName("UTF-32")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUtf16() throws Exception {
+    new MappedLineReader(mFolder.newFile(), Charset.forName("UTF-16"));
+  }
+
+  /**
+   * Counts the lines of a reader in the background and waits for the count.
+   */
+  private static long countLines(MappedLineReader reader) throws Exception {
+    reader.startLineCounter();
+    for (int i = 0; i < 6000 && reader.getLineCount() < 0; i++) {
+      Thread.sleep(10);
+    }
+    return reader.getLineCount();
+  }
+}
@@ -0,0 +1,207 @@
+package ner.Resource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.FileResourceSpecifier;
+
+import com.aliasi.chunk.Chunk;
+import com.aliasi.chunk.ChunkFactory;
+import com.aliasi.chunk.ChunkingImpl;
+import com.aliasi.chunk.CharLmHmmChunker;
+import com.aliasi.chunk.ConfidenceChunker;
+import com.aliasi.hmm.HmmCharLmEstimator;
+import com.aliasi.tokenizer.IndoEuropeanTokenizerFactory;
+import com.aliasi.util.AbstractExternalizable;
+
+/**
+ * The ChunkerModels class trains small LingPipe gene chunkers on the sample data for tests, since
+ * the GENETAG model is not part of the repository.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+final class ChunkerModels {
+
+  private ChunkerModels() {
+  }
+
+  /**
+   * Reads the sentences of the sample input.
+   *
+   * @param from
+   *          number of sentences skipped
+   * @param count
+   *          largest number of sentences read
+   * @return identifiers and texts of the sentences, in input order
+   */
+  static List<String[]> readSentences(int from, int count) throws IOException {
+    List<String[]> sentences = new ArrayList<String[]>();
+    BufferedReader br = open("/data/sample.in");
+    try {
+      String line;
+      int index = 0;
+      while ((line = br.readLine()) != null && sentences.size() < count) {
+        int space = line.indexOf(' ');
+        if (space > 0 && index++ >= from) {
+          sentences.add(new String[] { line.substring(0, space), line.substring(space + 1) });
+        }
+      }
+    } finally {
+      br.close();
+    }
+    return sentences;
+  }
+
+  /**
+   * Trains a chunker on the first sample sentences and compiles it to a file.
+   *
+   * @param file
+   *          the model file
+   * @param count
+   *          number of training sentences
+   * @return the model file
+   */
+  static File train(File file, int count) throws IOException {
+    List<String[]> sentences = readSentences(0, count);
+    Map<String, List<int[]>> genes = readGenes(sentences);
+    CharLmHmmChunker chunker = new CharLmHmmChunker(IndoEuropeanTokenizerFactory.INSTANCE,
+            new HmmCharLmEstimator(6, 256, 6.0));
+    for (String[] sentence : sentences) {
+      ChunkingImpl chunking = new ChunkingImpl(sentence[1]);
+      List<int[]> spans = genes.get(sentence[0]);
+      if (spans != null) {
+        int lastEnd = -1;
+        for (int[] span : spans) {
+          // the chunker learns no overlapping genes
+          if (span[0] >= lastEnd) {
+            chunking.add(ChunkFactory.createChunk(span[0], span[1], "GENE"));
+            lastEnd = span[1];
+          }
+        }
+      }
+      chunker.handle(chunking);
+    }
+    AbstractExternalizable.compileTo(chunker, file);
+    return file;
+  }
+
+  /**
+   * Reads a compiled chunker.
+   */
+  static ConfidenceChunker read(File file) throws IOException, ClassNotFoundException {
+    return (ConfidenceChunker) AbstractExternalizable.readObject(file);
+  }
+
+  /**
+   * Creates the UIMA data resource of a file.
+   */
+  static DataResource dataResource(File file) throws Exception {
+    FileResourceSpecifier spec = UIMAFramework.getResourceSpecifierFactory()
+            .createFileResourceSpecifier();
+    spec.setFileUrl(file.toURI().toURL().toString());
+    return (DataResource) UIMAFramework.produceResource(DataResource.class, spec, null);
+  }
+
+  /**
+   * Lists the n-best chunks of sentences as strings of their offsets, types and scores.
+   */
+  static List<String> nBestChunks(ConfidenceChunker chunker, List<String[]> sentences, int count) {
+    List<String> chunks = new ArrayList<String>();
+    for (String[] sentence : sentences) {
+      char[] cs = sentence[1].toCharArray();
+      StringBuilder line = new StringBuilder(sentence[0]);
+      Iterator<Chunk> it = chunker.nBestChunks(cs, 0, cs.length, count);
+      while (it.hasNext()) {
+        Chunk chunk = it.next();
+        line.append(' ').append(chunk.start()).append('-').append(chunk.end()).append(':')
+                .append(chunk.type()).append(':').append(chunk.score());
+      }
+      chunks.add(line.toString());
+    }
+    return chunks;
+  }
+
+  /**
+   * Reads the gene spans of sentences from the sample answers, as character offsets.
+   */
+  private static Map<String, List<int[]>> readGenes(List<String[]> sentences) throws IOException {
+    Map<String, String> texts = new HashMap<String, String>();
+    for (String[] sentence : sentences) {
+      texts.put(sentence[0], sentence[1]);
+    }
+    Map<String, List<int[]>> genes = new HashMap<String, List<int[]>>();
+    BufferedReader br = open("/data/sample.out");
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] fields = line.split("\\|");
+        String text = texts.get(fields[0]);
+        if (text == null) {
+          continue;
+        }
+        String[] offsets = fields[1].split(" ");
+        int begin = Integer.parseInt(offsets[0]);
+        int end = Integer.parseInt(offsets[1]);
+
+        // map the offsets without spaces to character offsets
+        int count = 0;
+        int charBegin = -1;
+        int charEnd = -1;
+        for (int i = 0; i < text.length(); i++) {
+          if (text.charAt(i) == ' ') {
+            continue;
+          }
+          if (count == begin) {
+            charBegin = i;
+          }
+          if (count == end) {
+            charEnd = i + 1;
+          }
+          count++;
+        }
+        if (charBegin >= 0 && charEnd > charBegin) {
+          List<int[]> spans = genes.get(fields[0]);
+          if (spans == null) {
+            spans = new ArrayList<int[]>();
+            genes.put(fields[0], spans);
+          }
+          spans.add(new int[] { charBegin, charEnd });
+        }
+      }
+    } finally {
+      br.close();
+    }
+    for (List<int[]> spans : genes.values()) {
+      Collections.sort(spans, new Comparator<int[]>() {
+        public int compare(int[] a, int[] b) {
+          return a[0] - b[0];
+        }
+      });
+    }
+    return genes;
+  }
+
+  /**
+   * Opens a resource of the classpath.
+   */
+  private static BufferedReader open(String name) throws IOException {
+    InputStream in = ChunkerModels.class.getResourceAsStream(name);
+    if (in == null) {
+      throw new IOException("Missing resource " + name);
+    }
+    return new BufferedReader(new InputStreamReader(in, "UTF-8"));
+  }
+}
@@ -0,0 +1,95 @@
+package ner.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.aliasi.chunk.ConfidenceChunker;
+
+/**
+ * Tests that one chunker shared through {@link LingPipeChunkerResource_impl} gives several threads
+ * the same n-best chunks as a chunker used by one thread.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class LingPipeChunkerResourceTest {
+
+  /**
+   * Number of threads sharing the chunker.
+   */
+  private static final int THREAD_COUNT = 4;
+
+  /**
+   * Number of chunks per sentence.
+   */
+  private static final int BEST_CHUNK_NUMBER = 20;
+
+  @ClassRule
+  public static TemporaryFolder sFolder = new TemporaryFolder();
+
+  /**
+   * The trained model.
+   */
+  private static File sModel;
+
+  /**
+   * Sentences chunked by the test, other than the training sentences.
+   */
+  private static List<String[]> sSentences;
+
+  @BeforeClass
+  public static void trainModel() throws Exception {
+    sModel = ChunkerModels.train(sFolder.newFile("gene.HmmChunker"), 500);
+    sSentences = ChunkerModels.readSentences(500, 200);
+  }
+
+  @Test
+  public void threadsGetTheChunksOfOneThread() throws Exception {
+    List<String> expected = ChunkerModels.nBestChunks(ChunkerModels.read(sModel), sSentences,
+            BEST_CHUNK_NUMBER);
+    assertTrue(expected.get(0).indexOf(' ') > 0);
+
+    final LingPipeChunkerResource_impl resource = new LingPipeChunkerResource_impl();
+    resource.load(ChunkerModels.dataResource(sModel));
+
+    // all threads ask for the chunker at once, so they also race for loading it
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<Object[]>> results = new ArrayList<Future<Object[]>>();
+      for (int i = 0; i < THREAD_COUNT; i++) {
+        results.add(executor.submit(new Callable<Object[]>() {
+          public Object[] call() throws Exception {
+            start.await();
+            ConfidenceChunker chunker = resource.getChunker();
+            return new Object[] { chunker,
+                ChunkerModels.nBestChunks(chunker, sSentences, BEST_CHUNK_NUMBER) };
+          }
+        }));
+      }
+      start.countDown();
+      Object shared = results.get(0).get()[0];
+      for (Future<Object[]> result : results) {
+        assertSame(shared, result.get()[0]);
+        assertEquals(expected, result.get()[1]);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
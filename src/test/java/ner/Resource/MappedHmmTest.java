@@ -0,0 +1,103 @@
+package ner.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.aliasi.chunk.HmmChunker;
+import com.aliasi.hmm.HiddenMarkovModel;
+import com.aliasi.tokenizer.Tokenizer;
+
+/**
+ * Tests that a model compiled by {@link MappedHmmCompiler} gives exactly the emission
+ * probabilities and n-best chunks of the original model, also for text outside its compile
+ * corpus.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class MappedHmmTest {
+
+  /**
+   * Number of chunks per sentence.
+   */
+  private static final int BEST_CHUNK_NUMBER = 20;
+
+  @ClassRule
+  public static TemporaryFolder sFolder = new TemporaryFolder();
+
+  /**
+   * The trained model.
+   */
+  private static File sModel;
+
+  /**
+   * The original chunker.
+   */
+  private static HmmChunker sChunker;
+
+  /**
+   * Held-out sentences, other than the training and corpus sentences.
+   */
+  private static List<String[]> sSentences;
+
+  @BeforeClass
+  public static void trainModel() throws Exception {
+    sModel = ChunkerModels.train(sFolder.newFile("gene.HmmChunker"), 500);
+    sChunker = (HmmChunker) ChunkerModels.read(sModel);
+    sSentences = ChunkerModels.readSentences(500, 200);
+  }
+
+  @Test
+  public void heldOutTokensGetTheEmissionsOfTheOriginal() throws Exception {
+    File corpus = sFolder.newFile("corpus.txt");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8");
+    try {
+      for (String[] sentence : ChunkerModels.readSentences(0, 100)) {
+        writer.write(sentence[1] + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    File mapped = sFolder.newFile("corpus.mapped");
+    int tokenCount = MappedHmmCompiler.compile(sModel, mapped, Collections.singletonList(corpus));
+    assertTrue(tokenCount > 0);
+
+    HiddenMarkovModel expected = sChunker.getDecoder().getHmm();
+    HiddenMarkovModel actual = MappedHmm.readChunker(mapped).getDecoder().getHmm();
+    int stateCount = expected.stateSymbolTable().numSymbols();
+    for (String[] sentence : sSentences) {
+      char[] cs = sentence[1].toCharArray();
+      Tokenizer tokenizer = sChunker.getTokenizerFactory().tokenizer(cs, 0, cs.length);
+      String token;
+      while ((token = tokenizer.nextToken()) != null) {
+        for (int i = 0; i < stateCount; i++) {
+          assertEquals(token, expected.emitLog2Prob(i, token), actual.emitLog2Prob(i, token), 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void modelWithoutCorpusGetsTheChunksOfTheOriginal() throws Exception {
+    File mapped = sFolder.newFile("empty.mapped");
+    assertEquals(0, MappedHmmCompiler.compile(sModel, mapped, Collections.<File> emptyList()));
+    assertTrue(MappedHmm.isMappedHmm(mapped));
+
+    List<String> expected = ChunkerModels.nBestChunks(sChunker, sSentences, BEST_CHUNK_NUMBER);
+    assertTrue(expected.get(0).indexOf(' ') > 0);
+    assertEquals(expected, ChunkerModels.nBestChunks(MappedHmm.readChunker(mapped), sSentences,
+            BEST_CHUNK_NUMBER));
+  }
+}
@@ -0,0 +1,130 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that an {@link AsyncBinaryAnnotationWriter} with a small queue writes the batches in the
+ * order they were handed over, and that the lengths reported to its sync listeners continue the
+ * file with exactly the mentions handed over before them, and that a flush policy writes the
+ * current block before the writer is closed.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class AsyncBinaryAnnotationWriterTest {
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Test
+  public void syncedLengthsContinueTheFile() throws Exception {
+    BinaryAnnotationWriterTest mentions = new BinaryAnnotationWriterTest();
+    File file = mFolder.newFile();
+    AsyncBinaryAnnotationWriter writer = new AsyncBinaryAnnotationWriter(
+            new BinaryAnnotationWriter(file, 100, null), 2, 0, 0, false, "test writer");
+    final List<Long> lengths = new ArrayList<Long>();
+    List<Integer> counts = new ArrayList<Integer>();
+    List<String> written = new ArrayList<String>();
+    Random random = new Random(11);
+    for (int i = 0; i < 200; i++) {
+      List<String> batch = mentions.mentions(random.nextInt(20));
+      writer.write(batch(batch));
+      written.addAll(batch);
+      if (random.nextInt(10) == 0) {
+        counts.add(written.size());
+        writer.sync(new AsyncWriter.SyncListener() {
+          public void synced(long position) throws IOException {
+            lengths.add(position);
+          }
+        });
+      }
+    }
+    writer.close();
+
+    BinaryAnnotationReader reader = new BinaryAnnotationReader(file);
+    try {
+      assertEquals(written, BinaryAnnotationWriterTest.readAll(reader));
+    } finally {
+      reader.close();
+    }
+    assertEquals(counts.size(), lengths.size());
+    assertTrue(lengths.size() > 0);
+
+    // a file continued from a synced length holds the mentions before it
+    for (int i = 0; i < lengths.size(); i++) {
+      File copy = mFolder.newFile();
+      BinaryAnnotationWriter continued = BinaryAnnotationWriter.append(copy(file, copy),
+              lengths.get(i), 100, null);
+      continued.close();
+      reader = new BinaryAnnotationReader(copy);
+      try {
+        assertEquals(written.subList(0, counts.get(i)), BinaryAnnotationWriterTest
+                .readAll(reader));
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  @Test
+  public void flushesByNumberOfMentions() throws Exception {
+    BinaryAnnotationWriterTest mentions = new BinaryAnnotationWriterTest();
+    File file = mFolder.newFile();
+    AsyncBinaryAnnotationWriter writer = new AsyncBinaryAnnotationWriter(
+            new BinaryAnnotationWriter(file, BinaryAnnotationWriter.DEFAULT_BLOCK_SIZE, null), 16,
+            10, 0, false, "test writer");
+    long header = file.length();
+    writer.write(batch(mentions.mentions(20)));
+
+    // the mentions fill no block, so only the flush writes them
+    long deadline = System.currentTimeMillis() + 10000;
+    while (file.length() == header && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(file.length() > header);
+    writer.close();
+  }
+
+  /**
+   * Creates a batch of mentions formatted by the writer test.
+   */
+  private static AsyncBinaryAnnotationWriter.Batch batch(List<String> mentions) {
+    AsyncBinaryAnnotationWriter.Batch batch = new AsyncBinaryAnnotationWriter.Batch();
+    for (String mention : mentions) {
+      String[] fields = mention.split("\t", -1);
+      batch.add(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), fields[3],
+              fields[4].length() == 0 ? null : fields[4], Float.intBitsToFloat(Integer
+                      .parseInt(fields[5])));
+    }
+    return batch;
+  }
+
+  /**
+   * Copies a file.
+   */
+  private static File copy(File from, File to) throws IOException {
+    FileChannel in = new FileInputStream(from).getChannel();
+    FileChannel out = new FileOutputStream(to).getChannel();
+    try {
+      in.transferTo(0, in.size(), out);
+    } finally {
+      in.close();
+      out.close();
+    }
+    return to;
+  }
+}
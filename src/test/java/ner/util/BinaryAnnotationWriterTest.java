@@ -0,0 +1,220 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link BinaryAnnotationReader} reads back the random mentions a
+ * {@link BinaryAnnotationWriter} wrote, for blocks of any size and strings beyond ISO-8859-1, that
+ * it seeks to every sentence through the index, and that a file continued from a synced length
+ * holds the mentions before that length and those written after it.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class BinaryAnnotationWriterTest {
+
+  /**
+   * Pieces of the random strings.
+   */
+  private static final String[] PIECES = { "a", "b", "P0", "\u00e9", "\u4e2d", " ", "|", "x y",
+      "\ud83d\ude00", "" };
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  /**
+   * Random source of the mentions, seeded so failures repeat.
+   */
+  private Random mRandom = new Random(3);
+
+  @Test
+  public void readsBackAndSeeksRandomMentions() throws Exception {
+    for (int round = 0; round < 100; round++) {
+      File file = mFolder.newFile();
+      int blockSize = mRandom.nextBoolean() ? 1 + mRandom.nextInt(200)
+              : BinaryAnnotationWriter.DEFAULT_BLOCK_SIZE;
+      List<String> mentions = mentions(mRandom.nextInt(400));
+      BinaryAnnotationWriter writer = new BinaryAnnotationWriter(file, blockSize, null);
+      add(writer, mentions);
+      writer.close();
+
+      BinaryAnnotationReader reader = new BinaryAnnotationReader(file);
+      try {
+        assertEquals(mentions, readAll(reader));
+        for (String mention : mentions) {
+          String identifier = mention.substring(0, mention.indexOf('\t'));
+          assertTrue(identifier, reader.seek(identifier));
+          assertTrue(reader.next());
+          assertEquals(identifier, reader.getIdentifier());
+        }
+        assertFalse(reader.seek("absent"));
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  @Test
+  public void seeksToTheMentionsOfEverySentence() throws Exception {
+    // sentences of distinct identifiers, as the printer writes them
+    Map<String, List<String>> sentences = new LinkedHashMap<String, List<String>>();
+    List<String> mentions = new ArrayList<String>();
+    for (int i = 0; i < 3000; i++) {
+      String identifier = "P" + i + (mRandom.nextInt(20) == 0 ? "\u4e2d" : "");
+      List<String> sentence = new ArrayList<String>();
+      int begin = 0;
+      for (int j = mRandom.nextInt(4); j >= 0; j--) {
+        begin += mRandom.nextInt(30);
+        String text = string();
+        sentence.add(mention(identifier, begin, begin + mRandom.nextInt(20), text, "s",
+                mRandom.nextFloat()));
+      }
+      sentences.put(identifier, sentence);
+      mentions.addAll(sentence);
+    }
+    File file = mFolder.newFile();
+    BinaryAnnotationWriter writer = new BinaryAnnotationWriter(file, 1 << 10, null);
+    add(writer, mentions);
+    writer.close();
+
+    List<String> identifiers = new ArrayList<String>(sentences.keySet());
+    Collections.shuffle(identifiers, mRandom);
+    BinaryAnnotationReader reader = new BinaryAnnotationReader(file);
+    try {
+      for (String identifier : identifiers) {
+        assertTrue(identifier, reader.seek(identifier));
+        List<String> sentence = new ArrayList<String>();
+        while (reader.next() && reader.getIdentifier().equals(identifier)) {
+          sentence.add(mention(reader));
+        }
+        assertEquals(sentences.get(identifier), sentence);
+      }
+      assertFalse(reader.seek("no such identifier"));
+      assertFalse(reader.seek(""));
+      assertFalse(reader.seek("\uffff"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void continuesFromASyncedLength() throws Exception {
+    for (int round = 0; round < 30; round++) {
+      File file = mFolder.newFile();
+      int blockSize = 1 + mRandom.nextInt(300);
+      List<String> before = mentions(mRandom.nextInt(200));
+      BinaryAnnotationWriter writer = new BinaryAnnotationWriter(file, blockSize, null);
+      add(writer, before);
+      long length = writer.sync();
+      assertEquals(file.length(), length);
+
+      // what is written after the sync is dropped
+      add(writer, mentions(mRandom.nextInt(200)));
+      writer.close();
+
+      List<String> after = mentions(mRandom.nextInt(200));
+      writer = BinaryAnnotationWriter.append(file, length, blockSize, null);
+      add(writer, after);
+      writer.close();
+
+      List<String> expected = new ArrayList<String>(before);
+      expected.addAll(after);
+      BinaryAnnotationReader reader = new BinaryAnnotationReader(file);
+      try {
+        assertEquals(expected, readAll(reader));
+        for (String mention : expected) {
+          String identifier = mention.substring(0, mention.indexOf('\t'));
+          assertTrue(identifier, reader.seek(identifier));
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Adds mentions formatted by {@link #mention(String, int, int, String, String, float)}.
+   */
+  static void add(BinaryAnnotationWriter writer, List<String> mentions) throws Exception {
+    for (String mention : mentions) {
+      String[] fields = mention.split("\t", -1);
+      String source = fields[4].length() == 0 ? null : fields[4];
+      writer.add(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), fields[3],
+              source, Float.intBitsToFloat(Integer.parseInt(fields[5])));
+    }
+  }
+
+  /**
+   * Reads the remaining mentions.
+   */
+  static List<String> readAll(BinaryAnnotationReader reader) throws Exception {
+    List<String> mentions = new ArrayList<String>();
+    while (reader.next()) {
+      mentions.add(mention(reader));
+    }
+    return mentions;
+  }
+
+  /**
+   * Formats the current mention of a reader.
+   */
+  private static String mention(BinaryAnnotationReader reader) {
+    return mention(reader.getIdentifier(), reader.getBegin(), reader.getEnd(), reader.getText(),
+            reader.getSource(), reader.getConfidence());
+  }
+
+  /**
+   * Formats a mention with tabs, which the random strings do not contain, and the exact bits of
+   * its confidence.
+   */
+  static String mention(String identifier, int begin, int end, String text, String source,
+          float confidence) {
+    return identifier + '\t' + begin + '\t' + end + '\t' + text + '\t' + source + '\t'
+            + Float.floatToRawIntBits(confidence);
+  }
+
+  /**
+   * Creates random mentions: runs of the same identifier, empty strings, offsets of any size,
+   * unknown sources and confidences out of range or not a number.
+   */
+  List<String> mentions(int count) {
+    List<String> mentions = new ArrayList<String>();
+    String identifier = "s";
+    for (int i = 0; i < count; i++) {
+      if (mRandom.nextInt(3) == 0) {
+        identifier = string();
+      }
+      int begin = mRandom.nextInt(7) == 0 ? mRandom.nextInt() : mRandom.nextInt(300) - 10;
+      int end = mRandom.nextInt(5) == 0 ? mRandom.nextInt() : begin + mRandom.nextInt(40);
+      String source = mRandom.nextInt(4) == 0 ? "" : PIECES[mRandom.nextInt(PIECES.length)];
+      float confidence = mRandom.nextInt(10) == 0 ? Float.NaN : mRandom.nextFloat() * 2 - 0.5f;
+      mentions.add(mention(identifier, begin, end, string(), source, confidence));
+    }
+    return mentions;
+  }
+
+  /**
+   * Creates a random string of a few pieces.
+   */
+  private String string() {
+    StringBuilder string = new StringBuilder();
+    for (int i = mRandom.nextInt(5); i > 0; i--) {
+      string.append(PIECES[mRandom.nextInt(PIECES.length)]);
+    }
+    return string.toString();
+  }
+}
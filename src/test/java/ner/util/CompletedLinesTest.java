@@ -0,0 +1,104 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link CompletedLines} tracks the completed prefix of the input while the ranges of
+ * the CASes are completed out of order, as by several processing threads, so that a checkpoint
+ * taken while it is contiguous holds every line before it exactly once.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class CompletedLinesTest {
+
+  /**
+   * Random source of the ranges and their order, seeded so failures repeat.
+   */
+  private Random mRandom = new Random(7);
+
+  @Test
+  public void tracksTheCompletedPrefixOutOfOrder() {
+    for (int round = 0; round < 200; round++) {
+      List<int[]> ranges = ranges(mRandom.nextInt(500));
+      int end = ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1)[1];
+      CompletedLines completed = new CompletedLines(0);
+      BitSet processed = new BitSet();
+      int checkpointCount = 0;
+      for (int[] range : deliver(ranges, 1 + mRandom.nextInt(8))) {
+        completed.complete(range[0], range[1]);
+        processed.set(range[0], range[1]);
+
+        // the prefix ends at the first line not processed yet
+        int line = completed.getLine();
+        assertEquals(processed.nextClearBit(0), line);
+        assertEquals(processed.nextSetBit(line) < 0, completed.isContiguous());
+
+        // a checkpoint holds exactly the lines before it
+        if (completed.isContiguous()) {
+          assertEquals(line, processed.cardinality());
+          checkpointCount++;
+        }
+      }
+      assertEquals(end, completed.getLine());
+      assertTrue(completed.isContiguous());
+      assertTrue(checkpointCount > 0 || ranges.isEmpty());
+    }
+  }
+
+  @Test
+  public void continuesAResumedRun() {
+    // the reader resumes before the consumer, the ranges before the consumer are skipped
+    CompletedLines completed = new CompletedLines(25);
+    completed.complete(20, 22);
+    assertEquals(25, completed.getLine());
+    completed.complete(30, 40);
+    assertEquals(25, completed.getLine());
+    assertFalse(completed.isContiguous());
+    completed.complete(22, 30);
+    assertEquals(40, completed.getLine());
+    assertTrue(completed.isContiguous());
+  }
+
+  /**
+   * Splits lines into ranges which tile them, as the CASes of the collection reader do.
+   */
+  private List<int[]> ranges(int count) {
+    List<int[]> ranges = new ArrayList<int[]>();
+    int begin = 0;
+    for (int i = 0; i < count; i++) {
+      int end = begin + 1 + mRandom.nextInt(10);
+      ranges.add(new int[] { begin, end });
+      begin = end;
+    }
+    return ranges;
+  }
+
+  /**
+   * Shuffles ranges as threads processing them concurrently would: each range is completed after
+   * at most the given number of ranges read after it.
+   */
+  private List<int[]> deliver(List<int[]> ranges, int threadCount) {
+    List<int[]> inFlight = new ArrayList<int[]>();
+    List<int[]> delivered = new ArrayList<int[]>();
+    for (int[] range : ranges) {
+      inFlight.add(range);
+      if (inFlight.size() == threadCount) {
+        delivered.add(inFlight.remove(mRandom.nextInt(threadCount)));
+      }
+    }
+    while (!inFlight.isEmpty()) {
+      delivered.add(inFlight.remove(mRandom.nextInt(inFlight.size())));
+    }
+    return delivered;
+  }
+}
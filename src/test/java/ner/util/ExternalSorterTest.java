@@ -0,0 +1,170 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link ExternalSorter} returns random answer records in the record order for buffers
+ * of any size, also when more runs than {@link ExternalSorter#MAX_FAN_IN} are merged in several
+ * passes, and that it leaves no temporary files, also when a merge fails.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class ExternalSorterTest {
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  /**
+   * Random source of the records, seeded so failures repeat.
+   */
+  private Random mRandom = new Random(3);
+
+  @Test
+  public void sortsWithAnyBufferSize() throws Exception {
+    File directory = mFolder.newFolder("runs");
+    for (int round = 0; round < 30; round++) {
+      List<String> lines = records(mRandom.nextInt(2000));
+      assertSorted(lines, sort(lines, 1 + mRandom.nextInt(50), directory));
+      assertEquals(0, directory.list().length);
+    }
+  }
+
+  @Test
+  public void mergesMoreRunsThanTheFanIn() throws Exception {
+    File directory = mFolder.newFolder("runs");
+    List<String> lines = records(20000);
+    int bufferSize = 20;
+    assertTrue(lines.size() / bufferSize > ExternalSorter.MAX_FAN_IN);
+    assertSorted(lines, sort(lines, bufferSize, directory));
+    assertEquals(0, directory.list().length);
+  }
+
+  @Test
+  public void sortsInMemoryWithoutRuns() throws Exception {
+    File directory = mFolder.newFolder("runs");
+    List<String> lines = records(100);
+    ExternalSorter sorter = new ExternalSorter(ExternalSorter.RECORD_ORDER, 100, directory);
+    for (String line : lines) {
+      sorter.add(line);
+    }
+    assertEquals(0, directory.list().length);
+    List<String> sorted = new ArrayList<String>();
+    String line;
+    while ((line = sorter.readLine()) != null) {
+      sorted.add(line);
+    }
+    sorter.close();
+    assertEquals(0, directory.list().length);
+    assertSorted(lines, sorted);
+  }
+
+  @Test
+  public void leavesNoRunsAfterAFailedMerge() throws Exception {
+    File directory = mFolder.newFolder("runs");
+    final int[] comparisons = { -1 };
+    Comparator<String> order = new Comparator<String>() {
+      public int compare(String a, String b) {
+        if (comparisons[0] >= 0 && comparisons[0]++ > 2000) {
+          throw new IllegalStateException("merge failed");
+        }
+        return ExternalSorter.RECORD_ORDER.compare(a, b);
+      }
+    };
+    ExternalSorter sorter = new ExternalSorter(order, 20, directory);
+    for (String line : records(20000)) {
+      sorter.add(line);
+    }
+    assertTrue(directory.list().length > ExternalSorter.MAX_FAN_IN);
+
+    // the first merge pass fails while writing a merged run
+    comparisons[0] = 0;
+    try {
+      sorter.readLine();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    sorter.close();
+    assertEquals(0, directory.list().length);
+  }
+
+  /**
+   * Sorts lines and reads them back.
+   */
+  private static List<String> sort(List<String> lines, int bufferSize, File directory)
+          throws Exception {
+    ExternalSorter sorter = new ExternalSorter(ExternalSorter.RECORD_ORDER, bufferSize, directory);
+    for (String line : lines) {
+      sorter.add(line);
+    }
+    List<String> sorted = new ArrayList<String>();
+    String line;
+    while ((line = sorter.readLine()) != null) {
+      sorted.add(line);
+    }
+    assertNull(sorter.readLine());
+    sorter.close();
+    return sorted;
+  }
+
+  /**
+   * Checks that lines are sorted and that the records of each identifier are neighbors.
+   */
+  private static void assertSorted(List<String> lines, List<String> sorted) {
+    List<String> expected = new ArrayList<String>(lines);
+    Collections.sort(expected, ExternalSorter.RECORD_ORDER);
+    assertEquals(expected, sorted);
+
+    Set<String> identifiers = new HashSet<String>();
+    String previous = null;
+    for (int i = 0; i < sorted.size(); i++) {
+      String line = sorted.get(i);
+      if (i > 0) {
+        assertTrue(ExternalSorter.compareIdentifiers(sorted.get(i - 1), line) <= 0);
+      }
+      int bar = line.indexOf('|');
+      String identifier = bar < 0 ? line : line.substring(0, bar);
+      assertTrue(identifier, identifier.equals(previous) || identifiers.add(identifier));
+      previous = identifier;
+    }
+  }
+
+  /**
+   * Creates random records, some of them without offsets, empty or with characters beyond
+   * ISO-8859-1.
+   */
+  private List<String> records(int count) {
+    List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      String identifier = "P" + mRandom.nextInt(200);
+      int kind = mRandom.nextInt(10);
+      if (kind == 0) {
+        lines.add(identifier);
+      } else if (kind == 1) {
+        lines.add("");
+      } else {
+        lines.add(identifier + "|" + mRandom.nextInt(50) + " " + mRandom.nextInt(50) + "|t"
+                + (char) ('a' + mRandom.nextInt(3))
+                + (mRandom.nextInt(20) == 0 ? "\u00e9\u4e2d" : ""));
+      }
+    }
+    return lines;
+  }
+}
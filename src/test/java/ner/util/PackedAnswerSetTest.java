@@ -0,0 +1,107 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PackedAnswerSet} against a set of strings with random records, including records
+ * which cannot be packed: malformed ones, leading zeros, large offsets and characters beyond
+ * ISO-8859-1.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class PackedAnswerSetTest {
+
+  /**
+   * Texts of the random records.
+   */
+  private static final String[] TEXTS = { "ab", "a b", "x|y", "\u00e9t", "\u4e2d", "", "ab " };
+
+  /**
+   * Random source of the records, seeded so failures repeat.
+   */
+  private Random mRandom = new Random(7);
+
+  @Test
+  public void behavesLikeASetOfStrings() {
+    for (int round = 0; round < 200; round++) {
+      PackedAnswerSet answers = new PackedAnswerSet();
+      Set<String> expected = new HashSet<String>();
+      int count = mRandom.nextInt(2000);
+      for (int i = 0; i < count; i++) {
+        String record = record();
+        assertEquals(record, expected.add(record), answers.add(record));
+      }
+      assertEquals(expected.size(), answers.size());
+
+      // every record has its own index, and the records not looked up are missing
+      BitSet found = new BitSet();
+      Map<Integer, String> indexes = new HashMap<Integer, String>();
+      Set<String> missing = new HashSet<String>(expected);
+      for (int i = 0; i < 2000; i++) {
+        String record = record();
+        int index = answers.indexOf(new StringBuilder(record));
+        assertEquals(record, expected.contains(record), index >= 0);
+        if (index >= 0) {
+          assertTrue(index < answers.size());
+          String previous = indexes.put(index, record);
+          assertTrue(record, previous == null || previous.equals(record));
+          found.set(index);
+          missing.remove(record);
+        }
+      }
+      List<String> records = new ArrayList<String>();
+      answers.getMissing(found, records);
+      assertEquals(missing.size(), records.size());
+      assertEquals(missing, new HashSet<String>(records));
+    }
+  }
+
+  /**
+   * Creates a random record, mostly well formed.
+   */
+  private String record() {
+    String identifier = "S" + mRandom.nextInt(30) + (mRandom.nextInt(15) == 0 ? "\u4e2d" : "");
+    switch (mRandom.nextInt(20)) {
+    case 0:
+      return identifier;
+    case 1:
+      return identifier + "|" + offset();
+    case 2:
+      return "";
+    default:
+      return identifier + "|" + offset() + (mRandom.nextInt(15) == 0 ? "  " : " ") + offset()
+              + "|" + TEXTS[mRandom.nextInt(TEXTS.length)];
+    }
+  }
+
+  /**
+   * Creates a random offset, sometimes with a leading zero, too large to pack or not a number.
+   */
+  private String offset() {
+    switch (mRandom.nextInt(10)) {
+    case 0:
+      return "0" + mRandom.nextInt(20);
+    case 1:
+      return String.valueOf(65530 + mRandom.nextInt(10));
+    case 2:
+      return "";
+    case 3:
+      return "x";
+    default:
+      return String.valueOf(mRandom.nextInt(30));
+    }
+  }
+}
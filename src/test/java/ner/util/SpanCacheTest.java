@@ -0,0 +1,75 @@
+package ner.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a {@link SpanCache} file locked by another writer makes the cache use a file of its
+ * own, and that cached spans survive reopening that file.
+ *
+ * @author <a href="mailto:yuangu@andrew.cmu.edu">Yuan Gu</a>
+ */
+
+public class SpanCacheTest {
+
+  /**
+   * Size of the test caches in bytes.
+   */
+  private static final long SIZE = 1 << 16;
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Test
+  public void lockedFileIsReplacedByTheNextFreeFile() throws Exception {
+    File file = mFolder.newFile("spans.cache");
+
+    // another writer holds the requested file and the first alternative
+    RandomAccessFile other = new RandomAccessFile(file, "rw");
+    RandomAccessFile otherAlternative = new RandomAccessFile(file.getPath() + ".1", "rw");
+    try {
+      FileLock lock = other.getChannel().lock();
+      FileLock alternativeLock = otherAlternative.getChannel().lock();
+      assertTrue(lock.isValid() && alternativeLock.isValid());
+
+      SpanCache cache = SpanCache.open(file, SIZE);
+      assertEquals(new File(file.getPath() + ".2"), cache.getFile());
+      assertTrue(cache == SpanCache.open(file, SIZE));
+
+      SpanSink spans = new SpanSink();
+      spans.add(3, 7, 0.5f);
+      spans.add(10, 12, 1.0f);
+      long key = SpanCache.key(SpanCache.fingerprint("test"), "a sentence text", 0, 15);
+      cache.put(key, 15, spans);
+      cache.flush();
+
+      SpanSink found = new SpanSink();
+      assertFalse(cache.get(key, 14, found));
+      assertTrue(cache.get(key, 15, found));
+      assertEquals(2, found.size());
+      assertEquals(3, found.getBegin(0));
+      assertEquals(7, found.getEnd(0));
+      assertEquals(0.5f, found.getConfidence(0), 0.0f);
+      assertEquals(12, found.getEnd(1));
+    } finally {
+      other.close();
+      otherAlternative.close();
+    }
+  }
+
+  @Test
+  public void fingerprintOfAFileUrlIsTheFileFingerprint() throws Exception {
+    File file = mFolder.newFile("model.bin");
+    assertEquals(SpanCache.fileFingerprint(file),
+            SpanCache.urlFingerprint(file.toURI().toURL()));
+  }
+}